@@ -0,0 +1,40 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.service.AirportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weather queries around an airport. Radius 0 reads a single airport, the larger radii go through the spatial
+ * index and return more airports as the count grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AirportQueryBenchmark {
+
+    @Param({"0", "50", "500", "2000"})
+    public String radius;
+
+    private final AirportService airportService = AirportService.getInstance();
+
+    @Benchmark
+    public List<AtmosphericInformation> getWeather(AirportsState state, Cursor cursor) {
+        return airportService.getWeather(cursor.next(state).getIata(), radius);
+    }
+}
@@ -0,0 +1,58 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.AirportCodes;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Loads the services with the given number of airports, each holding a temperature reading. The first five are
+ * the airports of {@link AirportService#init()}, the others are spread uniformly over the globe.
+ */
+@State(Scope.Benchmark)
+public class AirportsState {
+
+    @Param({"5", "1000", "10000", "100000"})
+    public int airports;
+
+    public AirportData[] airportData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws WeatherException {
+        AirportService airportService = AirportService.getInstance();
+        WeatherService weatherService = WeatherService.getInstance();
+        weatherService.clear();
+        airportService.init();
+
+        List<AirportData> loaded = new ArrayList<>();
+        for (String iata : airportService.getAirportsIata()) {
+            loaded.add(AirportService.getAirportData(iata));
+        }
+        Random random = new Random(42);
+        for (int code = 0; loaded.size() < airports; code++) {
+            String iata = AirportCodes.decode(code);
+            if (AirportService.getAirportData(iata) == null) {
+                double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+                loaded.add(airportService.addAirport(iata, latitude, 360 * random.nextDouble() - 180));
+            }
+        }
+        airportData = loaded.toArray(new AirportData[loaded.size()]);
+
+        DataPoint dp = new DataPoint.Builder()
+                .withFirst(10).withMedian(20).withMean(22).withLast(30).withCount(10).build();
+        for (AirportData ad : airportData) {
+            weatherService.addDataPoint(ad.getIata(), "temperature", dp);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.crossover.trial.weather.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes the results of each run to
+ * target/jmh-threads-N.json, so runs of two revisions can be compared.
+ *
+ * usage: java -Dbench.threads=1,4,16 -jar target/benchmarks.jar [jmh options]
+ *
+ * Any JMH option is passed on, e.g. a benchmark regex or -p airports=10000 to run a single airport count.
+ * Add -jvmArgsAppend -Dweather.store=packed to measure the packed store.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String threads : System.getProperty("bench.threads", "1,4,16").split(",")) {
+            int count = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(count)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-threads-" + count + ".json");
+            if (commandLine.getIncludes().isEmpty()) {
+                options.include(BenchmarkRunner.class.getPackage().getName());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.data.AirportData;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Walks each benchmark thread through the loaded airports from its own starting point, so threads do not all
+ * hit the same airport.
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+    private int next = (int) Thread.currentThread().getId() * 7919;
+
+    public AirportData next(AirportsState state) {
+        AirportData[] airports = state.airportData;
+        next = (next + 1) % airports.length;
+        return airports[next];
+    }
+}
@@ -0,0 +1,53 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointParser;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link DataPoint} wire format, Gson both ways and the parser of the single point ingestion path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPointBenchmark {
+
+    private final Gson gson = new Gson();
+
+    private final DataPointParser parser = new DataPointParser();
+
+    private final DataPoint dataPoint = new DataPoint.Builder()
+            .withFirst(10).withMedian(20).withMean(22.5).withLast(30).withCount(10).build();
+
+    private final String json = gson.toJson(dataPoint);
+
+    @Benchmark
+    public String gsonSerialize() {
+        return gson.toJson(dataPoint);
+    }
+
+    @Benchmark
+    public DataPoint gsonDeserialize() {
+        return gson.fromJson(json, DataPoint.class);
+    }
+
+    @Benchmark
+    public double parse() {
+        parser.parse(json);
+        return parser.getMean();
+    }
+}
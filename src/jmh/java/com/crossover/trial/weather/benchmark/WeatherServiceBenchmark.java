@@ -0,0 +1,63 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.WeatherService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion and the ping metrics of the service layer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherServiceBenchmark {
+
+    private static final DataPoint DATA_POINT = new DataPoint.Builder()
+            .withFirst(10).withMedian(20).withMean(22).withLast(30).withCount(10).build();
+
+    private static final String DATA_POINT_JSON = "{\"mean\":22.0,\"first\":10,\"second\":20,\"third\":30,\"count\":10}";
+
+    private final WeatherService weatherService = WeatherService.getInstance();
+
+    private final AirportService airportService = AirportService.getInstance();
+
+    @Benchmark
+    public boolean addDataPoint(AirportsState state, Cursor cursor) throws WeatherException {
+        return weatherService.addDataPoint(cursor.next(state).getIata(), "wind", DATA_POINT);
+    }
+
+    @Benchmark
+    public boolean addDataPointJson(AirportsState state, Cursor cursor) throws WeatherException {
+        return weatherService.addDataPoint(cursor.next(state).getIata(), "wind", DATA_POINT_JSON);
+    }
+
+    @Benchmark
+    public int getDataSize(AirportsState state) {
+        return weatherService.getDataSize();
+    }
+
+    @Benchmark
+    public Map<String, Double> getFrequencyMap(AirportsState state) {
+        return airportService.getFrequencyMap();
+    }
+
+    @Benchmark
+    public double calculateDistance(AirportsState state, Cursor cursor) {
+        AirportData from = cursor.next(state);
+        return airportService.calculateDistance(from, cursor.next(state));
+    }
+}
@@ -1,21 +1,51 @@
 package com.crossover.trial.weather;
 
+import com.crossover.trial.weather.data.AirportData;
+import com.google.gson.Gson;
+
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple airport loader which reads a file from disk and sends entries to the webservice
  *
- * TODO: Implement the Airport Loader
- * 
+ * By default every airport is posted on its own. With --bulk the file is sent in batches to the bulk airport
+ * endpoint, several batches at a time, and the number of committed rows is saved to a progress file so an
+ * interrupted load can be resumed.
+ *
+ * usage: AirportLoader airports.dat [--bulk] [--batch rows] [--threads n] [--progress file]
+ *
  * @author code test administrator
  */
 public class AirportLoader {
 
+    /** column of the IATA/FAA code in airports.dat */
+    private static final int IATA_COLUMN = 4;
+
+    private static final int LATITUDE_COLUMN = 6;
+
+    private static final int LONGITUDE_COLUMN = 7;
+
+    /** attempts per batch before the bulk load gives up */
+    private static final int BATCH_ATTEMPTS = 3;
+
+    private static final Gson gson = new Gson();
+
     /** end point for read queries */
     private WebTarget query;
 
@@ -29,23 +59,232 @@ public class AirportLoader {
     }
 
     public void upload(InputStream airportDataStream) throws IOException{
-        BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream));
-        String l;
-        while ((l = reader.readLine()) != null) {
-            String[] row = l.split(",");
-            collect.path("airport").path(row[4]).path(row[6]).path(row[7]).request(MediaType.APPLICATION_JSON).post(Entity.text(""));
+        try (CsvReader reader = new CsvReader(new InputStreamReader(airportDataStream, StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = reader.readRecord()) != null) {
+                AirportData ad = toAirport(row);
+                if (ad != null) {
+                    collect.path("airport").path(ad.getIata()).path(row[LATITUDE_COLUMN]).path(row[LONGITUDE_COLUMN])
+                            .request(MediaType.APPLICATION_JSON).post(Entity.text(""));
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the airports in batches to the bulk endpoint, with up to threads batches in flight.
+     *
+     * @param airportDataStream the airports.dat content
+     * @param batchSize rows per request
+     * @param threads concurrent requests
+     * @param progressFile file recording the rows already committed, null to always start from the beginning
+     * @return true if every batch was committed
+     */
+    public boolean uploadBulk(InputStream airportDataStream, int batchSize, int threads, File progressFile)
+            throws IOException, InterruptedException {
+        LoadProgress progress = new LoadProgress(progressFile);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(airportDataStream, StandardCharsets.UTF_8))) {
+            long row = 0;
+            long skip = progress.committedRows();
+            if (skip > 0) {
+                System.out.println("resuming after row " + skip);
+            }
+            long batchStart = skip;
+            List<AirportData> batch = new ArrayList<>(batchSize);
+            String[] record;
+            while ((record = reader.readRecord()) != null && !progress.failed()) {
+                if (row++ < skip) {
+                    continue;
+                }
+                AirportData ad = toAirport(record);
+                if (ad != null) {
+                    batch.add(ad);
+                }
+                if (row - batchStart == batchSize) {
+                    submit(executor, inFlight, progress, batch, batchStart, row);
+                    batch = new ArrayList<>(batchSize);
+                    batchStart = row;
+                }
+            }
+            if (row > batchStart) {
+                submit(executor, inFlight, progress, batch, batchStart, row);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
         }
-        airportDataStream.close();
+        progress.report();
+        return !progress.failed();
     }
 
-    public static void main(String args[]) throws IOException{
+    private void submit(ExecutorService executor, Semaphore inFlight, LoadProgress progress,
+                        List<AirportData> batch, long fromRow, long toRow) throws InterruptedException {
+        inFlight.acquire();
+        executor.submit(() -> {
+            try {
+                String body = gson.toJson(batch);
+                for (int attempt = 1; attempt <= BATCH_ATTEMPTS; attempt++) {
+                    try {
+                        Response response = collect.path("airports").request(MediaType.APPLICATION_JSON)
+                                .post(Entity.entity(body, MediaType.APPLICATION_JSON));
+                        response.close();
+                        if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                            progress.committed(fromRow, toRow, batch.size());
+                            return;
+                        }
+                        System.err.println("rows " + fromRow + "-" + toRow + " failed with HTTP " + response.getStatus());
+                    } catch (RuntimeException e) {
+                        System.err.println("rows " + fromRow + "-" + toRow + " failed: " + e.getMessage());
+                    }
+                }
+                progress.fail();
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * @return the airport of a row or null if the row has no usable IATA code or position
+     */
+    private static AirportData toAirport(String[] row) {
+        if (row.length <= LONGITUDE_COLUMN) {
+            return null;
+        }
+        String iata = row[IATA_COLUMN].trim();
+        if (iata.isEmpty() || "\\N".equals(iata)) {
+            return null;
+        }
+        try {
+            AirportData ad = new AirportData();
+            ad.setIata(iata);
+            ad.setLatitude(Double.parseDouble(row[LATITUDE_COLUMN]));
+            ad.setLongitude(Double.parseDouble(row[LONGITUDE_COLUMN]));
+            return ad;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tracks which row ranges the server accepted. Batches finish out of order, only the rows up to the first gap
+     * count as committed and are written to the progress file.
+     */
+    static class LoadProgress {
+
+        private final File file;
+
+        private final long startTime = System.currentTimeMillis();
+
+        /** finished batches after the first gap, start row to end row */
+        private final TreeMap<Long, Long> pending = new TreeMap<>();
+
+        private long committedRows;
+
+        private long airports;
+
+        private boolean failed;
+
+        LoadProgress(File file) throws IOException {
+            this.file = file;
+            if (file != null && file.exists()) {
+                committedRows = Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+            }
+        }
+
+        synchronized long committedRows() {
+            return committedRows;
+        }
+
+        synchronized void committed(long fromRow, long toRow, int batchAirports) {
+            airports += batchAirports;
+            pending.put(fromRow, toRow);
+            boolean advanced = false;
+            while (!failed && pending.containsKey(committedRows)) {
+                committedRows = pending.remove(committedRows);
+                advanced = true;
+            }
+            if (advanced) {
+                save();
+                report();
+            }
+        }
+
+        synchronized void fail() {
+            failed = true;
+        }
+
+        synchronized boolean failed() {
+            return failed;
+        }
+
+        synchronized void report() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            System.out.println(String.format("%d airports sent, %d rows committed, %d airports/s%s",
+                    airports, committedRows, airports * 1000 / elapsed,
+                    failed ? ", stopped on a failed batch, rerun to resume" : ""));
+        }
+
+        private void save() {
+            if (file == null) {
+                return;
+            }
+            try {
+                File tmp = new File(file.getPath() + ".tmp");
+                Files.write(tmp.toPath(), String.valueOf(committedRows).getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("could not save progress to " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static void main(String args[]) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("usage: AirportLoader airports.dat [--bulk] [--batch rows] [--threads n] [--progress file]");
+            System.exit(1);
+        }
         File airportDataFile = new File(args[0]);
         if (!airportDataFile.exists() || airportDataFile.length() == 0) {
             System.err.println(airportDataFile + " is not a valid input");
             System.exit(1);
         }
 
+        boolean bulk = false;
+        int batchSize = 500;
+        int threads = 4;
+        File progressFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--bulk":
+                    bulk = true;
+                    break;
+                case "--batch":
+                    batchSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--progress":
+                    progressFile = new File(args[++i]);
+                    break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        // the default connector pools keep-alive connections per host, allow one per loader thread
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(threads));
+        }
         AirportLoader al = new AirportLoader();
+        if (bulk) {
+            System.exit(al.uploadBulk(new FileInputStream(airportDataFile), batchSize, threads, progressFile) ? 0 : 1);
+        }
         al.upload(new FileInputStream(airportDataFile));
         System.exit(0);
     }
@@ -0,0 +1,74 @@
+package com.crossover.trial.weather;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small RFC 4180 style tokenizer. Fields are separated by commas and may be enclosed in double quotes, a quoted
+ * field can hold commas and line breaks and escapes a quote by doubling it.
+ */
+public class CsvReader implements Closeable {
+
+    private final BufferedReader in;
+
+    public CsvReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the input
+     */
+    public String[] readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c != '"') {
+                    field.append((char) c);
+                } else if (peek() == '"') {
+                    field.append((char) in.read());
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    in.read();
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[fields.size()]);
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private int peek() throws IOException {
+        in.mark(1);
+        int c = in.read();
+        in.reset();
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,12 +1,14 @@
 package com.crossover.trial.weather;
 
 import com.crossover.trial.weather.data.DataPoint;
+import org.glassfish.jersey.client.ClientProperties;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
+import java.util.Arrays;
 
 /**
  * A reference implementation for the weather client. Consumers of the REST API can look at WeatherClient
@@ -19,6 +21,12 @@ public class WeatherClient {
 
     private static final String BASE_URI = "http://localhost:9090";
 
+    /** default time allowed to open a connection */
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /** default time allowed to wait for a response */
+    static final int READ_TIMEOUT_MILLIS = 30000;
+
     /** end point for read queries */
     private WebTarget query;
 
@@ -26,9 +34,27 @@ public class WeatherClient {
     private WebTarget collect;
 
     public WeatherClient() {
-        Client client = ClientBuilder.newClient();
-        query = client.target(BASE_URI + "/query");
-        collect = client.target(BASE_URI + "/collect");
+        this(BASE_URI);
+    }
+
+    /**
+     * @param baseUri the server address, for example http://localhost:9090
+     */
+    public WeatherClient(String baseUri) {
+        this(baseUri, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param baseUri the server address, for example http://localhost:9090
+     * @param connectTimeoutMillis time allowed to open a connection
+     * @param readTimeoutMillis time allowed to wait for a response
+     */
+    public WeatherClient(String baseUri, int connectTimeoutMillis, int readTimeoutMillis) {
+        Client client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT, connectTimeoutMillis)
+                .property(ClientProperties.READ_TIMEOUT, readTimeoutMillis);
+        query = client.target(baseUri + "/query");
+        collect = client.target(baseUri + "/collect");
     }
 
     public void pingCollect() {
@@ -57,6 +83,41 @@ public class WeatherClient {
         Response post = path.request().post(Entity.entity(dp, "application/json"));
     }
 
+    /**
+     * @return the http status of an update
+     */
+    public int updateWeather(String iata, String pointType, DataPoint dp) {
+        Response response = collect.path("/weather/" + iata + "/" + pointType).request()
+                .post(Entity.entity(dp, "application/json"));
+        response.readEntity(String.class);
+        return response.getStatus();
+    }
+
+    /**
+     * @return the http status of a weather query, after the whole response was read
+     */
+    public int weather(String iata, String radius) {
+        Response response = query.path("/weather/" + iata + "/" + radius).request().get();
+        response.readEntity(String.class);
+        return response.getStatus();
+    }
+
+    /**
+     * @return the http status of a query ping, after the whole response was read
+     */
+    public int ping() {
+        Response response = query.path("/ping").request().get();
+        response.readEntity(String.class);
+        return response.getStatus();
+    }
+
+    /**
+     * @return the codes of all known airports
+     */
+    public String[] airports() {
+        return collect.path("/airports").request().get(String[].class);
+    }
+
     public void exit() {
         try {
             collect.path("/exit").request().get();
@@ -65,7 +126,14 @@ public class WeatherClient {
         }
     }
 
-    public static void main(String[] args) {
+    /**
+     * usage: WeatherClient [--load options], see {@link WeatherLoadGenerator} for the load generator options
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "--load".equals(args[0])) {
+            WeatherLoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         WeatherClient wc = new WeatherClient();
         wc.pingCollect();
         wc.populate("wind", 0, 10, 6, 4, 20);
@@ -0,0 +1,340 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.metrics.LatencyHistogram;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator sending a mix of updates, weather queries and pings through {@link WeatherClient} at a fixed
+ * target rate over many connections.
+ *
+ * The rate is split evenly over the connections and every request has an intended start time on that schedule.
+ * Latency is measured from the intended start time rather than from when the request was actually sent, so a
+ * server that stalls is charged for the requests that should have been sent meanwhile instead of hiding them
+ * (coordinated omission). The time from sending to the response is reported as well, as service time.
+ * Requests of the warmup period are sent but not counted. The run ends at the scheduled end even when the server
+ * fell behind; requests that were still waiting to be sent then are reported as unsent, and their latency is
+ * recorded as the time from their intended start to the end, a lower bound of what they would have taken.
+ *
+ * usage: WeatherClient --load [--url http://localhost:9090] [--rate requests/s] [--connections n]
+ * [--duration s] [--warmup s] [--mix update=20,weather=75,ping=5] [--radius 0,50,200,1000]
+ * [--connect-timeout ms] [--read-timeout ms] [--out summary.json]
+ */
+public class WeatherLoadGenerator {
+
+    private static final String[] POINT_TYPES = {"wind", "temperature", "humidty", "pressure", "cloudcover",
+            "precipitation"};
+
+    /** airports used when the server does not list any */
+    private static final String[] DEFAULT_AIRPORTS = {"BOS", "EWR", "JFK", "LGA", "MMU"};
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    /** kinds of requests in the mix */
+    enum Operation {
+        UPDATE, WEATHER, PING
+    }
+
+    /** latencies and outcome counts of one operation */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        /** requests not sent before the end, they are part of {@link #latency} but not of the counts */
+        final LongAdder unsent = new LongAdder();
+    }
+
+    private final WeatherClient client;
+
+    private final String[] airports;
+
+    private final double rate;
+
+    private final int connections;
+
+    private final long warmupNanos;
+
+    private final long durationNanos;
+
+    private final Operation[] operations;
+
+    /** cumulative weights of the operations, the last one is the total */
+    private final int[] weights;
+
+    private final String[] radii;
+
+    private final Map<Operation, Stats> stats = new LinkedHashMap<>();
+
+    public WeatherLoadGenerator(WeatherClient client, String[] airports, double rate, int connections,
+                                double warmupSeconds, double durationSeconds, Map<Operation, Integer> mix,
+                                String[] radii) {
+        this.client = client;
+        this.airports = airports;
+        this.rate = rate;
+        this.connections = connections;
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.durationNanos = (long) (durationSeconds * 1e9);
+        this.radii = radii;
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.weights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            weights[i] = total;
+            stats.put(operations[i], new Stats());
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("the mix has no weight");
+        }
+    }
+
+    /**
+     * Run the warmup and the measured period.
+     *
+     * @return the summary of the measured period
+     */
+    public Map<String, Object> run() throws InterruptedException {
+        long intervalNanos = (long) (1e9 * connections / rate);
+        long start = System.nanoTime() + 100_000_000L;
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int c = 0; c < connections; c++) {
+            // the connections take turns, together they send at the target rate
+            long first = start + (long) (c * 1e9 / rate);
+            Thread thread = new Thread(() -> {
+                try {
+                    send(first, intervalNanos, measureFrom, end);
+                } finally {
+                    done.countDown();
+                }
+            }, "weather-load-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        long measured = System.nanoTime() - measureFrom;
+        return summary(measured);
+    }
+
+    private void send(long first, long intervalNanos, long measureFrom, long end) {
+        Random random = ThreadLocalRandom.current();
+        for (long intended = first; intended < end; intended += intervalNanos) {
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (now >= end) {
+                // the server fell behind, what is left of the schedule is not sent but still waited at least
+                // until the end
+                for (; intended < end; intended += intervalNanos) {
+                    if (intended >= measureFrom) {
+                        Stats s = stats.get(pick(random));
+                        s.latency.record((end - intended) / 1000);
+                        s.unsent.increment();
+                    }
+                }
+                return;
+            }
+            Operation operation = pick(random);
+            boolean ok;
+            try {
+                ok = execute(operation, random) == 200;
+            } catch (RuntimeException e) {
+                ok = false;
+            }
+            long completed = System.nanoTime();
+            if (intended >= measureFrom) {
+                Stats s = stats.get(operation);
+                s.latency.record((completed - intended) / 1000);
+                s.serviceTime.record((completed - now) / 1000);
+                (ok ? s.ok : s.errors).increment();
+            }
+        }
+    }
+
+    Operation pick(Random random) {
+        int r = random.nextInt(weights[weights.length - 1]);
+        int i = 0;
+        while (r >= weights[i]) {
+            i++;
+        }
+        return operations[i];
+    }
+
+    private int execute(Operation operation, Random random) {
+        String iata = airports[random.nextInt(airports.length)];
+        switch (operation) {
+            case UPDATE:
+                String pointType = POINT_TYPES[random.nextInt(POINT_TYPES.length)];
+                // within the accepted range of every point type
+                int mean = "pressure".equals(pointType) ? 650 + random.nextInt(150) : random.nextInt(100);
+                DataPoint dp = new DataPoint.Builder()
+                        .withFirst(mean).withLast(mean).withMean(mean).withMedian(mean)
+                        .withCount(1 + random.nextInt(20)).build();
+                return client.updateWeather(iata, pointType, dp);
+            case WEATHER:
+                return client.weather(iata, radii[random.nextInt(radii.length)]);
+            default:
+                return client.ping();
+        }
+    }
+
+    private Map<String, Object> summary(long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("target_rate", rate);
+        config.put("connections", connections);
+        config.put("warmup_s", warmupNanos / 1e9);
+        config.put("duration_s", durationNanos / 1e9);
+        config.put("airports", airports.length);
+        config.put("radius", radii);
+
+        long requests = 0;
+        long errors = 0;
+        long unsent = 0;
+        Map<String, Object> byOperation = new LinkedHashMap<>();
+        for (Map.Entry<Operation, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            long count = s.ok.sum() + s.errors.sum();
+            requests += count;
+            errors += s.errors.sum();
+            unsent += s.unsent.sum();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("count", count);
+            report.put("errors", s.errors.sum());
+            report.put("unsent", s.unsent.sum());
+            report.put("rate", count / seconds);
+            report.put("latency", percentiles(s.latency.snapshot()));
+            report.put("service_time", percentiles(s.serviceTime.snapshot()));
+            byOperation.put(e.getKey().name().toLowerCase(), report);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("config", config);
+        summary.put("requests", requests);
+        summary.put("errors", errors);
+        summary.put("unsent", unsent);
+        summary.put("achieved_rate", requests / seconds);
+        summary.put("operations", byOperation);
+        return summary;
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram.Snapshot latency) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mean_us", Math.round(latency.getMean()));
+        report.put("p50_us", latency.getValueAtPercentile(50));
+        report.put("p90_us", latency.getValueAtPercentile(90));
+        report.put("p99_us", latency.getValueAtPercentile(99));
+        report.put("p999_us", latency.getValueAtPercentile(99.9));
+        report.put("max_us", latency.getMax());
+        return report;
+    }
+
+    /**
+     * @param mix comma separated operation=weight pairs
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("bad mix entry " + part);
+            }
+            weights.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return weights;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = "http://localhost:9090";
+        double rate = 1000;
+        int connections = 16;
+        double duration = 30;
+        double warmup = 10;
+        String mix = "update=20,weather=75,ping=5";
+        String radius = "0,50,200,1000";
+        int connectTimeout = 2000;
+        int readTimeout = 10000;
+        String out = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[++i]);
+                    break;
+                case "--duration":
+                    duration = Double.parseDouble(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Double.parseDouble(args[++i]);
+                    break;
+                case "--mix":
+                    mix = args[++i];
+                    break;
+                case "--radius":
+                    radius = args[++i];
+                    break;
+                case "--connect-timeout":
+                    connectTimeout = Integer.parseInt(args[++i]);
+                    break;
+                case "--read-timeout":
+                    readTimeout = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    out = args[++i];
+                    break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        // one pooled keep-alive connection per sending thread
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(connections));
+        }
+        WeatherClient client = new WeatherClient(url, connectTimeout, readTimeout);
+        String[] airports = client.airports();
+        if (airports == null || airports.length == 0) {
+            airports = DEFAULT_AIRPORTS;
+        }
+        List<String> radii = new ArrayList<>();
+        for (String r : radius.split(",")) {
+            radii.add(r.trim());
+        }
+
+        WeatherLoadGenerator generator = new WeatherLoadGenerator(client, airports, rate, connections, warmup,
+                duration, parseMix(mix), radii.toArray(new String[0]));
+        String summary = gson.toJson(generator.run());
+        if (out == null) {
+            System.out.println(summary);
+        } else {
+            try (Writer writer = new FileWriter(out)) {
+                writer.write(summary);
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.shard.ShardMap;
+import com.crossover.trial.weather.shard.ShardRoutingHttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.*;
+
+/**
+ * Serves the weather api in front of several {@link WeatherServer} shards, see {@link ShardRoutingHttpHandler}.
+ * Clients use the router exactly like a single server.
+ *
+ * To run three shards and the router on one host:
+ *
+ * <pre>
+ * java -Dweather.url=http://localhost:9091/ com.crossover.trial.weather.WeatherServer
+ * java -Dweather.url=http://localhost:9092/ com.crossover.trial.weather.WeatherServer
+ * java -Dweather.url=http://localhost:9093/ com.crossover.trial.weather.WeatherServer
+ * java -Dweather.shards=http://localhost:9091,http://localhost:9092,http://localhost:9093 \
+ *     com.crossover.trial.weather.WeatherRouter
+ * </pre>
+ *
+ * The shards must be given in the same order every time the router starts.
+ */
+public class WeatherRouter {
+
+    /** system property setting the address the router listens on, default http://localhost:9090/ */
+    private static final String URL_PROPERTY = "weather.router.url";
+
+    /** system property listing the comma separated base urls of the shards */
+    private static final String SHARDS_PROPERTY = "weather.shards";
+
+    /** system property selecting how airports are split, "geo" (default) by longitude band or "hash" by code */
+    private static final String PARTITION_PROPERTY = "weather.shard.partition";
+
+    public static void main(String[] args) {
+        try {
+            String shardList = System.getProperty(SHARDS_PROPERTY);
+            if (shardList == null || shardList.trim().isEmpty()) {
+                System.err.println("usage: java -D" + SHARDS_PROPERTY + "=url,url,... WeatherRouter");
+                System.exit(1);
+            }
+            List<String> shards = new ArrayList<>();
+            for (String shard : shardList.split(",")) {
+                shards.add(shard.trim());
+            }
+            // connections kept alive to the shards
+            if (System.getProperty("http.maxConnections") == null) {
+                System.setProperty("http.maxConnections", "64");
+            }
+
+            ShardMap shardMap = new ShardMap(shards.size(),
+                    ShardMap.Partition.valueOf(System.getProperty(PARTITION_PROPERTY, "geo").toUpperCase()));
+            ShardRoutingHttpHandler handler = new ShardRoutingHttpHandler(shardMap, shards);
+            handler.loadAirports();
+
+            URI uri = URI.create(System.getProperty(URL_PROPERTY, "http://localhost:9090/"));
+            HttpServer server = HttpServer.createSimpleServer(null, uri.getHost(), uri.getPort());
+            server.getServerConfiguration().addHttpHandler(handler, "/");
+            Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+
+            server.start();
+            System.out.println(format("Weather Router started.\n url=%s\n shards=%s\n", uri, shards));
+
+            // blocks until the process is terminated
+            Thread.currentThread().join();
+        } catch (IOException | InterruptedException ex) {
+            Logger.getLogger(WeatherRouter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
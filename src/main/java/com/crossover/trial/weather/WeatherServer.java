@@ -1,14 +1,30 @@
 package com.crossover.trial.weather;
 
+import com.crossover.trial.weather.endpoint.AtmosphericInformationListWriter;
+import com.crossover.trial.weather.endpoint.DispatchingHttpHandler;
 import com.crossover.trial.weather.endpoint.RestWeatherCollectorEndpoint;
 import com.crossover.trial.weather.endpoint.RestWeatherQueryEndpoint;
-import org.glassfish.grizzly.Connection;
+import com.crossover.trial.weather.endpoint.RequestExecutors;
+import com.crossover.trial.weather.ingest.BinaryIngest;
+import com.crossover.trial.weather.metrics.RequestMetrics;
+import com.crossover.trial.weather.metrics.RequestMetricsProbe;
+import com.crossover.trial.weather.replication.Replication;
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.WriteAheadLog;
 import org.glassfish.grizzly.http.server.*;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,28 +39,100 @@ import static java.lang.String.*;
  */
 public class WeatherServer {
 
-    private static final String BASE_URL = "http://localhost:9090/";
+    /** system property setting the address the server listens on, to run several servers on one host */
+    private static final String URL_PROPERTY = "weather.url";
+
+    private static final String BASE_URL = System.getProperty(URL_PROPERTY, "http://localhost:9090/");
+
+    /** system property enabling the periodic eviction of readings older than a day */
+    private static final String EVICT_STALE_PROPERTY = "weather.evictStale";
+
+    /** system property naming the write-ahead log directory, changes are only kept in memory if it is not set */
+    private static final String WAL_DIR_PROPERTY = "weather.wal.dir";
+
+    /** fsync policy of the write-ahead log, "always", "interval" (default) or "none" */
+    private static final String WAL_FSYNC_PROPERTY = "weather.wal.fsync";
+
+    /** milliseconds between forced writes with the "interval" policy, default 100 */
+    private static final String WAL_FSYNC_MILLIS_PROPERTY = "weather.wal.fsyncMillis";
+
+    /** size in bytes at which a new log segment is started, default 64MB */
+    private static final String WAL_SEGMENT_BYTES_PROPERTY = "weather.wal.segmentBytes";
+
+    /** system property naming the snapshot directory, no snapshots are written or restored if it is not set */
+    private static final String SNAPSHOT_DIR_PROPERTY = "weather.snapshot.dir";
+
+    /** seconds between snapshots, default 300 */
+    private static final String SNAPSHOT_INTERVAL_PROPERTY = "weather.snapshot.intervalSeconds";
 
     public static void main(String[] args) {
         try {
             System.out.println("Starting Weather App local testing server: " + BASE_URL);
 
+            WeatherService weatherService = WeatherService.getInstance();
+            // a follower's state comes from its leader
+            boolean follower = Replication.isFollowerConfigured();
+            String snapshotDir = follower ? null : System.getProperty(SNAPSHOT_DIR_PROPERTY);
+            String walDir = follower ? null : System.getProperty(WAL_DIR_PROPERTY);
+            long restoredSequence = 0;
+            if (snapshotDir != null) {
+                long start = System.currentTimeMillis();
+                restoredSequence = weatherService.restoreSnapshot(new File(snapshotDir));
+                System.out.println(format("Restored snapshot from %s in %d ms", snapshotDir, System.currentTimeMillis() - start));
+            }
+
+            if (walDir != null) {
+                long start = System.currentTimeMillis();
+                weatherService.openLog(new File(walDir),
+                        WriteAheadLog.FsyncPolicy.valueOf(System.getProperty(WAL_FSYNC_PROPERTY, "interval").toUpperCase()),
+                        Long.getLong(WAL_FSYNC_MILLIS_PROPERTY, 100), Long.getLong(WAL_SEGMENT_BYTES_PROPERTY, 64 << 20),
+                        restoredSequence);
+                System.out.println(format("Replayed write-ahead log %s in %d ms", walDir, System.currentTimeMillis() - start));
+            }
+            Replication.getInstance().start(weatherService);
+            BinaryIngest.getInstance().start(weatherService);
+
             final ResourceConfig resourceConfig = new ResourceConfig();
             resourceConfig.register(RestWeatherCollectorEndpoint.class);
             resourceConfig.register(RestWeatherQueryEndpoint.class);
+            resourceConfig.register(AtmosphericInformationListWriter.class);
 
             HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URL), resourceConfig, false);
+            dispatchToExecutors(server, RequestExecutors.getInstance());
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 server.shutdownNow();
+                RequestExecutors.getInstance().shutdown();
+                try {
+                    BinaryIngest.getInstance().stop();
+                    Replication.getInstance().stop();
+                    weatherService.closeLog();
+                } catch (IOException e) {
+                    Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, "Could not stop cleanly", e);
+                }
             }));
 
-            HttpServerProbe probe = new HttpServerProbe.Adapter() {
-                public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection, Request request) {
-                    System.out.println(request.getRequestURI());
-                }
-            };
+            HttpServerProbe probe = new RequestMetricsProbe(RequestMetrics.getInstance());
             server.getServerConfiguration().getMonitoringConfig().getWebServerConfig().addProbes(probe);
 
+            ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "weather-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (Boolean.getBoolean(EVICT_STALE_PROPERTY)) {
+                maintenance.scheduleWithFixedDelay(weatherService::evictStaleReadings, 1, 1, TimeUnit.MINUTES);
+            }
+            if (snapshotDir != null) {
+                long interval = Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 300);
+                maintenance.scheduleWithFixedDelay(() -> {
+                    try {
+                        weatherService.writeSnapshot(new File(snapshotDir));
+                    } catch (IOException | RuntimeException e) {
+                        // an exception would cancel the schedule, the next snapshot may succeed
+                        Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, "Snapshot failed", e);
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+            }
 
             // the autograder waits for this output before running automated tests, please don't remove it
             server.start();
@@ -57,4 +145,21 @@ public class WeatherServer {
             Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
+    /**
+     * Let the selector threads only do I/O and run every request on the executor of its api.
+     */
+    private static void dispatchToExecutors(HttpServer server, RequestExecutors executors) {
+        ServerConfiguration config = server.getServerConfiguration();
+        Map<HttpHandler, HttpHandlerRegistration[]> handlers = new HashMap<>(config.getHttpHandlersWithMapping());
+        for (Map.Entry<HttpHandler, HttpHandlerRegistration[]> handler : handlers.entrySet()) {
+            config.removeHttpHandler(handler.getKey());
+            config.addHttpHandler(new DispatchingHttpHandler(handler.getKey(), executors), handler.getValue());
+        }
+        for (NetworkListener listener : server.getListeners()) {
+            TCPNIOTransport transport = listener.getTransport();
+            transport.setIOStrategy(SameThreadIOStrategy.getInstance());
+            transport.setWorkerThreadPoolConfig(null);
+        }
+    }
 }
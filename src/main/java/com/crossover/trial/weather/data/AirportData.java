@@ -1,5 +1,7 @@
 package com.crossover.trial.weather.data;
 
+import com.crossover.trial.weather.geo.GeoPoint;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
@@ -19,6 +21,9 @@ public class AirportData {
     /** longitude value in degrees */
     private double longitude;
 
+    /** the geometry of the coordinates, worked out on first use */
+    private transient volatile GeoPoint point;
+
     public AirportData() { }
 
     public String getIata() {
@@ -35,6 +40,7 @@ public class AirportData {
 
     public void setLatitude(double latitude) {
         this.latitude = latitude;
+        this.point = null;
     }
 
     public double getLongitude() {
@@ -43,6 +49,20 @@ public class AirportData {
 
     public void setLongitude(double longitude) {
         this.longitude = longitude;
+        this.point = null;
+    }
+
+    /**
+     * @return the coordinates in radians, the cosine of the latitude and the unit vector, computed once
+     */
+    @JsonIgnore
+    public GeoPoint getPoint() {
+        GeoPoint current = point;
+        if (current == null) {
+            current = new GeoPoint(latitude, longitude);
+            point = current;
+        }
+        return current;
     }
 
     public String toString() {
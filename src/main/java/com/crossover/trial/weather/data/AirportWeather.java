@@ -0,0 +1,24 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * An airport and its readings, returned by queries that are not anchored on a single airport.
+ */
+public class AirportWeather {
+
+    private final AirportData airport;
+
+    private final AtmosphericInformation weather;
+
+    public AirportWeather(AirportData airport, AtmosphericInformation weather) {
+        this.airport = airport;
+        this.weather = weather;
+    }
+
+    public AirportData getAirport() {
+        return airport;
+    }
+
+    public AtmosphericInformation getWeather() {
+        return weather;
+    }
+}
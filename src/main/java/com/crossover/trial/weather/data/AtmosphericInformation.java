@@ -1,72 +1,106 @@
 package com.crossover.trial.weather.data;
 
 /**
- * encapsulates sensor information for a particular location
+ * encapsulates sensor information for a particular location. Instances are immutable snapshots, use the
+ * builder to derive an updated copy.
  */
 public class AtmosphericInformation {
 
     /** temperature in degrees celsius */
-    private DataPoint temperature;
+    private final DataPoint temperature;
 
     /** wind speed in km/h */
-    private DataPoint wind;
+    private final DataPoint wind;
 
     /** humidity in percent */
-    private DataPoint humidity;
+    private final DataPoint humidity;
 
     /** precipitation in cm */
-    private DataPoint precipitation;
+    private final DataPoint precipitation;
 
     /** pressure in mmHg */
-    private DataPoint pressure;
+    private final DataPoint pressure;
 
     /** cloud cover percent from 0 - 100 (integer) */
-    private DataPoint cloudCover;
+    private final DataPoint cloudCover;
 
     /** the last time this data was updated, in milliseconds since UTC epoch */
-    private long lastUpdateTime;
+    private final long lastUpdateTime;
+
+    /** collection time of each reading by point type ordinal, 0 if not known, not part of the json form */
+    private final transient long[] updateTimes;
+
+    /** an empty snapshot without any readings */
+    public AtmosphericInformation() {
+        this(new Builder());
+    }
+
+    private AtmosphericInformation(Builder builder) {
+        this.temperature = builder.temperature;
+        this.wind = builder.wind;
+        this.humidity = builder.humidity;
+        this.precipitation = builder.precipitation;
+        this.pressure = builder.pressure;
+        this.cloudCover = builder.cloudCover;
+        this.lastUpdateTime = builder.lastUpdateTime;
+        this.updateTimes = builder.updateTimes.clone();
+    }
 
     public DataPoint getTemperature() {
         return temperature;
     }
-    public void setTemperature(DataPoint temperature) {
-        this.temperature = temperature;
-    }
     public DataPoint getWind() {
         return wind;
     }
-    public void setWind(DataPoint wind) {
-        this.wind = wind;
-    }
     public DataPoint getHumidity() {
         return humidity;
     }
-    public void setHumidity(DataPoint humidity) {
-        this.humidity = humidity;
-    }
     public DataPoint getPrecipitation() {
         return precipitation;
     }
-    public void setPrecipitation(DataPoint precipitation) {
-        this.precipitation = precipitation;
-    }
     public DataPoint getPressure() {
         return pressure;
     }
-    public void setPressure(DataPoint pressure) {
-        this.pressure = pressure;
-    }
     public DataPoint getCloudCover() {
         return cloudCover;
     }
-    public void setCloudCover(DataPoint cloudCover) {
-        this.cloudCover = cloudCover;
-    }
     public long getLastUpdateTime() {
         return this.lastUpdateTime;
     }
-    public void setLastUpdateTime(long lastUpdateTime) {
-        this.lastUpdateTime = lastUpdateTime;
+
+    /**
+     * @param type the point type
+     * @return the reading for the given point type, null if there is none
+     */
+    public DataPoint get(DataPointType type) {
+        switch (type) {
+            case WIND:
+                return wind;
+            case TEMPERATURE:
+                return temperature;
+            case HUMIDTY:
+                return humidity;
+            case PRESSURE:
+                return pressure;
+            case CLOUDCOVER:
+                return cloudCover;
+            case PRECIPITATION:
+                return precipitation;
+        }
+        return null;
+    }
+
+    /**
+     * @param type the point type
+     * @return the collection time of the reading for the given point type, the last update time if it is not
+     * known, 0 if there is no reading
+     */
+    public long getUpdateTime(DataPointType type) {
+        if (get(type) == null) {
+            return 0;
+        }
+        long time = updateTimes[type.ordinal()];
+        return time == 0 ? lastUpdateTime : time;
     }
 
     public boolean hasNotNullField() {
@@ -77,4 +111,95 @@ public class AtmosphericInformation {
                 || getTemperature() != null
                 || getWind() != null;
     }
+
+    static public class Builder {
+        private DataPoint temperature;
+        private DataPoint wind;
+        private DataPoint humidity;
+        private DataPoint precipitation;
+        private DataPoint pressure;
+        private DataPoint cloudCover;
+        private long lastUpdateTime;
+        private long[] updateTimes = new long[DataPointType.values().length];
+
+        public Builder() { }
+
+        /** start from the readings of an existing snapshot */
+        public Builder(AtmosphericInformation from) {
+            this.temperature = from.temperature;
+            this.wind = from.wind;
+            this.humidity = from.humidity;
+            this.precipitation = from.precipitation;
+            this.pressure = from.pressure;
+            this.cloudCover = from.cloudCover;
+            this.lastUpdateTime = from.lastUpdateTime;
+            this.updateTimes = from.updateTimes.clone();
+        }
+
+        public Builder withTemperature(DataPoint temperature) {
+            this.temperature = temperature;
+            return this;
+        }
+
+        public Builder withWind(DataPoint wind) {
+            this.wind = wind;
+            return this;
+        }
+
+        public Builder withHumidity(DataPoint humidity) {
+            this.humidity = humidity;
+            return this;
+        }
+
+        public Builder withPrecipitation(DataPoint precipitation) {
+            this.precipitation = precipitation;
+            return this;
+        }
+
+        public Builder withPressure(DataPoint pressure) {
+            this.pressure = pressure;
+            return this;
+        }
+
+        public Builder withCloudCover(DataPoint cloudCover) {
+            this.cloudCover = cloudCover;
+            return this;
+        }
+
+        /** set the reading for the given point type, its collection time is taken to be the last update time */
+        public Builder with(DataPointType type, DataPoint dp) {
+            updateTimes[type.ordinal()] = 0;
+            switch (type) {
+                case WIND:
+                    return withWind(dp);
+                case TEMPERATURE:
+                    return withTemperature(dp);
+                case HUMIDTY:
+                    return withHumidity(dp);
+                case PRESSURE:
+                    return withPressure(dp);
+                case CLOUDCOVER:
+                    return withCloudCover(dp);
+                case PRECIPITATION:
+                    return withPrecipitation(dp);
+            }
+            return this;
+        }
+
+        /** set the reading for the given point type and the time it was collected */
+        public Builder with(DataPointType type, DataPoint dp, long updateTime) {
+            with(type, dp);
+            updateTimes[type.ordinal()] = updateTime;
+            return this;
+        }
+
+        public Builder withLastUpdateTime(long lastUpdateTime) {
+            this.lastUpdateTime = lastUpdateTime;
+            return this;
+        }
+
+        public AtmosphericInformation build() {
+            return new AtmosphericInformation(this);
+        }
+    }
 }
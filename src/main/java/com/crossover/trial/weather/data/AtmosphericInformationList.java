@@ -0,0 +1,73 @@
+package com.crossover.trial.weather.data;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable result of a weather query. The json form is kept with the list once it has been encoded, so a cached
+ * result is serialized once however often it is served. Results built from readings encoded on write carry the
+ * json form of each item instead, written one after the other.
+ */
+public class AtmosphericInformationList extends AbstractList<AtmosphericInformation> implements RandomAccess {
+
+    private final AtmosphericInformation[] items;
+
+    /** the json form of each item, null unless all items were encoded on write */
+    private final byte[][] encodedItems;
+
+    /** the encoded json form, null until the list is first written */
+    private volatile byte[] json;
+
+    public AtmosphericInformationList(List<AtmosphericInformation> items) {
+        this(items, null);
+    }
+
+    /**
+     * @param items the readings
+     * @param encodedItems the json form of each item, or null
+     */
+    public AtmosphericInformationList(List<AtmosphericInformation> items, List<byte[]> encodedItems) {
+        this.items = items.toArray(new AtmosphericInformation[items.size()]);
+        this.encodedItems = encodedItems == null ? null : encodedItems.toArray(new byte[encodedItems.size()][]);
+    }
+
+    @Override
+    public AtmosphericInformation get(int index) {
+        return items[index];
+    }
+
+    @Override
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * @param index the item index
+     * @return the json form of an item, null if the items were not encoded on write
+     */
+    public byte[] getEncodedItem(int index) {
+        return encodedItems == null ? null : encodedItems[index];
+    }
+
+    /**
+     * @return true if the json form of every item is known
+     */
+    public boolean isEncoded() {
+        return encodedItems != null;
+    }
+
+    /**
+     * @return the encoded json form of the list, null if it was not encoded yet
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @param json the encoded json form of the list, must not be modified afterwards
+     */
+    public void setJson(byte[] json) {
+        this.json = json;
+    }
+}
@@ -23,7 +23,7 @@ public class DataPoint {
     /** private constructor, use the builder to create this object */
     private DataPoint() { }
 
-    protected DataPoint(int first, int second, int mean, int third, int count) {
+    protected DataPoint(int first, int second, double mean, int third, int count) {
         this.setFirst(first);
         this.setMean(mean);
         this.setSecond(second);
@@ -84,7 +84,7 @@ public class DataPoint {
 
     static public class Builder {
         private int first;
-        private int mean;
+        private double mean;
         private int median;
         private int last;
         private int count;
@@ -96,7 +96,7 @@ public class DataPoint {
             return this;
         }
 
-        public Builder withMean(int mean) {
+        public Builder withMean(double mean) {
             this.mean = mean;
             return this;
         }
@@ -117,7 +117,7 @@ public class DataPoint {
         }
 
         public DataPoint build() {
-            return new DataPoint(this.first, this.mean, this.median, this.last, this.count);
+            return new DataPoint(this.first, this.median, this.mean, this.last, this.count);
         }
     }
 }
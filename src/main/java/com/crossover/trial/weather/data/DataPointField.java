@@ -0,0 +1,48 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * The values held by a {@link DataPoint}, named as in its json form.
+ */
+public enum DataPointField {
+    MEAN,
+    FIRST,
+    SECOND,
+    THIRD,
+    COUNT;
+
+    private static final DataPointField[] VALUES = values();
+
+    /**
+     * @param dp the data point
+     * @return the value of this field in the data point
+     */
+    public double of(DataPoint dp) {
+        switch (this) {
+            case FIRST:
+                return dp.getFirst();
+            case SECOND:
+                return dp.getSecond();
+            case THIRD:
+                return dp.getThird();
+            case COUNT:
+                return dp.getCount();
+            default:
+                return dp.getMean();
+        }
+    }
+
+    /**
+     * Case insensitive lookup by name.
+     *
+     * @param name the field name
+     * @return the field or null if the name matches none
+     */
+    public static DataPointField lookup(String name) {
+        for (DataPointField field : VALUES) {
+            if (field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,306 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * Reads the json form of a {@link DataPoint} without reflection or intermediate objects, for the single point
+ * ingestion path. The values of the last parsed point are kept in the parser, so one instance can be reused for
+ * every point a thread parses. Instances are not thread safe.
+ *
+ * Like Gson does for {@link DataPoint}, the fields mean, first, second, third and count may be numbers or quoted
+ * numbers, missing or null fields are 0 and any other field is skipped.
+ */
+public class DataPointParser {
+
+    private static final String[] FIELDS = {"mean", "first", "second", "third", "count"};
+
+    private static final int MEAN = 0;
+
+    private static final int UNKNOWN_FIELD = -1;
+
+    private static final int MALFORMED = -2;
+
+    /** digits of a number that are accumulated exactly in a long */
+    private static final int MAX_DIGITS = 18;
+
+    /** powers of ten that are exact doubles */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CharSequence in;
+
+    private int pos;
+
+    private double number;
+
+    private double mean;
+
+    /** first, second, third and count */
+    private final int[] stats = new int[4];
+
+    /**
+     * @param json a json object
+     * @return true if the object was parsed, false if it is not valid json or a field holds no valid value
+     */
+    public boolean parse(CharSequence json) {
+        in = json;
+        pos = 0;
+        mean = 0;
+        stats[0] = stats[1] = stats[2] = stats[3] = 0;
+        try {
+            return json != null && parseObject();
+        } finally {
+            in = null;
+        }
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public int getFirst() {
+        return stats[0];
+    }
+
+    public int getSecond() {
+        return stats[1];
+    }
+
+    public int getThird() {
+        return stats[2];
+    }
+
+    public int getCount() {
+        return stats[3];
+    }
+
+    /**
+     * @return the last parsed point as a new {@link DataPoint}
+     */
+    public DataPoint toDataPoint() {
+        return new DataPoint.Builder().withMean(mean).withFirst(stats[0]).withMedian(stats[1])
+                .withLast(stats[2]).withCount(stats[3]).build();
+    }
+
+    private boolean parseObject() {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return atEnd();
+        }
+        while (true) {
+            skipWhitespace();
+            int field = readFieldName();
+            if (field == MALFORMED) {
+                return false;
+            }
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!(field == UNKNOWN_FIELD ? skipValue() : readField(field))) {
+                return false;
+            }
+            skipWhitespace();
+            if (consume('}')) {
+                return atEnd();
+            }
+            if (!consume(',')) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the field in {@link #FIELDS}, {@link #UNKNOWN_FIELD} or {@link #MALFORMED}
+     */
+    private int readFieldName() {
+        int start = pos + 1;
+        if (!skipString()) {
+            return MALFORMED;
+        }
+        int length = pos - 1 - start;
+        for (int field = 0; field < FIELDS.length; field++) {
+            String name = FIELDS[field];
+            if (name.length() == length && regionMatches(start, name)) {
+                return field;
+            }
+        }
+        return UNKNOWN_FIELD;
+    }
+
+    private boolean readField(int field) {
+        if (matchLiteral("null")) {
+            return true;
+        }
+        boolean quoted = consume('"');
+        if (!readNumber() || quoted && !consume('"')) {
+            return false;
+        }
+        if (field == MEAN) {
+            mean = number;
+            return true;
+        }
+        if (number != (int) number) {
+            return false;
+        }
+        stats[field - 1] = (int) number;
+        return true;
+    }
+
+    /**
+     * Reads a json number into {@link #number}. Numbers of up to 18 digits with a small exponent are converted
+     * with a single correctly rounded operation, longer ones fall back to {@link Double#parseDouble}.
+     */
+    private boolean readNumber() {
+        int start = pos;
+        boolean negative = consume('-');
+        long digits = 0;
+        int digitCount = 0;
+        int scale = 0;
+        while (pos < in.length() && isDigit(in.charAt(pos))) {
+            digits = digits * 10 + (in.charAt(pos++) - '0');
+            digitCount++;
+        }
+        if (digitCount == 0) {
+            return false;
+        }
+        if (consume('.')) {
+            int fractionStart = pos;
+            while (pos < in.length() && isDigit(in.charAt(pos))) {
+                digits = digits * 10 + (in.charAt(pos++) - '0');
+                digitCount++;
+                scale--;
+            }
+            if (pos == fractionStart) {
+                return false;
+            }
+        }
+        if (pos < in.length() && (in.charAt(pos) == 'e' || in.charAt(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = consume('-');
+            if (!negativeExponent) {
+                consume('+');
+            }
+            int exponentStart = pos;
+            int exponent = 0;
+            while (pos < in.length() && isDigit(in.charAt(pos))) {
+                exponent = Math.min(exponent * 10 + (in.charAt(pos++) - '0'), 10000);
+            }
+            if (pos == exponentStart) {
+                return false;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        if (digitCount <= MAX_DIGITS && digits < 1L << 53 && Math.abs(scale) < POWERS_OF_TEN.length) {
+            double value = scale < 0 ? digits / POWERS_OF_TEN[-scale] : digits * POWERS_OF_TEN[scale];
+            number = negative ? -value : value;
+        } else {
+            number = Double.parseDouble(in.subSequence(start, pos).toString());
+        }
+        return true;
+    }
+
+    /** skips a value of an unknown field, including nested objects and arrays */
+    private boolean skipValue() {
+        int depth = 0;
+        do {
+            skipWhitespace();
+            if (pos >= in.length()) {
+                return false;
+            }
+            char c = in.charAt(pos);
+            if (c == '"') {
+                if (!skipString()) {
+                    return false;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+                pos++;
+            } else if (c == '}' || c == ']' || c == ',' || c == ':') {
+                if (depth == 0 || (c == '}' || c == ']') && --depth < 0) {
+                    return false;
+                }
+                pos++;
+            } else {
+                int start = pos;
+                while (pos < in.length() && isLiteral(in.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == start) {
+                    return false;
+                }
+            }
+        } while (depth > 0);
+        return true;
+    }
+
+    /** skips a string including its quotes */
+    private boolean skipString() {
+        if (!consume('"')) {
+            return false;
+        }
+        while (pos < in.length()) {
+            char c = in.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchLiteral(String literal) {
+        if (pos + literal.length() <= in.length() && regionMatches(pos, literal)) {
+            pos += literal.length();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean regionMatches(int start, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (in.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean consume(char c) {
+        if (pos < in.length() && in.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < in.length() && Character.isWhitespace(in.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean atEnd() {
+        skipWhitespace();
+        return pos == in.length();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLiteral(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.';
+    }
+}
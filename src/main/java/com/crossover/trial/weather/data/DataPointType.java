@@ -11,5 +11,35 @@ public enum DataPointType {
     HUMIDTY,
     PRESSURE,
     CLOUDCOVER,
-    PRECIPITATION
+    PRECIPITATION;
+
+    private static final DataPointType[] VALUES = values();
+
+    /**
+     * Case insensitive lookup by name, without copying the name.
+     *
+     * @param name the point type name
+     * @return the point type or null if the name matches none
+     */
+    public static DataPointType lookup(CharSequence name) {
+        if (name == null) {
+            return null;
+        }
+        for (DataPointType type : VALUES) {
+            String candidate = type.name();
+            if (candidate.length() == name.length() && matchesIgnoreCase(candidate, name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesIgnoreCase(String upperCase, CharSequence name) {
+        for (int i = 0; i < upperCase.length(); i++) {
+            if (Character.toUpperCase(name.charAt(i)) != upperCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
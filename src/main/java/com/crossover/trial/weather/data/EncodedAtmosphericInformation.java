@@ -0,0 +1,86 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * Readings of an airport together with their json form, encoded once when the readings change so queries can
+ * write the bytes as they are. The encoding matches the one Jackson produces for {@link AtmosphericInformation}.
+ */
+public final class EncodedAtmosphericInformation {
+
+    private static final DataPointType[] FIELD_ORDER = {DataPointType.TEMPERATURE, DataPointType.WIND,
+            DataPointType.HUMIDTY, DataPointType.PRECIPITATION, DataPointType.PRESSURE, DataPointType.CLOUDCOVER};
+
+    private static final String[] FIELD_NAMES = {"temperature", "wind", "humidity", "precipitation", "pressure",
+            "cloudCover"};
+
+    private final long version;
+
+    private final AtmosphericInformation atmosphericInformation;
+
+    private final byte[] json;
+
+    /**
+     * @param version the version of the airport's readings the snapshot was taken at
+     * @param atmosphericInformation the readings
+     */
+    public EncodedAtmosphericInformation(long version, AtmosphericInformation atmosphericInformation) {
+        this.version = version;
+        this.atmosphericInformation = atmosphericInformation;
+        this.json = encode(atmosphericInformation);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public AtmosphericInformation getAtmosphericInformation() {
+        return atmosphericInformation;
+    }
+
+    /**
+     * @return the json form, shared and must not be modified
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return the json form of the readings, with the field order and number format of Jackson
+     */
+    public static byte[] encode(AtmosphericInformation ai) {
+        StringBuilder sb = new StringBuilder(400);
+        sb.append('{');
+        for (int i = 0; i < FIELD_ORDER.length; i++) {
+            sb.append('"').append(FIELD_NAMES[i]).append("\":");
+            DataPoint dp = ai.get(FIELD_ORDER[i]);
+            if (dp == null) {
+                sb.append("null");
+            } else {
+                sb.append("{\"mean\":");
+                appendDouble(sb, dp.getMean());
+                sb.append(",\"first\":").append(dp.getFirst())
+                        .append(",\"second\":").append(dp.getSecond())
+                        .append(",\"third\":").append(dp.getThird())
+                        .append(",\"count\":").append(dp.getCount())
+                        .append('}');
+            }
+            sb.append(',');
+        }
+        sb.append("\"lastUpdateTime\":").append(ai.getLastUpdateTime()).append('}');
+
+        byte[] json = new byte[sb.length()];
+        for (int i = 0; i < json.length; i++) {
+            // field names and numbers are ascii
+            json[i] = (byte) sb.charAt(i);
+        }
+        return json;
+    }
+
+    private static void appendDouble(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // Jackson quotes values that are not json numbers
+            sb.append('"').append(value).append('"');
+        } else {
+            sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * A past reading of a point type and the time it was collected.
+ */
+public class HistoricalDataPoint {
+
+    /** collection time in milliseconds since UTC epoch */
+    private final long time;
+
+    private final DataPoint dataPoint;
+
+    public HistoricalDataPoint(long time, DataPoint dataPoint) {
+        this.time = time;
+        this.dataPoint = dataPoint;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public DataPoint getDataPoint() {
+        return dataPoint;
+    }
+}
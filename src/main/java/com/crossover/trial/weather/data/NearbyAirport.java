@@ -0,0 +1,19 @@
+package com.crossover.trial.weather.data;
+
+/**
+ * An airport found around a point, its distance from the point and its readings.
+ */
+public class NearbyAirport extends AirportWeather {
+
+    /** great-circle distance in KM */
+    private final double distance;
+
+    public NearbyAirport(AirportData airport, double distance, AtmosphericInformation weather) {
+        super(airport, weather);
+        this.distance = distance;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+}
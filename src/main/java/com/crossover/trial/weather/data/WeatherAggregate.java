@@ -0,0 +1,155 @@
+package com.crossover.trial.weather.data;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Count, mean, min, max and percentiles of one value of a point type over a set of airports. Airports without a
+ * reading of the point type are not counted, the statistics are absent if none has one.
+ */
+public class WeatherAggregate {
+
+    /** percentiles computed when none are asked for */
+    public static final double[] DEFAULT_PERCENTILES = {50, 90, 99};
+
+    private final String pointType;
+
+    private final String field;
+
+    private final int count;
+
+    private final Double mean;
+
+    private final Double min;
+
+    private final Double max;
+
+    /** nearest rank percentiles keyed "p" and the percentile, like p50 or p99.9 */
+    private final Map<String, Double> percentiles;
+
+    private WeatherAggregate(Builder builder, double[] percentileRanks) {
+        this.pointType = builder.type.name();
+        this.field = builder.field.name().toLowerCase();
+        this.count = builder.count;
+        this.mean = builder.count == 0 ? null : builder.sum / builder.count;
+        this.min = builder.count == 0 ? null : builder.min;
+        this.max = builder.count == 0 ? null : builder.max;
+        this.percentiles = new LinkedHashMap<>();
+        if (builder.count > 0) {
+            Arrays.sort(builder.values, 0, builder.count);
+            for (double rank : percentileRanks) {
+                int index = (int) Math.ceil(rank / 100 * builder.count) - 1;
+                percentiles.put(key(rank), builder.values[Math.max(0, Math.min(builder.count - 1, index))]);
+            }
+        }
+    }
+
+    /**
+     * @param percentiles the percentiles as given in a query, null or empty for {@link #DEFAULT_PERCENTILES}
+     * @return the percentiles as numbers
+     * @throws IllegalArgumentException if a percentile is not a number in (0, 100]
+     */
+    public static double[] percentileRanks(List<String> percentiles) {
+        if (percentiles == null || percentiles.isEmpty()) {
+            return DEFAULT_PERCENTILES;
+        }
+        double[] ranks = new double[percentiles.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = Double.parseDouble(percentiles.get(i));
+            if (!(ranks[i] > 0 && ranks[i] <= 100)) {
+                throw new IllegalArgumentException("Percentile out of range " + percentiles.get(i));
+            }
+        }
+        return ranks;
+    }
+
+    private static String key(double rank) {
+        return rank == Math.rint(rank) ? "p" + (long) rank : "p" + rank;
+    }
+
+    public String getPointType() {
+        return pointType;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    /**
+     * Collects the values in a primitive buffer and keeps the running sum, min and max.
+     */
+    public static class Builder {
+
+        private final DataPointType type;
+
+        private final DataPointField field;
+
+        private double[] values = new double[64];
+
+        private int count;
+
+        private double sum;
+
+        private double min = Double.POSITIVE_INFINITY;
+
+        private double max = Double.NEGATIVE_INFINITY;
+
+        public Builder(DataPointType type, DataPointField field) {
+            this.type = type;
+            this.field = field;
+        }
+
+        /**
+         * @param value the value of an airport, NaN for an airport without a reading, which is skipped
+         */
+        public Builder add(double value) {
+            if (Double.isNaN(value)) {
+                return this;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            return this;
+        }
+
+        /**
+         * @param value a reading of the point type, null for an airport without one
+         */
+        public Builder add(DataPoint value) {
+            return value == null ? this : add(field.of(value));
+        }
+
+        /**
+         * @param percentileRanks the percentiles to compute, each in (0, 100]
+         */
+        public WeatherAggregate build(double... percentileRanks) {
+            return new WeatherAggregate(this, percentileRanks);
+        }
+    }
+}
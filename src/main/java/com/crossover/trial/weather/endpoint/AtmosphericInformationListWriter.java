@@ -0,0 +1,68 @@
+package com.crossover.trial.weather.endpoint;
+
+import com.crossover.trial.weather.data.AtmosphericInformationList;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes weather query results. Items encoded on write are copied to the response as they are, otherwise a result
+ * is encoded with Jackson the first time it is written and the bytes are kept with it, cached results are written
+ * again without serializing.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class AtmosphericInformationListWriter implements MessageBodyWriter<AtmosphericInformationList> {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return AtmosphericInformationList.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(AtmosphericInformationList list, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        if (list.isEncoded()) {
+            long size = 2 + Math.max(0, list.size() - 1);
+            for (int i = 0; i < list.size(); i++) {
+                size += list.getEncodedItem(i).length;
+            }
+            return size;
+        }
+        byte[] json = list.getJson();
+        return json == null ? -1 : json.length;
+    }
+
+    @Override
+    public void writeTo(AtmosphericInformationList list, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        if (list.isEncoded()) {
+            entityStream.write('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    entityStream.write(',');
+                }
+                entityStream.write(list.getEncodedItem(i));
+            }
+            entityStream.write(']');
+            return;
+        }
+        byte[] json = list.getJson();
+        if (json == null) {
+            json = mapper.writeValueAsBytes(list);
+            list.setJson(json);
+        }
+        entityStream.write(json);
+    }
+}
@@ -0,0 +1,62 @@
+package com.crossover.trial.weather.endpoint;
+
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.RequestExecutorProvider;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Hands each request to the executor of its api, see {@link RequestExecutors}, so the thread that read the request
+ * is free for I/O again. The request itself is served by the wrapped handler, usually the Jersey container.
+ */
+public class DispatchingHttpHandler extends HttpHandler {
+
+    /** request attribute set when the executor refused a request */
+    private static final String REJECTED = DispatchingHttpHandler.class.getName() + ".rejected";
+
+    private final HttpHandler handler;
+
+    private final RequestExecutors executors;
+
+    private final RequestExecutorProvider executorProvider;
+
+    public DispatchingHttpHandler(HttpHandler handler, RequestExecutors executors) {
+        this.handler = handler;
+        this.executors = executors;
+        this.executorProvider = request -> {
+            RequestExecutor executor = this.executors.forPath(request.getRequestURI());
+            return command -> {
+                if (!executor.tryExecute(command)) {
+                    // answered on the calling thread without running the request
+                    request.setAttribute(REJECTED, Boolean.TRUE);
+                    command.run();
+                }
+            };
+        };
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        if (request.getAttribute(REJECTED) != null) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE_503.getStatusCode());
+            return;
+        }
+        handler.service(request, response);
+    }
+
+    @Override
+    public RequestExecutorProvider getRequestExecutorProvider() {
+        return executorProvider;
+    }
+
+    @Override
+    public void start() {
+        handler.start();
+    }
+
+    @Override
+    public void destroy() {
+        handler.destroy();
+    }
+}
@@ -0,0 +1,97 @@
+package com.crossover.trial.weather.endpoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the requests of one api on its own fixed thread pool or fork-join pool. At most a bounded number of
+ * requests wait for a thread, further ones are refused so the caller can answer them right away.
+ */
+public class RequestExecutor {
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    private final int maxQueued;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name prefix of the thread names
+     * @param forkJoin use a fork-join pool in async mode instead of a fixed thread pool
+     * @param threads the number of threads
+     * @param maxQueued the number of requests that may wait for a thread
+     */
+    public RequestExecutor(String name, boolean forkJoin, int threads, int maxQueued) {
+        this.threads = threads;
+        this.maxQueued = maxQueued;
+        AtomicInteger count = new AtomicInteger();
+        if (forkJoin) {
+            this.executor = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(name + "-" + count.incrementAndGet());
+                return thread;
+            }, null, true);
+        } else {
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    /**
+     * @return false if the request was refused because too many are waiting
+     */
+    public boolean tryExecute(Runnable request) {
+        if (queued.incrementAndGet() + active.get() > threads + maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        executor.execute(() -> {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                request.run();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return the number of waiting and running requests and the totals of completed and refused ones
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", (long) queued.get());
+        stats.put("active", (long) active.get());
+        stats.put("completed", completed.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,72 @@
+package com.crossover.trial.weather.endpoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The executors the endpoints run on, one for the query api and one for the collector api, so slow queries never
+ * hold the threads ingestion runs on.
+ */
+public class RequestExecutors {
+
+    /** system property selecting the executor kind, "pool" (default) for fixed thread pools or "forkjoin" */
+    public static final String EXECUTOR_PROPERTY = "weather.executor";
+
+    /** system property setting the threads running queries, default twice the number of processors */
+    public static final String QUERY_THREADS_PROPERTY = "weather.executor.queryThreads";
+
+    /** system property setting the threads running updates, default the number of processors */
+    public static final String COLLECT_THREADS_PROPERTY = "weather.executor.collectThreads";
+
+    /** system property setting the requests of an api that may wait for a thread before further ones get a 503 */
+    public static final String QUEUE_PROPERTY = "weather.executor.queue";
+
+    private static final String COLLECT_PATH = "/collect";
+
+    private static RequestExecutors instance;
+
+    private static RequestExecutor query;
+
+    private static RequestExecutor collect;
+
+    static {
+        boolean forkJoin = "forkjoin".equalsIgnoreCase(System.getProperty(EXECUTOR_PROPERTY, "pool"));
+        int processors = Runtime.getRuntime().availableProcessors();
+        int queue = Integer.getInteger(QUEUE_PROPERTY, 10000);
+        query = new RequestExecutor("weather-query", forkJoin, Integer.getInteger(QUERY_THREADS_PROPERTY, 2 * processors),
+                queue);
+        collect = new RequestExecutor("weather-collect", forkJoin, Integer.getInteger(COLLECT_THREADS_PROPERTY, processors),
+                queue);
+        instance = new RequestExecutors();
+    }
+
+    private RequestExecutors() {
+    }
+
+    public static RequestExecutors getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param path the request path
+     * @return the executor for requests to the path
+     */
+    RequestExecutor forPath(String path) {
+        return path != null && path.startsWith(COLLECT_PATH) ? collect : query;
+    }
+
+    /**
+     * @return the number of waiting and running requests and the totals of completed and refused ones per api
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put("query", query.getStats());
+        stats.put("collect", collect.getStats());
+        return stats;
+    }
+
+    public void shutdown() {
+        query.shutdown();
+        collect.shutdown();
+    }
+}
@@ -2,12 +2,24 @@ package com.crossover.trial.weather.endpoint;
 
 import com.crossover.trial.weather.service.AirportService;
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.exception.WeatherLogException;
 import com.crossover.trial.weather.data.AirportData;
-import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.replication.Replication;
 import com.crossover.trial.weather.service.WeatherService;
 import com.google.gson.Gson;
-import javax.ws.rs.*;
+import com.google.gson.JsonParseException;
+
+import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -25,6 +37,8 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
 
     private WeatherService weatherService = WeatherService.getInstance();
 
+    private Replication replication = Replication.getInstance();
+
 
     /** shared gson json to object factory */
     public final static Gson gson = new Gson();
@@ -35,17 +49,41 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
     }
 
     @Override
-    public Response updateWeather(@PathParam("iata") String iataCode,
-                                  @PathParam("pointType") String pointType,
+    public Response updateWeather(String iataCode,
+                                  String pointType,
                                   String datapointJson) {
+        if (replication.isReadOnly()) {
+            return readOnly();
+        }
         try {
-            weatherService.addDataPoint(iataCode, pointType, gson.fromJson(datapointJson, DataPoint.class));
+            weatherService.addDataPoint(iataCode, pointType, datapointJson);
+        } catch (WeatherLogException e) {
+            // the update is served but a restart may lose it, it must not be acknowledged as durable
+            LOGGER.log(Level.SEVERE, "Weather update not logged", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
         } catch (WeatherException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.FINE, "Rejected weather update", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
         }
         return Response.status(Response.Status.OK).build();
     }
 
+    @Override
+    public Response updateWeatherBatch(InputStream records) {
+        if (replication.isReadOnly()) {
+            return readOnly();
+        }
+        List<String> status = new ArrayList<>();
+        try {
+            weatherService.addDataPoints(new InputStreamReader(records, StandardCharsets.UTF_8), status);
+            return batchResponse(status);
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            LOGGER.log(Level.WARNING, "Malformed weather batch", e);
+            // the records before the malformed one are applied, the client needs their status to retry the rest
+            return batchError(status, e);
+        }
+    }
+
 
     @Override
     public Response getAirports() {
@@ -54,24 +92,42 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
 
 
     @Override
-    public Response getAirport(@PathParam("iata") String iata) {
+    public Response getAirport(String iata) {
         AirportData ad = airportDataService.getAirportData(iata);
         return Response.status(Response.Status.OK).entity(ad).build();
     }
 
 
     @Override
-    @Path("/airport/{iata}/{lat}/{long}")
-    public Response addAirport(@PathParam("iata") String iata,
-                               @PathParam("lat") String latString,
-                               @PathParam("long") String longString) {
+    public Response addAirport(String iata,
+                               String latString,
+                               String longString) {
+        if (replication.isReadOnly()) {
+            return readOnly();
+        }
         airportDataService.addAirport(iata.replaceAll("\"", ""), Double.valueOf(latString), Double.valueOf(longString));
         return Response.status(Response.Status.OK).build();
     }
 
 
     @Override
-    public Response deleteAirport(@PathParam("iata") String iata) {
+    public Response addAirports(InputStream airports) {
+        if (replication.isReadOnly()) {
+            return readOnly();
+        }
+        List<String> status = new ArrayList<>();
+        try {
+            airportDataService.addAirports(new InputStreamReader(airports, StandardCharsets.UTF_8), status);
+            return batchResponse(status);
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            LOGGER.log(Level.WARNING, "Malformed airport batch", e);
+            return batchError(status, e);
+        }
+    }
+
+
+    @Override
+    public Response deleteAirport(String iata) {
         return Response.status(Response.Status.NOT_IMPLEMENTED).build();
     }
 
@@ -81,4 +137,26 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint {
         return Response.noContent().build();
     }
 
+    /** a follower only takes the changes of its leader */
+    private static Response readOnly() {
+        return Response.status(Response.Status.FORBIDDEN).entity("read-only replica").build();
+    }
+
+    /** json dict with the number of accepted items and the status of each item of a batch */
+    private static Response batchResponse(List<String> status) {
+        Map<String, Object> retval = new HashMap<>();
+        retval.put("accepted", status.stream().filter(WeatherService.STATUS_OK::equals).count());
+        retval.put("status", status);
+        return Response.status(Response.Status.OK).entity(gson.toJson(retval)).build();
+    }
+
+    /** bad request with the error and the status of each item of a batch applied before it */
+    private static Response batchError(List<String> status, Exception e) {
+        Map<String, Object> retval = new HashMap<>();
+        retval.put("accepted", status.stream().filter(WeatherService.STATUS_OK::equals).count());
+        retval.put("status", status);
+        retval.put("error", e.getMessage());
+        return Response.status(Response.Status.BAD_REQUEST).entity(gson.toJson(retval)).build();
+    }
+
 }
@@ -1,12 +1,20 @@
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.ingest.BinaryIngest;
+import com.crossover.trial.weather.metrics.RequestMetrics;
+import com.crossover.trial.weather.replication.Replication;
 import com.crossover.trial.weather.service.AirportService;
 import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.service.WeatherSubscriptions;
 import com.google.gson.Gson;
+import org.glassfish.jersey.server.ChunkedOutput;
 
 import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import java.util.*;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -38,10 +46,26 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint {
         retval.put("datasize", weatherService.getDataSize());
         retval.put("iata_freq", airportDataService.getFrequencyMap());
         retval.put("radius_freq", airportDataService.getRadiusFrequency());
+        retval.put("query_cache", airportDataService.getQueryCacheStats());
+        retval.put("executors", RequestExecutors.getInstance().getStats());
+        retval.put("subscriptions", WeatherSubscriptions.getInstance().getStats());
+        Map<String, Object> replication = Replication.getInstance().getStats();
+        if (replication != null) {
+            retval.put("replication", replication);
+        }
+        Map<String, Long> ingest = BinaryIngest.getInstance().getStats();
+        if (ingest != null) {
+            retval.put("ingest", ingest);
+        }
 
         return gson.toJson(retval);
     }
 
+    @Override
+    public String metrics() {
+        return gson.toJson(RequestMetrics.getInstance().getReport());
+    }
+
     /**
      * Given a query in json format {'iata': CODE, 'radius': km} extracts the requested airport information and
      * return a list of matching atmosphere information.
@@ -56,4 +80,89 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint {
         return Response.status(Response.Status.OK).entity(airportDataService.getWeather(iata, radiusString)).build();
     }
 
+    @Override
+    public Response weatherAround(String latitude, String longitude, String radiusString) {
+        try {
+            return Response.status(Response.Status.OK)
+                    .entity(gson.toJson(airportDataService.getWeatherAround(latitude, longitude, radiusString)))
+                    .build();
+        } catch (WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad area query", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    @Override
+    public Response weatherInBox(String minLatitude, String minLongitude, String maxLatitude, String maxLongitude) {
+        try {
+            return Response.status(Response.Status.OK).entity(gson.toJson(
+                    airportDataService.getWeatherInBox(minLatitude, minLongitude, maxLatitude, maxLongitude)))
+                    .build();
+        } catch (WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad box query", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    @Override
+    public Response nearest(String iata, String k, String pointType) {
+        try {
+            return Response.status(Response.Status.OK)
+                    .entity(gson.toJson(airportDataService.getNearest(iata, k, pointType))).build();
+        } catch (WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad nearest query", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    @Override
+    public Response aggregate(String iata, String radiusString, String pointType, String field,
+                              List<String> percentiles) {
+        try {
+            return Response.status(Response.Status.OK).entity(gson.toJson(
+                    airportDataService.getAggregate(iata, radiusString, pointType, field, percentiles))).build();
+        } catch (WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad aggregate query", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    @Override
+    public ChunkedOutput<String> subscribe(List<String> iatas, String radiusString) {
+        Set<String> airports = new LinkedHashSet<>();
+        try {
+            double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.parseDouble(radiusString);
+            for (String iata : iatas) {
+                if (AirportService.getAirportData(iata) == null) {
+                    throw new WeatherException("Unknown airport " + iata);
+                }
+                airports.addAll(radius > 0 ? airportDataService.getAirportsWithin(iata, radius)
+                        : Collections.singleton(iata));
+            }
+            if (airports.isEmpty()) {
+                throw new WeatherException("No airport to subscribe to");
+            }
+        } catch (NumberFormatException | WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad subscription", e);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build());
+        }
+        ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+        WeatherSubscriptions.getInstance().subscribe(airports, new WeatherEventSink(output));
+        return output;
+    }
+
+    @Override
+    public Response history(String iata, String pointType, String from, String to) {
+        try {
+            long fromTime = from == null ? 0 : Long.parseLong(from);
+            long toTime = to == null ? Long.MAX_VALUE : Long.parseLong(to);
+            return Response.status(Response.Status.OK)
+                    .entity(gson.toJson(weatherService.getHistory(iata, pointType, fromTime, toTime))).build();
+        } catch (NumberFormatException | WeatherException e) {
+            LOGGER.log(Level.FINE, "Bad history query", e);
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
 }
@@ -6,6 +6,7 @@ import com.crossover.trial.weather.data.DataPointType;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
 
 /**
  * The interface shared to airport weather collection systems.
@@ -39,6 +40,22 @@ public interface WeatherCollectorEndpoint {
                            @PathParam("pointType") String pointType,
                            String datapointJson);
 
+    /**
+     * Update the atmospheric information of many airports in one request. The body is a json array of
+     * {"iata": CODE, "pointType": TYPE, "datapoint": {...}} records which is parsed and applied record by record
+     * as it is read.
+     *
+     * @param records the json formatted records
+     *
+     * @return HTTP Response code and a json dict with the number of accepted records and the status of each
+     * record in request order
+     */
+    @POST
+    @Path("/weather")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response updateWeatherBatch(InputStream records);
+
     /**
      * Return a list of known airports as a json formatted list
      *
@@ -74,6 +91,21 @@ public interface WeatherCollectorEndpoint {
                         @PathParam("lat") String latString,
                         @PathParam("long") String longString);
 
+    /**
+     * Add many airports in one request. The body is a json array of
+     * {"iata": CODE, "latitude": degrees, "longitude": degrees} objects which is parsed and applied airport by
+     * airport as it is read.
+     *
+     * @param airports the json formatted airports
+     * @return HTTP Response code and a json dict with the number of added airports and the status of each airport
+     * in request order
+     */
+    @POST
+    @Path("/airports")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response addAirports(InputStream airports);
+
     /**
      * Remove an airport from the known airport list
      *
@@ -0,0 +1,56 @@
+package com.crossover.trial.weather.endpoint;
+
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
+import com.crossover.trial.weather.service.WeatherSubscriptions;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the events of a weather subscription to an open response as server-sent events. Each event is named
+ * "weather", its id is the version of the readings and its data is {"iata": CODE, "weather": {...}} with the
+ * readings in the form of a weather query.
+ */
+public class WeatherEventSink implements WeatherSubscriptions.Sink {
+
+    private final ChunkedOutput<String> output;
+
+    public WeatherEventSink(ChunkedOutput<String> output) {
+        this.output = output;
+    }
+
+    @Override
+    public boolean send(String iataCode, EncodedAtmosphericInformation readings) {
+        return write("event: weather\nid: " + readings.getVersion() + "\ndata: {\"iata\":"
+                + RestWeatherQueryEndpoint.gson.toJson(iataCode) + ",\"weather\":"
+                + new String(readings.getJson(), StandardCharsets.UTF_8) + "}\n\n");
+    }
+
+    @Override
+    public boolean keepAlive() {
+        // a comment line, ignored by clients
+        return write(":\n\n");
+    }
+
+    @Override
+    public void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            // the client is gone already
+        }
+    }
+
+    private boolean write(String chunk) {
+        if (output.isClosed()) {
+            return false;
+        }
+        try {
+            output.write(chunk);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
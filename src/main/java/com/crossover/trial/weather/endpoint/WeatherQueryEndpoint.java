@@ -1,13 +1,16 @@
 package com.crossover.trial.weather.endpoint;
 
 import com.crossover.trial.weather.data.AtmosphericInformation;
+import org.glassfish.jersey.server.ChunkedOutput;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.List;
 
 /**
  * The query only API for the Weather Server App. This API is made available to the public internet.
@@ -16,6 +19,9 @@ import javax.ws.rs.core.Response;
  */
 public interface WeatherQueryEndpoint {
 
+    /** media type of server-sent events */
+    String EVENT_STREAM = "text/event-stream";
+
     /**
      * Retrieve health and status information for the the query api. Returns information about how the number
      * of datapoints currently held in memory, the frequency of requests for each IATA code and the frequency of
@@ -27,6 +33,17 @@ public interface WeatherQueryEndpoint {
     @Path("/ping")
     String ping();
 
+    /**
+     * Retrieve latency percentiles and throughput of the served requests for each endpoint and status code.
+     *
+     * @return a JSON formatted dict with the request count, the requests per second over the last minute and
+     * latency percentiles in microseconds per endpoint and status code
+     */
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    String metrics();
+
     /**
      * Retrieve the most up to date atmospheric information from the given airport and other airports in the given
      * radius.
@@ -41,4 +58,108 @@ public interface WeatherQueryEndpoint {
     @Path("/weather/{iata}/{radius}")
     @Produces(MediaType.APPLICATION_JSON)
     Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve the atmospheric information of the airports in a radius around a point that need not be an airport.
+     *
+     * @param latitude the latitude of the center in degrees
+     * @param longitude the longitude of the center in degrees
+     * @param radiusString the radius, in km, from which to collect weather data
+     *
+     * @return an HTTP Response and a JSON formatted list of {"distance": km, "airport": {...}, "weather": {...}}
+     * of the airports with readings, closest first
+     */
+    @GET
+    @Path("/area/{latitude}/{longitude}/{radius}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response weatherAround(@PathParam("latitude") String latitude, @PathParam("longitude") String longitude,
+                           @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve the atmospheric information of the airports in a latitude and longitude box, such as a map
+     * viewport. A box whose western edge is east of its eastern edge crosses the antimeridian.
+     *
+     * @param minLatitude the southern edge in degrees
+     * @param minLongitude the western edge in degrees
+     * @param maxLatitude the northern edge in degrees
+     * @param maxLongitude the eastern edge in degrees
+     *
+     * @return an HTTP Response and a JSON formatted list of {"airport": {...}, "weather": {...}} of the airports
+     * with readings
+     */
+    @GET
+    @Path("/box/{minLatitude}/{minLongitude}/{maxLatitude}/{maxLongitude}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response weatherInBox(@PathParam("minLatitude") String minLatitude,
+                          @PathParam("minLongitude") String minLongitude,
+                          @PathParam("maxLatitude") String maxLatitude,
+                          @PathParam("maxLongitude") String maxLongitude);
+
+    /**
+     * Retrieve the airports closest to the given airport, for when the radius holding enough of them is not known.
+     *
+     * @param iata the three letter airport code
+     * @param k the number of airports to return
+     * @param pointType optional point type, to only return airports with a reading of it from the last day
+     *
+     * @return an HTTP Response and a JSON formatted list of {"airport": {...}, "distance": km, "weather": {...}},
+     * closest first and the airport itself included
+     */
+    @GET
+    @Path("/nearest/{iata}/{k}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response nearest(@PathParam("iata") String iata, @PathParam("k") String k,
+                     @QueryParam("pointType") String pointType);
+
+    /**
+     * Aggregate one value of a point type over the airports within a radius on the server, instead of shipping
+     * their readings. Airports without a reading of the point type are not counted.
+     *
+     * @param iata the three letter airport code
+     * @param radiusString the radius, in km, of the airports to aggregate, 0 for the airport alone
+     * @param pointType the point type
+     * @param field the value of the readings, one of mean, first, second, third or count, default mean
+     * @param percentiles the percentiles to compute, repeated for several, default 50, 90 and 99
+     *
+     * @return an HTTP Response and a JSON formatted dict with pointType, field, count, mean, min, max and
+     * percentiles keyed like p90
+     */
+    @GET
+    @Path("/aggregate/{iata}/{radius}/{pointType}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response aggregate(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+                       @PathParam("pointType") String pointType, @QueryParam("field") String field,
+                       @QueryParam("percentile") List<String> percentiles);
+
+    /**
+     * Subscribe to the readings of airports as server-sent events. The current readings of every airport are sent
+     * first, then an airport's readings are sent again whenever it accepts a new data point. Changes made while an
+     * event for the airport is still waiting to be sent are folded into that event.
+     *
+     * @param iatas the three letter codes of the airports, repeated for several airports
+     * @param radiusString optional radius in km, to subscribe to every airport within it of the given airports
+     *
+     * @return a stream of "weather" events with data {"iata": CODE, "weather": {...}}
+     */
+    @GET
+    @Path("/subscribe")
+    @Produces(EVENT_STREAM)
+    ChunkedOutput<String> subscribe(@QueryParam("iata") List<String> iatas, @QueryParam("radius") String radiusString);
+
+    /**
+     * Retrieve the past readings of a point type at an airport. Only the most recent readings of each point type
+     * are kept.
+     *
+     * @param iata the three letter airport code
+     * @param pointType the point type
+     * @param from the earliest collection time in milliseconds since UTC epoch, inclusive, default the oldest
+     * @param to the latest collection time, inclusive, default the newest
+     *
+     * @return an HTTP Response and a JSON formatted list of {"time": ms, "dataPoint": {...}}, oldest first
+     */
+    @GET
+    @Path("/history/{iata}/{pointType}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response history(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+                     @QueryParam("from") String from, @QueryParam("to") String to);
 }
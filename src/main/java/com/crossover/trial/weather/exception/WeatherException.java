@@ -4,4 +4,11 @@ package com.crossover.trial.weather.exception;
  * An internal exception marker
  */
 public class WeatherException extends Exception {
+
+    public WeatherException() {
+    }
+
+    public WeatherException(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,13 @@
+package com.crossover.trial.weather.exception;
+
+/**
+ * An update was applied but could not be written to the write-ahead log, so it may not survive a restart
+ */
+public class WeatherLogException extends WeatherException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WeatherLogException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,356 @@
+package com.crossover.trial.weather.geo;
+
+import com.crossover.trial.weather.data.AirportData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index over airport coordinates. The globe is split into an equal-angle grid of
+ * {@link #CELL_DEGREES} cells, a radius query only visits the cells that overlap the bounding box of the
+ * search circle, rules out the airports there whose unit vectors point too far away from the center's and runs
+ * the exact haversine check on the rest. A nearest airport query spreads out from the cell of the query point
+ * and stops once no unvisited cell can hold a closer airport. A box query visits the cells overlapping the box.
+ *
+ * Cells are copy-on-write arrays swapped by compare-and-set, so queries never block and see each cell either
+ * before or after a concurrent change.
+ */
+public class AirportGrid {
+
+    /** cell size in degrees of latitude and longitude */
+    public static final double CELL_DEGREES = 1.0;
+
+    private static final int LAT_CELLS = (int) Math.ceil(180 / CELL_DEGREES);
+
+    private static final int LON_CELLS = (int) Math.ceil(360 / CELL_DEGREES);
+
+    /** guards the bounding box against rounding for airports lying exactly on the circle */
+    private static final double EPSILON_DEGREES = 1e-9;
+
+    /** largest distance in KM from the center of a cell in each row to any point of the cell */
+    private static final double[] ROW_RADIUS_KM = new double[LAT_CELLS];
+
+    static {
+        for (int row = 0; row < LAT_CELLS; row++) {
+            double south = -90 + row * CELL_DEGREES;
+            double north = Math.min(90, south + CELL_DEGREES);
+            double center = (south + north) / 2;
+            // the farthest point of a cell is one of its corners
+            ROW_RADIUS_KM[row] = Math.max(GeoMath.distance(center, 0, south, CELL_DEGREES / 2),
+                    GeoMath.distance(center, 0, north, CELL_DEGREES / 2)) + 1e-6;
+        }
+    }
+
+    private final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(LAT_CELLS * LON_CELLS);
+
+    /**
+     * The airports of a cell and the unit vectors of their positions as parallel primitive arrays, so a query can
+     * pre-filter a whole cell in one loop.
+     */
+    private static final class Cell {
+
+        final AirportData[] airports;
+
+        final double[] x;
+
+        final double[] y;
+
+        final double[] z;
+
+        Cell(AirportData[] airports) {
+            this.airports = airports;
+            this.x = new double[airports.length];
+            this.y = new double[airports.length];
+            this.z = new double[airports.length];
+            for (int i = 0; i < airports.length; i++) {
+                GeoPoint point = airports[i].getPoint();
+                x[i] = point.getX();
+                y[i] = point.getY();
+                z[i] = point.getZ();
+            }
+        }
+    }
+
+    public void add(AirportData ad) {
+        int cell = cellOf(ad.getLatitude(), ad.getLongitude());
+        Cell current;
+        Cell updated;
+        do {
+            current = cells.get(cell);
+            if (current == null) {
+                updated = new Cell(new AirportData[] { ad });
+            } else {
+                AirportData[] airports = Arrays.copyOf(current.airports, current.airports.length + 1);
+                airports[current.airports.length] = ad;
+                updated = new Cell(airports);
+            }
+        } while (!cells.compareAndSet(cell, current, updated));
+    }
+
+    public void remove(AirportData ad) {
+        int cell = cellOf(ad.getLatitude(), ad.getLongitude());
+        Cell current;
+        Cell updated;
+        do {
+            current = cells.get(cell);
+            int idx = current == null ? -1 : Arrays.asList(current.airports).indexOf(ad);
+            if (idx < 0) {
+                return;
+            }
+            if (current.airports.length == 1) {
+                updated = null;
+            } else {
+                AirportData[] airports = new AirportData[current.airports.length - 1];
+                System.arraycopy(current.airports, 0, airports, 0, idx);
+                System.arraycopy(current.airports, idx + 1, airports, idx, current.airports.length - idx - 1);
+                updated = new Cell(airports);
+            }
+        } while (!cells.compareAndSet(cell, current, updated));
+    }
+
+    public void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, null);
+        }
+    }
+
+    /**
+     * Visit every indexed airport within the given distance of a point.
+     *
+     * @param latitude center latitude in degrees
+     * @param longitude center longitude in degrees
+     * @param radiusKm search radius in KM
+     * @param action called once for each airport inside the circle
+     */
+    public void forEachWithin(double latitude, double longitude, double radiusKm, Consumer<AirportData> action) {
+        double angular = radiusKm / GeoMath.EARTH_RADIUS_KM;
+        double dLat = Math.toDegrees(angular) + EPSILON_DEGREES;
+        double minLat = latitude - dLat;
+        double maxLat = latitude + dLat;
+
+        // the longitude extent of a spherical cap is asin(sin(d) / cos(lat)), unless the cap covers a pole
+        boolean allLongitudes = minLat <= -90 || maxLat >= 90;
+        double dLon = 0;
+        if (!allLongitudes) {
+            double s = Math.sin(angular) / Math.cos(Math.toRadians(latitude));
+            if (s >= 1) {
+                allLongitudes = true;
+            } else {
+                dLon = Math.toDegrees(Math.asin(s)) + EPSILON_DEGREES;
+                allLongitudes = 2 * dLon >= 360 - CELL_DEGREES;
+            }
+        }
+
+        int fromRow = latIndex(Math.max(minLat, -90));
+        int toRow = latIndex(Math.min(maxLat, 90));
+        int fromCol = 0;
+        int colCount = LON_CELLS;
+        if (!allLongitudes) {
+            fromCol = lonIndex(longitude - dLon);
+            colCount = (lonIndex(longitude + dLon) - fromCol + LON_CELLS) % LON_CELLS + 1;
+        }
+
+        GeoPoint center = new GeoPoint(latitude, longitude);
+        double minCosine = GeoMath.minCosine(radiusKm);
+        double[] cosines = new double[16];
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int k = 0; k < colCount; k++) {
+                Cell cell = cells.get(row * LON_CELLS + (fromCol + k) % LON_CELLS);
+                if (cell == null) {
+                    continue;
+                }
+                int n = cell.airports.length;
+                if (cosines.length < n) {
+                    cosines = new double[n];
+                }
+                GeoMath.cosines(center, cell.x, cell.y, cell.z, n, cosines);
+                for (int i = 0; i < n; i++) {
+                    // the haversine check only runs for the airports the cosine can not rule out
+                    if (cosines[i] >= minCosine
+                            && GeoMath.distance(center, cell.airports[i].getPoint()) <= radiusKm) {
+                        action.accept(cell.airports[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit every indexed airport inside a latitude and longitude box. A box whose minimum longitude is greater
+     * than its maximum crosses the antimeridian.
+     *
+     * @param minLatitude southern edge in degrees
+     * @param minLongitude western edge in degrees
+     * @param maxLatitude northern edge in degrees
+     * @param maxLongitude eastern edge in degrees
+     * @param action called once for each airport inside the box, edges included
+     */
+    public void forEachInBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                             Consumer<AirportData> action) {
+        boolean crossing = minLongitude > maxLongitude;
+        double width = crossing ? maxLongitude + 360 - minLongitude : maxLongitude - minLongitude;
+        int fromCol = 0;
+        int colCount = LON_CELLS;
+        if (width < 360 - CELL_DEGREES) {
+            fromCol = lonIndex(minLongitude);
+            colCount = (lonIndex(maxLongitude) - fromCol + LON_CELLS) % LON_CELLS + 1;
+        }
+
+        for (int row = latIndex(minLatitude); row <= latIndex(maxLatitude); row++) {
+            for (int k = 0; k < colCount; k++) {
+                Cell cell = cells.get(row * LON_CELLS + (fromCol + k) % LON_CELLS);
+                if (cell == null) {
+                    continue;
+                }
+                for (AirportData ad : cell.airports) {
+                    double latitude = ad.getLatitude();
+                    double longitude = ad.getLongitude();
+                    if (latitude >= minLatitude && latitude <= maxLatitude && (crossing
+                            ? longitude >= minLongitude || longitude <= maxLongitude
+                            : longitude >= minLongitude && longitude <= maxLongitude)) {
+                        action.accept(ad);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * An airport found by {@link #nearest} and its distance from the query point.
+     */
+    public static final class Neighbor {
+
+        private final AirportData airport;
+
+        private final double distanceKm;
+
+        private Neighbor(AirportData airport, double distanceKm) {
+            this.airport = airport;
+            this.distanceKm = distanceKm;
+        }
+
+        public AirportData getAirport() {
+            return airport;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+    }
+
+    /**
+     * Find the airports closest to a point. Cells are visited best first by the least distance any of their points
+     * can have from the query point, starting with the cell holding it and spreading to the neighbors of each
+     * visited cell, until that distance exceeds the k-th closest airport found so far. Only the cells around the
+     * result are visited, not every airport.
+     *
+     * @param latitude center latitude in degrees
+     * @param longitude center longitude in degrees
+     * @param k the number of airports to find
+     * @param filter the airports that may be returned
+     * @return at most k airports passing the filter, closest first
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, Predicate<AirportData> filter) {
+        // the k closest so far, farthest on top
+        PriorityQueue<Neighbor> closest = new PriorityQueue<>(Math.min(k, 1024) + 1,
+                Comparator.comparingDouble(Neighbor::getDistanceKm).reversed());
+        PriorityQueue<CellBound> frontier = new PriorityQueue<>();
+        BitSet seen = new BitSet(LAT_CELLS * LON_CELLS);
+
+        GeoPoint center = new GeoPoint(latitude, longitude);
+        // airports below this cosine are farther than the k-th closest so far
+        double minCosine = -2;
+        double[] cosines = new double[16];
+
+        int start = cellOf(latitude, longitude);
+        seen.set(start);
+        frontier.add(new CellBound(start, 0));
+        while (!frontier.isEmpty()) {
+            CellBound next = frontier.poll();
+            if (closest.size() == k && next.bound > closest.peek().distanceKm) {
+                break;
+            }
+            Cell cell = cells.get(next.cell);
+            if (cell != null) {
+                int n = cell.airports.length;
+                if (cosines.length < n) {
+                    cosines = new double[n];
+                }
+                GeoMath.cosines(center, cell.x, cell.y, cell.z, n, cosines);
+                for (int i = 0; i < n; i++) {
+                    if (cosines[i] < minCosine) {
+                        continue;
+                    }
+                    AirportData ad = cell.airports[i];
+                    double distance = GeoMath.distance(center, ad.getPoint());
+                    if ((closest.size() < k || distance < closest.peek().distanceKm) && filter.test(ad)) {
+                        closest.add(new Neighbor(ad, distance));
+                        if (closest.size() > k) {
+                            closest.poll();
+                        }
+                        if (closest.size() == k) {
+                            minCosine = GeoMath.minCosine(closest.peek().distanceKm);
+                        }
+                    }
+                }
+            }
+            // the cells within any distance of a point are connected through edges and corners
+            int row = next.cell / LON_CELLS;
+            int col = next.cell % LON_CELLS;
+            for (int r = Math.max(0, row - 1); r <= Math.min(LAT_CELLS - 1, row + 1); r++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    int c = (col + dc + LON_CELLS) % LON_CELLS;
+                    int neighbor = r * LON_CELLS + c;
+                    if (!seen.get(neighbor)) {
+                        seen.set(neighbor);
+                        double toCenter = GeoMath.distance(latitude, longitude,
+                                -90 + (r + 0.5) * CELL_DEGREES, -180 + (c + 0.5) * CELL_DEGREES);
+                        frontier.add(new CellBound(neighbor, Math.max(0, toCenter - ROW_RADIUS_KM[r])));
+                    }
+                }
+            }
+        }
+        List<Neighbor> result = new ArrayList<>(closest);
+        result.sort(Comparator.comparingDouble(Neighbor::getDistanceKm));
+        return result;
+    }
+
+    /** a cell and the least distance any of its points has from a query point */
+    private static final class CellBound implements Comparable<CellBound> {
+
+        final int cell;
+
+        final double bound;
+
+        CellBound(int cell, double bound) {
+            this.cell = cell;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(CellBound other) {
+            return Double.compare(bound, other.bound);
+        }
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return latIndex(latitude) * LON_CELLS + lonIndex(longitude);
+    }
+
+    private static int latIndex(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(LAT_CELLS - 1, row));
+    }
+
+    private static int lonIndex(double longitude) {
+        int col = (int) Math.floor((longitude + 180) / CELL_DEGREES) % LON_CELLS;
+        return col < 0 ? col + LON_CELLS : col;
+    }
+}
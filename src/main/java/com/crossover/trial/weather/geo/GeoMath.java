@@ -0,0 +1,84 @@
+package com.crossover.trial.weather.geo;
+
+/**
+ * Great-circle helpers shared by the airport index and the services.
+ *
+ * The exact distance is the haversine formula. Where many airports are checked against one point, the cosine of
+ * their angular distance, the dot product of the unit vectors, rejects the far ones first: it needs three
+ * multiplications and no trigonometry, and is computed for a whole array at a time by {@link #cosines}.
+ */
+public final class GeoMath {
+
+    /** earth radius in KM */
+    public static final double EARTH_RADIUS_KM = 6372.8;
+
+    /** slack keeping the cosine pre-filter conservative against rounding, a few millimeters at most */
+    private static final double COSINE_TOLERANCE = 1e-12;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Haversine distance between two points given in degrees.
+     *
+     * @return the distance in KM
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        return distance(phi1, Math.toRadians(lon1), Math.cos(phi1), phi2, Math.toRadians(lon2), Math.cos(phi2));
+    }
+
+    /**
+     * Haversine distance between two points with precomputed geometry.
+     *
+     * @return the distance in KM
+     */
+    public static double distance(GeoPoint p1, GeoPoint p2) {
+        return distance(p1.getLatitude(), p1.getLongitude(), p1.getCosLatitude(),
+                p2.getLatitude(), p2.getLongitude(), p2.getCosLatitude());
+    }
+
+    /**
+     * Haversine distance between two points given in radians, with the cosines of their latitudes.
+     *
+     * @return the distance in KM
+     */
+    public static double distance(double lat1, double lon1, double cosLat1, double lat2, double lon2,
+                                  double cosLat2) {
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin((lon2 - lon1) / 2);
+        double a = sinLat * sinLat + sinLon * sinLon * cosLat1 * cosLat2;
+        double c = 2 * Math.asin(Math.min(1.0, Math.sqrt(a)));
+        return EARTH_RADIUS_KM * c;
+    }
+
+    /**
+     * Cosines of the angular distances from one point to many, given as parallel arrays of unit vector
+     * coordinates. The loop only multiplies and adds, so the JIT can unroll and vectorize it.
+     *
+     * @param from the point to measure from
+     * @param x unit vector x coordinates
+     * @param y unit vector y coordinates
+     * @param z unit vector z coordinates
+     * @param n the number of points
+     * @param cosines receives the cosines, 1 for the same point and -1 for the antipode
+     */
+    public static void cosines(GeoPoint from, double[] x, double[] y, double[] z, int n, double[] cosines) {
+        double fx = from.getX();
+        double fy = from.getY();
+        double fz = from.getZ();
+        for (int i = 0; i < n; i++) {
+            cosines[i] = fx * x[i] + fy * y[i] + fz * z[i];
+        }
+    }
+
+    /**
+     * @param radiusKm a distance in KM
+     * @return a cosine of angular distance below which a point is certainly farther than the distance
+     */
+    public static double minCosine(double radiusKm) {
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        return angle >= Math.PI ? -2 : Math.cos(angle) - COSINE_TOLERANCE;
+    }
+}
@@ -0,0 +1,59 @@
+package com.crossover.trial.weather.geo;
+
+/**
+ * A position on the globe with the values distance computations need worked out once: the coordinates in
+ * radians, the cosine of the latitude and the unit vector from the center of the earth.
+ */
+public final class GeoPoint {
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final double cosLatitude;
+
+    private final double x;
+
+    private final double y;
+
+    private final double z;
+
+    /**
+     * @param latitude in degrees
+     * @param longitude in degrees
+     */
+    public GeoPoint(double latitude, double longitude) {
+        this.latitude = Math.toRadians(latitude);
+        this.longitude = Math.toRadians(longitude);
+        this.cosLatitude = Math.cos(this.latitude);
+        this.x = cosLatitude * Math.cos(this.longitude);
+        this.y = cosLatitude * Math.sin(this.longitude);
+        this.z = Math.sin(this.latitude);
+    }
+
+    /** latitude in radians */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /** longitude in radians */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getCosLatitude() {
+        return cosLatitude;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+}
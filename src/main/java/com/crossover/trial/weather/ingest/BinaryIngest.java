@@ -0,0 +1,77 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.replication.Replication;
+import com.crossover.trial.weather.service.WeatherService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * The binary collector of this server. It takes {@link IngestFrame}s on the TCP address of {@link #TCP_PROPERTY}
+ * and the UDP address of {@link #UDP_PROPERTY}; without either property readings only come in over REST.
+ */
+public class BinaryIngest {
+
+    /** system property with the host:port streams of frames are accepted on */
+    public static final String TCP_PROPERTY = "weather.ingest.tcp";
+
+    /** system property with the host:port datagrams of frames are received on */
+    public static final String UDP_PROPERTY = "weather.ingest.udp";
+
+    private static BinaryIngest instance;
+
+    private static volatile BinaryIngestListener listener;
+
+    static {
+        instance = new BinaryIngest();
+    }
+
+    private BinaryIngest() {
+    }
+
+    public static BinaryIngest getInstance() {
+        return instance;
+    }
+
+    /**
+     * Open the addresses configured by the system properties. Must be started after the replication role, a
+     * follower takes no updates of its own.
+     */
+    public void start(WeatherService weatherService) throws IOException {
+        String tcp = System.getProperty(TCP_PROPERTY);
+        String udp = System.getProperty(UDP_PROPERTY);
+        if (tcp == null && udp == null) {
+            return;
+        }
+        if (Replication.getInstance().isReadOnly()) {
+            throw new IllegalArgumentException("A follower can not take binary updates");
+        }
+        listener = new BinaryIngestListener(weatherService, address(tcp), address(udp));
+    }
+
+    /**
+     * @return the frame counters of the listener, null if binary updates are not taken
+     */
+    public Map<String, Long> getStats() {
+        BinaryIngestListener current = listener;
+        return current == null ? null : current.getStats();
+    }
+
+    public void stop() throws IOException {
+        if (listener != null) {
+            listener.close();
+        }
+    }
+
+    private static InetSocketAddress address(String hostPort) {
+        if (hostPort == null) {
+            return null;
+        }
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + hostPort);
+        }
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+}
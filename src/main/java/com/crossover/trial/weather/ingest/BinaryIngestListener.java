@@ -0,0 +1,262 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.AirportCodes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes readings as {@link IngestFrame}s over TCP and UDP, next to the REST collector. One selector thread reads
+ * every socket into direct buffers and decodes the frames in place straight into {@link WeatherService}; the
+ * listener creates no objects per frame. Frames are not acknowledged, the counters in {@link #getStats()} tell how
+ * many were stored, so the selector thread does not wait for the write-ahead log to force them to disk.
+ */
+public class BinaryIngestListener implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BinaryIngestListener.class.getName());
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /** read buffer of each connection, and of all datagrams */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final WeatherService weatherService;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel tcp;
+
+    private final DatagramChannel udp;
+
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /** the code of each airport a frame was stored for, so later frames do not build the string again */
+    private final String[] codes = new String[AirportCodes.CODE_SPACE];
+
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    // counters are only written by the selector thread
+
+    private volatile long accepted;
+
+    /** frames of a reading out of range for its point type, which only count as an update */
+    private volatile long rejected;
+
+    /** frames of an unknown airport or point type and datagrams that are not whole frames */
+    private volatile long failed;
+
+    private volatile int connections;
+
+    /**
+     * @param weatherService the service the readings are stored in
+     * @param tcpAddress the address to accept streams of frames on, null for none
+     * @param udpAddress the address to receive datagrams of frames on, null for none
+     */
+    public BinaryIngestListener(WeatherService weatherService, InetSocketAddress tcpAddress,
+                                InetSocketAddress udpAddress) throws IOException {
+        this.weatherService = weatherService;
+        this.selector = Selector.open();
+        if (tcpAddress != null) {
+            tcp = ServerSocketChannel.open();
+            tcp.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            tcp.bind(tcpAddress);
+            tcp.configureBlocking(false);
+            tcp.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            tcp = null;
+        }
+        if (udpAddress != null) {
+            udp = DatagramChannel.open();
+            udp.setOption(StandardSocketOptions.SO_RCVBUF, 4 << 20);
+            udp.bind(udpAddress);
+            udp.configureBlocking(false);
+            udp.register(selector, SelectionKey.OP_READ);
+        } else {
+            udp = null;
+        }
+        this.thread = new Thread(this::run, "weather-ingest");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udp) {
+                        receive();
+                    } else {
+                        read(key);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Ingest listener failed", e);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = tcp.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(BUFFER_BYTES));
+        connections++;
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try {
+            if (channel.read(buffer) < 0) {
+                disconnect(key);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ingest connection failed", e);
+            disconnect(key);
+            return;
+        }
+        buffer.flip();
+        while (buffer.remaining() >= IngestFrame.BYTES) {
+            store(buffer);
+        }
+        // a partial frame is kept for the next read
+        buffer.compact();
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not close an ingest connection", e);
+        }
+        connections--;
+    }
+
+    private void receive() throws IOException {
+        while (true) {
+            datagram.clear();
+            if (udp.receive(datagram) == null) {
+                return;
+            }
+            datagram.flip();
+            if (datagram.remaining() % IngestFrame.BYTES != 0) {
+                failed++;
+                continue;
+            }
+            while (datagram.hasRemaining()) {
+                store(datagram);
+            }
+        }
+    }
+
+    /**
+     * Decode the frame at the position of the buffer and store its reading.
+     */
+    private void store(ByteBuffer frame) {
+        int code = frame.getInt();
+        int type = frame.get() & 0xff;
+        double mean = frame.getDouble();
+        int first = frame.getInt();
+        int second = frame.getInt();
+        int third = frame.getInt();
+        int count = frame.getInt();
+        long timestamp = frame.getLong();
+        if (code < 0 || code >= AirportCodes.CODE_SPACE || type >= TYPES.length) {
+            failed++;
+            return;
+        }
+        String iataCode = codes[code];
+        if (iataCode == null) {
+            iataCode = AirportCodes.decode(code);
+        }
+        // a sensor clock ahead of ours would keep its readings fresh for too long, a frame arriving after a newer
+        // reading of its type only goes to the history
+        long now = System.currentTimeMillis();
+        try {
+            if (weatherService.addDataPoint(iataCode, TYPES[type], mean, first, second, third, count,
+                    timestamp <= 0 || timestamp > now ? now : timestamp)) {
+                accepted++;
+            } else {
+                rejected++;
+            }
+            codes[code] = iataCode;
+        } catch (WeatherException e) {
+            failed++;
+            LOGGER.log(Level.FINE, "Ingest frame failed", e);
+        }
+    }
+
+    /**
+     * @return the bound TCP address, null if frames are not taken over TCP
+     */
+    public InetSocketAddress getTcpAddress() throws IOException {
+        return tcp == null ? null : (InetSocketAddress) tcp.getLocalAddress();
+    }
+
+    /**
+     * @return the bound UDP address, null if frames are not taken over UDP
+     */
+    public InetSocketAddress getUdpAddress() throws IOException {
+        return udp == null ? null : (InetSocketAddress) udp.getLocalAddress();
+    }
+
+    /**
+     * @return the number of stored, out of range and failed frames and of open connections
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new TreeMap<>();
+        stats.put("accepted", accepted);
+        stats.put("rejected", rejected);
+        stats.put("failed", failed);
+        stats.put("connections", (long) connections);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
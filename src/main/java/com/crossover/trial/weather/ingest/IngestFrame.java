@@ -0,0 +1,56 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.store.AirportCodes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed size binary form of a reading taken by the {@link BinaryIngestListener}, in network byte order:
+ *
+ * <pre>
+ *  0  int     airport code packed by {@link AirportCodes}
+ *  4  byte    {@link DataPointType} ordinal
+ *  5  double  mean
+ * 13  int     first
+ * 17  int     second
+ * 21  int     third
+ * 25  int     count
+ * 29  long    collection time in milliseconds since UTC epoch, 0 for the time of arrival
+ * </pre>
+ *
+ * A TCP stream is a sequence of frames, a UDP datagram holds one or more whole frames.
+ */
+public final class IngestFrame {
+
+    /** size of a frame in bytes */
+    public static final int BYTES = 37;
+
+    private IngestFrame() {
+    }
+
+    /**
+     * Append a frame to a buffer.
+     *
+     * @param buffer the buffer, with at least {@link #BYTES} remaining
+     * @param iataCode a 3 or 4 letter upper case airport code
+     * @param type the point type
+     * @param timestamp the collection time in milliseconds since UTC epoch, 0 for the time of arrival
+     * @throws IllegalArgumentException if the airport code can not be packed
+     */
+    public static void put(ByteBuffer buffer, String iataCode, DataPointType type, double mean, int first,
+                           int second, int third, int count, long timestamp) {
+        int code = AirportCodes.encode(iataCode);
+        if (code < 0) {
+            throw new IllegalArgumentException("Can not pack airport code " + iataCode);
+        }
+        buffer.putInt(code)
+                .put((byte) type.ordinal())
+                .putDouble(mean)
+                .putInt(first)
+                .putInt(second)
+                .putInt(third)
+                .putInt(count)
+                .putLong(timestamp);
+    }
+}
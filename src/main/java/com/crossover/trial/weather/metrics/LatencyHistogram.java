@@ -0,0 +1,156 @@
+package com.crossover.trial.weather.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets in the style of HdrHistogram: values below
+ * 2 * {@link #SUB_BUCKETS} are counted exactly, larger ones in buckets whose width is 1 / {@link #SUB_BUCKETS} of
+ * their power of two, about 3% relative error. Values above {@link #MAX_VALUE} are counted as the maximum.
+ *
+ * Recording threads are spread over a fixed number of shards by thread id, so threads rarely contend on a shard
+ * and the footprint stays bounded however many threads come and go. Readers sum the shards.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** the largest value counted, about 71 minutes */
+    public static final long MAX_VALUE = (1L << 32) - 1;
+
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    /** shard slots after the buckets */
+    private static final int SUM = BUCKETS;
+
+    private static final int MAX = BUCKETS + 1;
+
+    /** number of shards, a power of two of two to four per processor */
+    private static final int SHARDS = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4);
+
+    /** created on first use, a histogram only recorded by a few threads keeps a few shards */
+    private final AtomicReferenceArray<AtomicLongArray> shards = new AtomicReferenceArray<>(SHARDS);
+
+    /**
+     * @param micros a latency in microseconds, negative values count as 0
+     */
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        AtomicLongArray counts = shard();
+        counts.incrementAndGet(bucketOf(value));
+        counts.addAndGet(SUM, value);
+        long max;
+        while (value > (max = counts.get(MAX)) && !counts.compareAndSet(MAX, max, value)) {
+            // another thread of the shard raised the maximum, check against it
+        }
+    }
+
+    /**
+     * @return the counts recorded so far by all threads
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (int index = 0; index < SHARDS; index++) {
+            AtomicLongArray shard = shards.get(index);
+            if (shard == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += shard.get(i);
+            }
+            sum += shard.get(SUM);
+            max = Math.max(max, shard.get(MAX));
+        }
+        return new Snapshot(counts, sum, max);
+    }
+
+    private AtomicLongArray shard() {
+        // spread sequential thread ids over the shards
+        int index = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 58) & (SHARDS - 1);
+        AtomicLongArray counts = shards.get(index);
+        if (counts == null) {
+            shards.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 2));
+            counts = shards.get(index);
+        }
+        return counts;
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** the largest value counted in a bucket */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Counts of a histogram at one point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile in [0, 100]
+         * @return the value at or below which the given percentage of the recorded values lie, within the
+         * precision of the buckets
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.crossover.trial.weather.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Latency and throughput of the served requests per endpoint and status code, and an optional access log of a
+ * sample of the requests. Recording never blocks: latencies go to per-thread histogram shards, counts to striped
+ * adders and access log lines to a bounded queue drained by a background thread, lines that do not fit are dropped.
+ *
+ * An endpoint is the method and the first two segments of the path, for example "GET /query/weather". Paths
+ * beyond the first {@link #MAX_ENDPOINTS} endpoints are counted together as "other".
+ */
+public class RequestMetrics {
+
+    /** system property setting the fraction of requests written to the access log, default 0 */
+    public static final String ACCESS_LOG_SAMPLE_PROPERTY = "weather.accessLog.sample";
+
+    /** distinct endpoints tracked, so requests to made up paths can not grow the metrics without bound */
+    static final int MAX_ENDPOINTS = 64;
+
+    /** access log lines waiting to be written before further ones are dropped */
+    private static final int ACCESS_LOG_QUEUE = 4096;
+
+    /** width of a throughput window bucket */
+    private static final long RATE_BUCKET_MILLIS = 1000;
+
+    /** buckets summed for the throughput of the last minute */
+    private static final int RATE_BUCKETS = 60;
+
+    private static final Logger ACCESS_LOG = Logger.getLogger("WeatherAccess");
+
+    private static RequestMetrics instance;
+
+    private static final long startTime = System.currentTimeMillis();
+
+    private static Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private static double accessLogSample = Double.parseDouble(System.getProperty(ACCESS_LOG_SAMPLE_PROPERTY, "0"));
+
+    private static BlockingQueue<String> accessLog = new ArrayBlockingQueue<>(ACCESS_LOG_QUEUE);
+
+    private static LongAdder accessLogDropped = new LongAdder();
+
+    static {
+        instance = new RequestMetrics();
+        if (accessLogSample > 0) {
+            Thread writer = new Thread(RequestMetrics::writeAccessLog, "weather-access-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private RequestMetrics() {
+    }
+
+    public static RequestMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Latency histogram and throughput window of one status code of an endpoint.
+     */
+    private static final class Status {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicReferenceArray<RateBucket> window = new AtomicReferenceArray<>(RATE_BUCKETS);
+    }
+
+    private static final class RateBucket {
+        final long id;
+        final LongAdder count = new LongAdder();
+
+        RateBucket(long id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Endpoint {
+        final Map<Integer, Status> statuses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param method the http method
+     * @param path the request path
+     * @param status the response status code
+     * @param nanos the time from receiving the request to completing the response
+     */
+    public void record(String method, String path, int status, long nanos) {
+        String name = endpointOf(method, path);
+        Endpoint endpoint = endpoints.get(name);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(endpoints.size() < MAX_ENDPOINTS ? name : "other", e -> new Endpoint());
+        }
+        Status s = endpoint.statuses.computeIfAbsent(status, code -> new Status());
+        s.latency.record(nanos / 1000);
+
+        long id = System.currentTimeMillis() / RATE_BUCKET_MILLIS;
+        int slot = (int) (id % RATE_BUCKETS);
+        RateBucket bucket = s.window.get(slot);
+        while (bucket == null || bucket.id < id) {
+            RateBucket fresh = new RateBucket(id);
+            if (s.window.compareAndSet(slot, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = s.window.get(slot);
+            }
+        }
+        if (bucket.id == id) {
+            bucket.count.increment();
+        }
+
+        if (accessLogSample > 0 && ThreadLocalRandom.current().nextDouble() < accessLogSample
+                && !accessLog.offer(method + " " + path + " " + status + " " + nanos / 1000 + "us")) {
+            accessLogDropped.increment();
+        }
+    }
+
+    /**
+     * @return per endpoint and status code the request count, the requests per second over the last minute and
+     * latency percentiles in microseconds
+     */
+    public Map<String, Object> getReport() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> byEndpoint = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> {
+            Map<String, Object> byStatus = new TreeMap<>();
+            endpoint.statuses.forEach((code, status) -> byStatus.put(String.valueOf(code), report(status, now)));
+            byEndpoint.put(name, byStatus);
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("uptime_ms", now - startTime);
+        report.put("endpoints", byEndpoint);
+        if (accessLogSample > 0) {
+            Map<String, Object> log = new LinkedHashMap<>();
+            log.put("sample", accessLogSample);
+            log.put("dropped", accessLogDropped.sum());
+            report.put("access_log", log);
+        }
+        return report;
+    }
+
+    /**
+     * Drop all recorded requests.
+     */
+    public void clear() {
+        endpoints.clear();
+    }
+
+    private static Map<String, Object> report(Status status, long now) {
+        LatencyHistogram.Snapshot latency = status.latency.snapshot();
+        long id = now / RATE_BUCKET_MILLIS;
+        long lastMinute = 0;
+        for (int i = 0; i < RATE_BUCKETS; i++) {
+            RateBucket bucket = status.window.get(i);
+            // the current second is still filling up and left out
+            if (bucket != null && bucket.id < id && bucket.id >= id - RATE_BUCKETS) {
+                lastMinute += bucket.count.sum();
+            }
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("count", latency.getCount());
+        report.put("rate_1m", (double) lastMinute / RATE_BUCKETS);
+        report.put("mean_us", Math.round(latency.getMean()));
+        report.put("p50_us", latency.getValueAtPercentile(50));
+        report.put("p90_us", latency.getValueAtPercentile(90));
+        report.put("p99_us", latency.getValueAtPercentile(99));
+        report.put("p999_us", latency.getValueAtPercentile(99.9));
+        report.put("max_us", latency.getMax());
+        return report;
+    }
+
+    static String endpointOf(String method, String path) {
+        int end = 0;
+        for (int segments = 0; segments < 2 && end >= 0; segments++) {
+            end = path.indexOf('/', end + 1);
+        }
+        return method + " " + (end < 0 ? path : path.substring(0, end));
+    }
+
+    private static void writeAccessLog() {
+        while (true) {
+            try {
+                ACCESS_LOG.info(accessLog.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
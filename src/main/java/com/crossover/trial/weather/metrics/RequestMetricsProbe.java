@@ -0,0 +1,40 @@
+package com.crossover.trial.weather.metrics;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.http.server.HttpServerFilter;
+import org.glassfish.grizzly.http.server.HttpServerProbe;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Records every request served by a Grizzly server in {@link RequestMetrics}, timed from the moment the request
+ * was parsed until its response is complete.
+ */
+public class RequestMetricsProbe extends HttpServerProbe.Adapter {
+
+    private static final String START_ATTRIBUTE = RequestMetricsProbe.class.getName() + ".start";
+
+    private final RequestMetrics metrics;
+
+    public RequestMetricsProbe(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // the probe interface declares the raw type, a parameterized override would not override it
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection, Request request) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void onRequestCompleteEvent(HttpServerFilter filter, Connection connection, Response response) {
+        Request request = response.getRequest();
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start != null) {
+            metrics.record(request.getMethod().getMethodString(), request.getRequestURI(), response.getStatus(),
+                    System.nanoTime() - (Long) start);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.service.WeatherService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * The replication role of this server. A leader publishes every change to followers connecting to
+ * {@link #LISTEN_PROPERTY}, a follower applies the changes of the leader at {@link #FOLLOW_PROPERTY} and only
+ * serves reads. Without either property the server does not replicate.
+ */
+public class Replication {
+
+    /** system property with the host:port a leader accepts followers on */
+    public static final String LISTEN_PROPERTY = "weather.replication.listen";
+
+    /** system property with the host:port of the leader a follower replicates */
+    public static final String FOLLOW_PROPERTY = "weather.replication.follow";
+
+    /** system property setting the changes a leader keeps for followers that fall behind, default 100000 */
+    public static final String BACKLOG_PROPERTY = "weather.replication.backlog";
+
+    private static Replication instance;
+
+    private static volatile ReplicationLeader leader;
+
+    private static volatile ReplicationFollower follower;
+
+    static {
+        instance = new Replication();
+    }
+
+    private Replication() {
+    }
+
+    public static Replication getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return true if a follower role is configured, the server then takes no updates of its own
+     */
+    public static boolean isFollowerConfigured() {
+        return System.getProperty(FOLLOW_PROPERTY) != null;
+    }
+
+    /**
+     * Take the role configured by the system properties. A leader must be started after the restored state is
+     * in place and before updates are taken.
+     */
+    public void start(WeatherService weatherService) throws IOException {
+        String listen = System.getProperty(LISTEN_PROPERTY);
+        String follow = System.getProperty(FOLLOW_PROPERTY);
+        if (listen != null && follow != null) {
+            throw new IllegalArgumentException("A server can not both lead and follow");
+        }
+        if (listen != null) {
+            leader = new ReplicationLeader(weatherService,
+                    weatherService.openChangeFeed(Integer.getInteger(BACKLOG_PROPERTY, 100000)), address(listen));
+        } else if (follow != null) {
+            follower = new ReplicationFollower(weatherService, address(follow));
+        }
+    }
+
+    /**
+     * @return true if this server follows a leader and must not take updates
+     */
+    public boolean isReadOnly() {
+        return follower != null;
+    }
+
+    /**
+     * @return the replication state of this server, null if it does not replicate
+     */
+    public Map<String, Object> getStats() {
+        ReplicationLeader currentLeader = leader;
+        if (currentLeader != null) {
+            return currentLeader.getStats();
+        }
+        ReplicationFollower currentFollower = follower;
+        return currentFollower == null ? null : currentFollower.getStats();
+    }
+
+    public void stop() throws IOException {
+        if (leader != null) {
+            leader.close();
+            WeatherService.getInstance().closeChangeFeed();
+        }
+        if (follower != null) {
+            follower.close();
+        }
+    }
+
+    private static InetSocketAddress address(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + hostPort);
+        }
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+}
@@ -0,0 +1,194 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.service.WeatherService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the changes streamed by a {@link ReplicationLeader} to this server. After a disconnect the follower
+ * reconnects and continues after the last change it applied.
+ */
+public class ReplicationFollower implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicationFollower.class.getName());
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final WeatherService weatherService;
+
+    private final InetSocketAddress leader;
+
+    private final Thread thread;
+
+    private final LongAdder snapshots = new LongAdder();
+
+    /** the feed the applied changes come from, 0 before the first snapshot */
+    private volatile long epoch;
+
+    /** the sequence number of the last applied change */
+    private volatile long applied;
+
+    /** the last sequence number the leader reported */
+    private volatile long leaderSequence;
+
+    /** when all changes the leader reported were last applied */
+    private volatile long caughtUpAt = System.currentTimeMillis();
+
+    /** when the leader last reported its sequence number */
+    private volatile long heardAt;
+
+    private volatile boolean connected;
+
+    private volatile Socket socket;
+
+    private volatile boolean closed;
+
+    /**
+     * @param weatherService the service the changes are applied to
+     * @param leader the replication address of the leader
+     */
+    public ReplicationFollower(WeatherService weatherService, InetSocketAddress leader) {
+        this.weatherService = weatherService;
+        this.leader = leader;
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(leader);
+                follow(s);
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(connected ? Level.WARNING : Level.FINE, "Lost the connection to " + leader, e);
+                }
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket s) throws IOException {
+        s.setTcpNoDelay(true);
+        // the leader sends a heartbeat at least every second, a silent connection is dead
+        s.setSoTimeout((int) (10 * ReplicationLeader.HEARTBEAT_MILLIS));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeLong(epoch);
+        out.writeLong(applied);
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        connected = true;
+        LOGGER.info("Following " + leader + " from sequence " + applied);
+
+        byte[] record = new byte[256];
+        while (!closed) {
+            byte kind = in.readByte();
+            if (kind == ReplicationLeader.RECORD) {
+                long sequence = in.readLong();
+                int length = in.readInt();
+                if (record.length != length) {
+                    record = new byte[length];
+                }
+                in.readFully(record);
+                weatherService.applyReplicated(record);
+                applied = sequence;
+            } else if (kind == ReplicationLeader.HEARTBEAT) {
+                leaderSequence = in.readLong();
+                heardAt = System.currentTimeMillis();
+                if (applied >= leaderSequence) {
+                    caughtUpAt = heardAt;
+                }
+            } else if (kind == ReplicationLeader.SNAPSHOT) {
+                restoreSnapshot(in);
+            } else {
+                throw new IOException("Unknown replication message " + kind);
+            }
+        }
+    }
+
+    private void restoreSnapshot(DataInputStream in) throws IOException {
+        long snapshotEpoch = in.readLong();
+        long sequence = in.readLong();
+        String name = in.readUTF();
+        long length = in.readLong();
+        File directory = Files.createTempDirectory("weather-replication").toFile();
+        File file = new File(directory, new File(name).getName());
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                byte[] buffer = new byte[1 << 16];
+                for (long remaining = length; remaining > 0; ) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        throw new IOException("Snapshot ended early");
+                    }
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+            // the snapshot may come from a restarted leader that no longer has some of this server's airports
+            weatherService.replaceWithSnapshot(directory);
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+        epoch = snapshotEpoch;
+        applied = sequence;
+        leaderSequence = Math.max(leaderSequence, sequence);
+        snapshots.increment();
+        LOGGER.info("Restored a snapshot of " + leader + " at sequence " + sequence);
+    }
+
+    /**
+     * @return the last applied change, the leader's last change and how far and how long this server is behind
+     */
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        long behind = Math.max(0, leaderSequence - applied);
+        // a leader that stopped sending heartbeats may have changes this server has not seen
+        boolean live = connected && now - heardAt <= 2 * ReplicationLeader.HEARTBEAT_MILLIS;
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("role", "follower");
+        stats.put("leader", leader.getHostString() + ":" + leader.getPort());
+        stats.put("connected", live);
+        stats.put("applied", applied);
+        stats.put("leader_sequence", leaderSequence);
+        stats.put("lag_records", behind);
+        stats.put("lag_ms", live && behind == 0 ? 0 : now - caughtUpAt);
+        stats.put("snapshots", snapshots.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.ChangeFeed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the {@link ChangeFeed} of this server to followers connecting over a socket.
+ *
+ * A follower opens the stream with the epoch and sequence number of the last change it applied. If it comes from
+ * another feed, is new, or fell behind the changes the feed still keeps, it is sent a snapshot first. Then it
+ * receives every change in order, followed by the leader's latest sequence number after each batch, or at least
+ * every {@link #HEARTBEAT_MILLIS} when there are no changes.
+ */
+public class ReplicationLeader implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicationLeader.class.getName());
+
+    /** message kinds sent to followers */
+    static final byte SNAPSHOT = 1;
+
+    static final byte RECORD = 2;
+
+    static final byte HEARTBEAT = 3;
+
+    /** changes sent between two flushes at most */
+    private static final int BATCH = 1024;
+
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    private final WeatherService weatherService;
+
+    private final ChangeFeed feed;
+
+    private final ServerSocket serverSocket;
+
+    /** the sequence number of the last change sent to each connected follower */
+    private final Map<String, AtomicLong> followers = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * @param weatherService the service whose snapshots are sent
+     * @param feed the changes to stream
+     * @param address the address followers connect to
+     */
+    public ReplicationLeader(WeatherService weatherService, ChangeFeed feed, InetSocketAddress address)
+            throws IOException {
+        this.weatherService = weatherService;
+        this.feed = feed;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        Thread acceptor = new Thread(this::accept, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "replication-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Could not accept a follower", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String follower = String.valueOf(socket.getRemoteSocketAddress());
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+            long epoch = in.readLong();
+            long sequence = in.readLong();
+            AtomicLong sent = new AtomicLong(sequence);
+            followers.put(follower, sent);
+            LOGGER.info("Follower " + follower + " connected at sequence " + sequence);
+
+            if (epoch != feed.getEpoch() || sequence > feed.lastSequence() || sequence + 1 < feed.firstSequence()) {
+                sequence = sendSnapshot(out);
+            }
+            while (!closed) {
+                List<byte[]> records = feed.read(sequence, BATCH, HEARTBEAT_MILLIS);
+                if (records == null) {
+                    LOGGER.info("Follower " + follower + " fell behind the kept changes");
+                    sequence = sendSnapshot(out);
+                    continue;
+                }
+                for (byte[] record : records) {
+                    out.writeByte(RECORD);
+                    out.writeLong(++sequence);
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+                out.writeByte(HEARTBEAT);
+                out.writeLong(feed.lastSequence());
+                out.flush();
+                sent.set(sequence);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.INFO, "Follower " + follower + " disconnected", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(follower);
+        }
+    }
+
+    /**
+     * @return the sequence number the snapshot is current to
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        File directory = Files.createTempDirectory("weather-replication").toFile();
+        try {
+            // every change up to the sequence was applied before the snapshot reads the store
+            long sequence = feed.lastSequence();
+            File snapshot = weatherService.writeSnapshot(directory, sequence);
+            out.writeByte(SNAPSHOT);
+            out.writeLong(feed.getEpoch());
+            out.writeLong(sequence);
+            out.writeUTF(snapshot.getName());
+            out.writeLong(snapshot.length());
+            Files.copy(snapshot.toPath(), out);
+            out.flush();
+            return sequence;
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * @return the feed position and the last change sent to each connected follower
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("role", "leader");
+        stats.put("sequence", feed.lastSequence());
+        stats.put("first_sequence", feed.firstSequence());
+        Map<String, Long> sent = new TreeMap<>();
+        followers.forEach((follower, sequence) -> sent.put(follower, sequence.get()));
+        stats.put("followers", sent);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+    }
+}
@@ -1,8 +1,26 @@
 package com.crossover.trial.weather.service;
 
 import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.AirportWeather;
 import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.AtmosphericInformationList;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
+import com.crossover.trial.weather.data.NearbyAirport;
+import com.crossover.trial.weather.data.WeatherAggregate;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.geo.AirportGrid;
+import com.crossover.trial.weather.geo.GeoMath;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -15,20 +33,44 @@ public class AirportService {
     private WeatherService weatherService = WeatherService.getInstance();
 
     /** all known airports */
-    private static Map<String, AirportData> airportDataMap = new HashMap<>();
+    private static Map<String, AirportData> airportDataMap = new ConcurrentHashMap<>();
+
+    /** spatial index over {@link #airportDataMap} used for radius queries */
+    private static AirportGrid airportGrid = new AirportGrid();
 
     /**
      * Internal performance counter to better understand most requested information, this map can be improved but
      * for now provides the basis for future performance optimizations. Due to the stateless deployment architecture
      * we don't want to write this to disk, but will pull it off using a REST request and aggregate with other
      * performance metrics {@link #()}
+     *
+     * Counters are created with the airport and are striped {@link LongAdder}s, so the query path only increments
+     * and concurrent queries do not serialize on the statistics.
      */
-    private static Map<AirportData, Integer> requestFrequency = new HashMap<>();
+    private static Map<String, LongAdder> requestFrequency = new ConcurrentHashMap<>();
+
+    /** total number of weather queries */
+    private static LongAdder requestCount = new LongAdder();
+
+    /** width of a radius histogram bucket in KM */
+    public static final int RADIUS_BUCKET_KM = 10;
+
+    /** number of radius histogram buckets, the last one counts every radius beyond the others */
+    public static final int RADIUS_BUCKETS = 101;
+
+    private static LongAdder[] radiusFreq = new LongAdder[RADIUS_BUCKETS];
 
-    private static Map<Double, Integer> radiusFreq = new HashMap<>();
+    /** system property setting the number of cached weather query results, 0 disables the cache */
+    public static final String QUERY_CACHE_PROPERTY = "weather.queryCache";
 
-    /** earth radius in KM */
-    private static final double R = 6372.8;
+    /** recent weather query results, served until an airport they depend on changes */
+    private static WeatherQueryCache queryCache = new WeatherQueryCache(Integer.getInteger(QUERY_CACHE_PROPERTY, 1024));
+
+    static {
+        for (int i = 0; i < RADIUS_BUCKETS; i++) {
+            radiusFreq[i] = new LongAdder();
+        }
+    }
 
 
     static {
@@ -46,8 +88,11 @@ public class AirportService {
      * A dummy init method that loads hard coded data
      */
     public void init() {
-        airportDataMap.clear();
-        requestFrequency.clear();
+        clear();
+        requestCount.reset();
+        for (LongAdder bucket : radiusFreq) {
+            bucket.reset();
+        }
 
         addAirport("BOS", 42.364347, -71.005181);
         addAirport("EWR", 40.6925, -74.168667);
@@ -56,11 +101,29 @@ public class AirportService {
         addAirport("MMU", 40.79935, -74.4148747);
     }
 
+    /**
+     * Forget all airports, their request counters and the cached query results. The readings are kept by the
+     * {@link WeatherService}, clear it after this so no query finds an airport without its readings.
+     */
+    public void clear() {
+        airportDataMap.clear();
+        airportGrid.clear();
+        requestFrequency.clear();
+        queryCache.clear();
+    }
+
     public Set<String> getAirportsIata() {
         Set<String> retval = airportDataMap.keySet().stream().collect(Collectors.toSet());
         return retval;
     }
 
+    /**
+     * @return a live view of all known airports
+     */
+    public Collection<AirportData> getAirports() {
+        return Collections.unmodifiableCollection(airportDataMap.values());
+    }
+
     /**
      * Given an iataCode get the airport data
      *
@@ -71,6 +134,21 @@ public class AirportService {
         return airportDataMap.get(iataCode);
     }
 
+    /**
+     * @param iataCode the airport in the center
+     * @param radius the radius in KM
+     * @return the codes of the airports within the radius, the airport itself included, none if it is unknown
+     */
+    public List<String> getAirportsWithin(String iataCode, double radius) {
+        List<String> within = new ArrayList<>();
+        AirportData ad = airportDataMap.get(iataCode);
+        if (ad != null) {
+            airportGrid.forEachWithin(ad.getLatitude(), ad.getLongitude(), radius,
+                    airportData -> within.add(airportData.getIata()));
+        }
+        return within;
+    }
+
     /**
      * Add a new known airport to our list.
      *
@@ -79,40 +157,109 @@ public class AirportService {
      * @param longitude in degrees
      *
      * @return the added airport
+     *
+     * @throws IllegalArgumentException if the weather store can not hold the airport code
      */
     public AirportData addAirport(String iataCode, double latitude, double longitude) {
+        // rejected before the airport is indexed so it is never half registered
+        weatherService.checkAirportCode(iataCode);
         AirportData ad = new AirportData();
         ad.setIata(iataCode);
         ad.setLatitude(latitude);
-        ad.setLatitude(longitude);
-        airportDataMap.put(iataCode, ad);
-
-        weatherService.addAtmosphericInformation(iataCode);
+        ad.setLongitude(longitude);
+        try {
+            // registered before it is indexed so a query never finds the airport without its readings
+            weatherService.registerAirport(iataCode, latitude, longitude);
+        } finally {
+            // the index is updated inside compute so concurrent adds of the same airport can not leave a stale
+            // entry
+            airportDataMap.compute(iataCode, (iata, previous) -> {
+                if (previous != null) {
+                    airportGrid.remove(previous);
+                }
+                airportGrid.add(ad);
+                return ad;
+            });
+            queryCache.airportsChanged();
+            requestFrequency.putIfAbsent(iataCode, new LongAdder());
+        }
 
         return ad;
     }
 
+    /**
+     * Add many airports given as a json array of {"iata": CODE, "latitude": degrees, "longitude": degrees}
+     * objects. Airports are parsed and added one at a time, the body is never held in memory as a whole.
+     *
+     * @param airports the json formatted airports
+     * @param status receives the status of each airport in order, {@link WeatherService#STATUS_OK} or the reason
+     * it was not added; it holds the airports added before a malformed one when the airports can not be read to
+     * the end
+     *
+     * @throws IOException if the airports can not be read or are not a json array of objects
+     */
+    public void addAirports(Reader airports, List<String> status) throws IOException {
+        JsonReader reader = new JsonReader(airports);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String iataCode = null;
+            double latitude = Double.NaN;
+            double longitude = Double.NaN;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "iata":
+                        iataCode = reader.nextString();
+                        break;
+                    case "latitude":
+                        latitude = reader.nextDouble();
+                        break;
+                    case "longitude":
+                        longitude = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (iataCode == null || iataCode.isEmpty() || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                status.add("Missing iata, latitude or longitude");
+                continue;
+            }
+            try {
+                addAirport(iataCode, latitude, longitude);
+                status.add(WeatherService.STATUS_OK);
+            } catch (IllegalArgumentException | UncheckedIOException e) {
+                status.add(e.getMessage());
+            }
+        }
+        reader.endArray();
+    }
 
+    /**
+     * @return the fraction of weather queries made for each known airport
+     */
     public Map<String, Double> getFrequencyMap() {
         Map<String, Double> freq = new HashMap<>();
+        double total = Math.max(1, requestCount.sum());
         // fraction of queries
-        for (AirportData data : airportDataMap.values()) {
-            double frac = (double)requestFrequency.getOrDefault(data, 0) / requestFrequency.size();
-            freq.put(data.getIata(), frac);
+        for (String iata : airportDataMap.keySet()) {
+            LongAdder count = requestFrequency.get(iata);
+            freq.put(iata, count == null ? 0.0 : count.sum() / total);
         }
         return freq;
 
     }
 
+    /**
+     * @return the number of weather queries per radius, bucket i counts radii in
+     * [i * {@link #RADIUS_BUCKET_KM}, (i + 1) * {@link #RADIUS_BUCKET_KM}) and the last bucket every larger radius
+     */
     public int[] getRadiusFrequency() {
-        int m = radiusFreq.keySet().stream()
-                .max(Double::compare)
-                .orElse(1000.0).intValue() + 1;
-
-        int[] hist = new int[m];
-        for (Map.Entry<Double, Integer> e : radiusFreq.entrySet()) {
-            int i = e.getKey().intValue() % 10;
-            hist[i] += e.getValue();
+        int[] hist = new int[RADIUS_BUCKETS];
+        for (int i = 0; i < RADIUS_BUCKETS; i++) {
+            hist[i] = radiusFreq[i].intValue();
         }
         return hist;
     }
@@ -125,33 +272,243 @@ public class AirportService {
      * @return the distance in KM
      */
     public double calculateDistance(AirportData ad1, AirportData ad2) {
-        double deltaLat = Math.toRadians(ad2.getLatitude() - ad1.getLatitude());
-        double deltaLon = Math.toRadians(ad2.getLongitude() - ad1.getLongitude());
-        double a =  Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
-                * Math.cos(ad1.getLatitude()) * Math.cos(ad2.getLatitude());
-        double c = 2 * Math.asin(Math.sqrt(a));
-        return R * c;
+        return GeoMath.distance(ad1.getPoint(), ad2.getPoint());
     }
 
+    /**
+     * @param iata the airport code
+     * @param radiusString the radius in KM, empty for the airport alone
+     * @return the readings of the airport if the radius is 0, otherwise those of every airport within the radius
+     * that has any, served from the query cache while none of them changed
+     */
     public List<AtmosphericInformation> getWeather(String iata, String radiusString) {
         double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
         updateRequestFrequency(iata, radius);
 
+        AtmosphericInformationList cached = queryCache.get(iata, radius);
+        if (cached != null) {
+            return cached;
+        }
+        WeatherQueryCache.Dependencies dependencies = queryCache.dependencies();
         List<AtmosphericInformation> result = new ArrayList<>();
+        List<byte[]> encoded = new ArrayList<>();
         if (radius == 0) {
-            result.add(weatherService.getAtmosphericInformation(iata));
+            collect(iata, false, dependencies, result, encoded);
         } else {
             AirportData ad = airportDataMap.get(iata);
-            airportDataMap.values().stream().filter(airportData -> calculateDistance(ad, airportData) <= radius).forEach(airportData -> {
-                AtmosphericInformation ai = weatherService.getAtmosphericInformation(airportData.getIata());
-                if (ai.hasNotNullField()) {
-                    result.add(ai);
-                }
-            });
+            if (ad != null) {
+                airportGrid.forEachWithin(ad.getLatitude(), ad.getLongitude(), radius,
+                        airportData -> collect(airportData.getIata(), true, dependencies, result, encoded));
+            }
+        }
+        AtmosphericInformationList list =
+                new AtmosphericInformationList(result, encoded.size() == result.size() ? encoded : null);
+        queryCache.put(iata, radius, list, dependencies);
+        return list;
+    }
+
+    /**
+     * @param latitude the latitude of the center in degrees
+     * @param longitude the longitude of the center in degrees
+     * @param radiusString the radius in KM
+     * @return the airports with readings within the radius of a point, which need not be an airport, closest
+     * first
+     *
+     * @throws WeatherException if a number is malformed or out of range
+     */
+    public List<NearbyAirport> getWeatherAround(String latitude, String longitude, String radiusString)
+            throws WeatherException {
+        double lat = coordinate(latitude, 90);
+        double lon = coordinate(longitude, 180);
+        double radius = number(radiusString);
+        if (radius < 0) {
+            throw new WeatherException("Negative radius " + radiusString);
+        }
+        List<NearbyAirport> result = new ArrayList<>();
+        airportGrid.forEachWithin(lat, lon, radius, airportData -> {
+            AtmosphericInformation ai = weatherService.getAtmosphericInformation(airportData.getIata());
+            if (ai != null && ai.hasNotNullField()) {
+                result.add(new NearbyAirport(airportData,
+                        GeoMath.distance(lat, lon, airportData.getLatitude(), airportData.getLongitude()), ai));
+            }
+        });
+        result.sort(Comparator.comparingDouble(NearbyAirport::getDistance));
+        return result;
+    }
+
+    /**
+     * @param minLatitude the southern edge in degrees
+     * @param minLongitude the western edge in degrees
+     * @param maxLatitude the northern edge in degrees
+     * @param maxLongitude the eastern edge in degrees, less than the western edge for a box crossing the
+     * antimeridian
+     * @return the airports with readings inside the box, edges included
+     *
+     * @throws WeatherException if a number is malformed or out of range or the edges are reversed
+     */
+    public List<AirportWeather> getWeatherInBox(String minLatitude, String minLongitude, String maxLatitude,
+                                                String maxLongitude) throws WeatherException {
+        double minLat = coordinate(minLatitude, 90);
+        double maxLat = coordinate(maxLatitude, 90);
+        if (minLat > maxLat) {
+            throw new WeatherException("Southern edge " + minLatitude + " above northern edge " + maxLatitude);
         }
+        List<AirportWeather> result = new ArrayList<>();
+        airportGrid.forEachInBox(minLat, coordinate(minLongitude, 180), maxLat, coordinate(maxLongitude, 180),
+                airportData -> {
+                    AtmosphericInformation ai = weatherService.getAtmosphericInformation(airportData.getIata());
+                    if (ai != null && ai.hasNotNullField()) {
+                        result.add(new AirportWeather(airportData, ai));
+                    }
+                });
         return result;
     }
 
+    private static double coordinate(String value, double limit) throws WeatherException {
+        double degrees = number(value);
+        if (degrees < -limit || degrees > limit) {
+            throw new WeatherException("Coordinate out of range " + value);
+        }
+        return degrees;
+    }
+
+    private static double number(String value) throws WeatherException {
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isNaN(number)) {
+                throw new WeatherException("Not a number " + value);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new WeatherException(e.getMessage());
+        }
+    }
+
+    /**
+     * Aggregate one value of a point type over the airports within a radius. The values are read straight from
+     * the store into a primitive buffer, no readings or query result are built.
+     *
+     * @param iata the airport code
+     * @param radiusString the radius in KM, empty for the airport alone
+     * @param pointType the point type {@link DataPointType}, in any case
+     * @param field the value of the readings {@link DataPointField}, in any case, null for the mean
+     * @param percentiles the percentiles to compute, each in (0, 100], none for {@link WeatherAggregate#DEFAULT_PERCENTILES}
+     * @return the aggregate over the airports holding a reading of the point type
+     *
+     * @throws WeatherException if the airport, point type or field is unknown or a number is malformed
+     */
+    public WeatherAggregate getAggregate(String iata, String radiusString, String pointType, String field,
+                                         List<String> percentiles) throws WeatherException {
+        AirportData center = airportDataMap.get(iata);
+        if (center == null) {
+            throw new WeatherException("Unknown airport " + iata);
+        }
+        DataPointType type = DataPointType.lookup(pointType);
+        if (type == null) {
+            throw new WeatherException("Unknown point type " + pointType);
+        }
+        DataPointField dpField = field == null ? DataPointField.MEAN : DataPointField.lookup(field);
+        if (dpField == null) {
+            throw new WeatherException("Unknown field " + field);
+        }
+        double radius;
+        double[] ranks;
+        try {
+            radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.parseDouble(radiusString);
+            ranks = WeatherAggregate.percentileRanks(percentiles);
+        } catch (IllegalArgumentException e) {
+            throw new WeatherException(e.getMessage());
+        }
+        updateRequestFrequency(iata, radius);
+
+        WeatherAggregate.Builder aggregate = new WeatherAggregate.Builder(type, dpField);
+        if (radius == 0) {
+            aggregate.add(weatherService.getValue(iata, type, dpField));
+        } else {
+            airportGrid.forEachWithin(center.getLatitude(), center.getLongitude(), radius,
+                    airportData -> aggregate.add(weatherService.getValue(airportData.getIata(), type, dpField)));
+        }
+        return aggregate.build(ranks);
+    }
+
+    /**
+     * Find the airports closest to an airport through the spatial index, without a radius to guess.
+     *
+     * @param iata the airport code
+     * @param kString the number of airports to return
+     * @param pointType if not null only airports with a fresh reading of this {@link DataPointType} are returned
+     * @return at most k airports and their readings, closest first, the airport itself included
+     *
+     * @throws WeatherException if the airport or point type is unknown or k is not a positive number
+     */
+    public List<NearbyAirport> getNearest(String iata, String kString, String pointType) throws WeatherException {
+        AirportData center = airportDataMap.get(iata);
+        if (center == null) {
+            throw new WeatherException("Unknown airport " + iata);
+        }
+        int k;
+        try {
+            k = Integer.parseInt(kString);
+        } catch (NumberFormatException e) {
+            throw new WeatherException(e.getMessage());
+        }
+        if (k <= 0) {
+            throw new WeatherException("Expected a positive count, got " + kString);
+        }
+        Predicate<AirportData> filter = airportData -> true;
+        if (pointType != null) {
+            DataPointType type = DataPointType.lookup(pointType);
+            if (type == null) {
+                throw new WeatherException("Unknown point type " + pointType);
+            }
+            filter = airportData -> weatherService.hasFreshReading(airportData.getIata(), type);
+        }
+
+        List<AirportGrid.Neighbor> neighbors =
+                airportGrid.nearest(center.getLatitude(), center.getLongitude(), k, filter);
+        List<NearbyAirport> nearest = new ArrayList<>(neighbors.size());
+        for (AirportGrid.Neighbor neighbor : neighbors) {
+            // null if the readings were cleared since the airport was found
+            AtmosphericInformation ai = weatherService.getAtmosphericInformation(neighbor.getAirport().getIata());
+            if (ai != null) {
+                nearest.add(new NearbyAirport(neighbor.getAirport(), neighbor.getDistanceKm(), ai));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Add the readings of an airport and their json form, if they were encoded on write, to a query result.
+     *
+     * @param withReadingsOnly skip the airport if it has no readings
+     */
+    private void collect(String iata, boolean withReadingsOnly, WeatherQueryCache.Dependencies dependencies,
+                         List<AtmosphericInformation> result, List<byte[]> encoded) {
+        EncodedAtmosphericInformation eai = weatherService.getEncoded(iata);
+        AtmosphericInformation ai;
+        if (eai != null) {
+            dependencies.add(weatherService.getVersion(iata), eai.getVersion());
+            ai = eai.getAtmosphericInformation();
+        } else {
+            dependencies.add(weatherService.getVersion(iata));
+            ai = weatherService.getAtmosphericInformation(iata);
+        }
+        if (ai == null || withReadingsOnly && !ai.hasNotNullField()) {
+            return;
+        }
+        result.add(ai);
+        if (eai != null) {
+            encoded.add(eai.getJson());
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the weather query cache and the number of cached results
+     */
+    public Map<String, Long> getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
     /**
      * Records information about how often requests are made
      *
@@ -159,9 +516,13 @@ public class AirportService {
      * @param radius query radius
      */
     public void updateRequestFrequency(String iata, Double radius) {
-        AirportData airportData = airportDataMap.get(iata);
-        requestFrequency.put(airportData, requestFrequency.getOrDefault(airportData, 0) + 1);
-        radiusFreq.put(radius, radiusFreq.getOrDefault(radius, 0));
+        LongAdder count = requestFrequency.get(iata);
+        if (count != null) {
+            count.increment();
+        }
+        requestCount.increment();
+        int bucket = radius > 0 ? (int) Math.min(RADIUS_BUCKETS - 1, radius / RADIUS_BUCKET_KM) : 0;
+        radiusFreq[bucket].increment();
     }
 
 }
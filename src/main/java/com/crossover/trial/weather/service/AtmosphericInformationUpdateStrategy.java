@@ -1,102 +1,83 @@
 package com.crossover.trial.weather.service;
 
-import com.crossover.trial.weather.data.AtmosphericInformation;
 import com.crossover.trial.weather.data.DataPoint;
 import com.crossover.trial.weather.data.DataPointType;
 
 /**
  * Created by const on 8/11/16.
+ *
+ * Decides whether a data point is a plausible reading for its point type. Rejected points still count as an
+ * update of the airport, but do not replace the stored reading.
  */
 public class AtmosphericInformationUpdateStrategy {
 
+    /** the shared strategy of each point type, by ordinal */
+    private static final AtmosphericInformationUpdateStrategy[] STRATEGIES =
+            new AtmosphericInformationUpdateStrategy[DataPointType.values().length];
+
+    static {
+        STRATEGIES[DataPointType.WIND.ordinal()] = new WindUpdateStrategy();
+        STRATEGIES[DataPointType.TEMPERATURE.ordinal()] = new TemperatureUpdateStrategy();
+        STRATEGIES[DataPointType.HUMIDTY.ordinal()] = new HumidityUpdateStrategy();
+        STRATEGIES[DataPointType.PRESSURE.ordinal()] = new PressureUpdateStrategy();
+        STRATEGIES[DataPointType.CLOUDCOVER.ordinal()] = new CloudCoverUpdateStrategy();
+        STRATEGIES[DataPointType.PRECIPITATION.ordinal()] = new PrecipitationUpdateStrategy();
+    }
 
-    public void update(AtmosphericInformation ai, DataPoint dp) {
-        ai.setLastUpdateTime(System.currentTimeMillis());
+    public final boolean accepts(DataPoint dp) {
+        return accepts(dp.getMean());
     }
 
-    public static AtmosphericInformationUpdateStrategy createUpdateStrategy(DataPointType pointType) {
-        switch (pointType) {
-            case WIND:
-                return new WindUpdateStrategy();
-            case TEMPERATURE:
-                return new TemperatureUpdateStrategy();
-            case HUMIDTY:
-                return new HumidityUpdateStrategy();
-            case PRESSURE:
-                return new PressureUpdateStrategy();
-            case CLOUDCOVER:
-                return new CloudCoverUpdateStrategy();
-            case PRECIPITATION:
-                return new PrecipitationUpdateStrategy();
+    public boolean accepts(double mean) {
+        return true;
+    }
 
-        }
-        return null;
+    /**
+     * @return the strategy of the point type, strategies are stateless and shared
+     */
+    public static AtmosphericInformationUpdateStrategy forPointType(DataPointType pointType) {
+        return STRATEGIES[pointType.ordinal()];
     }
 
     static class WindUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >= 0) {
-                ai.setWind(dp);
-                return;
-            }
-
+        public boolean accepts(double mean) {
+            return mean >= 0;
         }
     }
 
     static class TemperatureUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >= -50 && dp.getMean() < 100) {
-                ai.setTemperature(dp);
-                return;
-            }
+        public boolean accepts(double mean) {
+            return mean >= -50 && mean < 100;
         }
     }
 
     static class HumidityUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >= 0 && dp.getMean() < 100) {
-                ai.setHumidity(dp);
-                return;
-            }
+        public boolean accepts(double mean) {
+            return mean >= 0 && mean < 100;
         }
     }
 
     static class PressureUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >= 650 && dp.getMean() < 800) {
-                ai.setPressure(dp);
-                return;
-            }
+        public boolean accepts(double mean) {
+            return mean >= 650 && mean < 800;
         }
     }
 
     static class CloudCoverUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >= 0 && dp.getMean() < 100) {
-                ai.setCloudCover(dp);
-                return;
-            }
+        public boolean accepts(double mean) {
+            return mean >= 0 && mean < 100;
         }
     }
 
     static class PrecipitationUpdateStrategy extends AtmosphericInformationUpdateStrategy {
         @Override
-        public void update(AtmosphericInformation ai, DataPoint dp) {
-            super.update(ai, dp);
-            if (dp.getMean() >=0 && dp.getMean() < 100) {
-                ai.setPrecipitation(dp);
-                return;
-            }
+        public boolean accepts(double mean) {
+            return mean >=0 && mean < 100;
         }
     }
 
@@ -0,0 +1,177 @@
+package com.crossover.trial.weather.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps an incrementally maintained count of airports updated within a sliding window, using a wheel of
+ * time buckets. Every airport holding readings is counted in the bucket of its last update; an update moves it
+ * to the current bucket and buckets fall out of the count as the window moves past them. Counting fresh
+ * airports sums a fixed number of buckets, independent of the number of airports.
+ *
+ * The wheel also schedules stale-reading eviction: each airport is queued once in the bucket it was first seen
+ * in and is re-checked when that bucket expires, airports updated since are re-queued at their latest bucket.
+ */
+public class FreshnessTracker {
+
+    private final long bucketMillis;
+
+    private final long windowBuckets;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    /** airports waiting in a bucket queue to be re-checked */
+    private final List<Queue<String>> scheduled;
+
+    private final Set<String> isScheduled = ConcurrentHashMap.newKeySet();
+
+    /** the newest bucket id whose queue was drained */
+    private final AtomicLong expiredThrough = new AtomicLong(-1);
+
+    private static final class Bucket {
+        final long id;
+        final LongAdder count = new LongAdder();
+
+        Bucket(long id) {
+            this.id = id;
+        }
+    }
+
+    public FreshnessTracker(long windowMillis, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.windowBuckets = windowMillis / bucketMillis;
+        int slots = (int) windowBuckets + 2;
+        this.buckets = new AtomicReferenceArray<>(slots);
+        this.scheduled = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            scheduled.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Record an update of an airport that holds readings afterwards.
+     *
+     * @param iataCode the airport
+     * @param previousUpdate the previous update time if the airport held readings before, 0 otherwise
+     * @param update the update time
+     * @param now the current time
+     */
+    public void touch(String iataCode, long previousUpdate, long update, long now) {
+        long edge = edgeBucket(now);
+        long id = update / bucketMillis;
+        if (id > edge) {
+            Bucket bucket = bucket(id);
+            if (bucket != null) {
+                bucket.count.increment();
+            }
+        }
+        forget(previousUpdate);
+        if (isScheduled.add(iataCode)) {
+            scheduled.get(slot(id)).add(iataCode);
+        }
+    }
+
+    /**
+     * Record that an airport no longer holds the readings it last updated at the given time.
+     *
+     * @param previousUpdate the update time of the dropped readings, 0 if there were none
+     */
+    public void forget(long previousUpdate) {
+        if (previousUpdate <= 0) {
+            return;
+        }
+        long id = previousUpdate / bucketMillis;
+        Bucket bucket = buckets.get(slot(id));
+        // a recycled bucket means the airport already aged out of the count
+        if (bucket != null && bucket.id == id) {
+            bucket.count.decrement();
+        }
+    }
+
+    /**
+     * @param now the current time
+     * @return the number of airports holding readings updated within the window, at bucket granularity
+     */
+    public long freshCount(long now) {
+        long edge = edgeBucket(now);
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.id > edge) {
+                count += bucket.count.sum();
+            }
+        }
+        return Math.max(0, count);
+    }
+
+    /**
+     * Re-check the airports queued in buckets that left the window since the last call.
+     *
+     * @param now the current time
+     * @param recheck given an airport, evicts it if it is stale and returns its last update time if it still
+     *                holds readings, 0 otherwise
+     */
+    public void expire(long now, ToLongFunction<String> recheck) {
+        long edge = edgeBucket(now);
+        long from = Math.max(expiredThrough.get() + 1, edge - buckets.length() + 1);
+        for (long id = from; id <= edge; id++) {
+            Queue<String> queue = scheduled.get(slot(id));
+            for (int pending = queue.size(); pending > 0; pending--) {
+                String iataCode = queue.poll();
+                if (iataCode == null) {
+                    break;
+                }
+                isScheduled.remove(iataCode);
+                long lastUpdate = recheck.applyAsLong(iataCode);
+                if (lastUpdate > 0 && isScheduled.add(iataCode)) {
+                    scheduled.get(slot(lastUpdate / bucketMillis)).add(iataCode);
+                }
+            }
+        }
+        expiredThrough.accumulateAndGet(edge, Math::max);
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, null);
+            scheduled.get(i).clear();
+        }
+        isScheduled.clear();
+        expiredThrough.set(-1);
+    }
+
+    /** the newest bucket id outside the window */
+    private long edgeBucket(long now) {
+        return now / bucketMillis - windowBuckets;
+    }
+
+    private int slot(long id) {
+        return (int) (id % buckets.length());
+    }
+
+    /**
+     * @return the bucket with the given id, installing it over an older one, or null if the slot already holds
+     * a newer bucket
+     */
+    private Bucket bucket(long id) {
+        int slot = slot(id);
+        while (true) {
+            Bucket current = buckets.get(slot);
+            if (current != null && current.id >= id) {
+                return current.id == id ? current : null;
+            }
+            Bucket fresh = new Bucket(id);
+            if (buckets.compareAndSet(slot, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.data.AtmosphericInformationList;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of weather query results keyed by airport and radius. An entry remembers the version of every
+ * airport inside its circle and of the airport set at the time it was computed, and is only served while none of
+ * them changed, so a new reading at any airport the result depends on invalidates it right away.
+ *
+ * The cache is split into segments by key, each a least recently used map guarded by its own lock.
+ */
+class WeatherQueryCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /** incremented whenever airports are added or replaced, which may change the airports inside any circle */
+    private final AtomicLong airportsVersion = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of cached results, 0 disables the cache
+     */
+    WeatherQueryCache(int capacity) {
+        int segmentCapacity = (capacity + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * @return the cached result of the query if none of the versions it depends on changed, null otherwise
+     */
+    AtmosphericInformationList get(String iataCode, double radius) {
+        Key key = new Key(iataCode, radius);
+        Segment segment = segmentOf(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.isCurrent(airportsVersion.get())) {
+            hits.increment();
+            return entry.result;
+        }
+        if (entry != null) {
+            synchronized (segment) {
+                segment.remove(key, entry);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @return a collector of the versions a result is computed from, to be created before any airport is read
+     */
+    Dependencies dependencies() {
+        return new Dependencies(airportsVersion.get());
+    }
+
+    /**
+     * Cache the result of a query unless one of the airports it was computed from is unknown.
+     */
+    void put(String iataCode, double radius, AtmosphericInformationList result, Dependencies dependencies) {
+        Key key = new Key(iataCode, radius);
+        Segment segment = segmentOf(key);
+        if (dependencies.complete && segment.capacity > 0) {
+            Entry entry = new Entry(result, dependencies);
+            synchronized (segment) {
+                segment.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Invalidate every entry, called when an airport is added or replaced.
+     */
+    void airportsChanged() {
+        airportsVersion.incrementAndGet();
+    }
+
+    /**
+     * Drop all entries and reset the counters.
+     */
+    void clear() {
+        airportsVersion.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * @return the hit, miss and eviction counts and the number of cached results
+     */
+    Map<String, Long> getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("size", size);
+        return stats;
+    }
+
+    private Segment segmentOf(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ h >>> 16) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Versions of the airport set and of each airport a result is computed from. Each version is read before the
+     * readings it guards, so a change made while the result is computed leaves the entry stale rather than wrong.
+     */
+    static final class Dependencies {
+
+        private final long airportsVersion;
+
+        private AtomicLong[] counters = new AtomicLong[8];
+
+        private long[] seen = new long[8];
+
+        private int size;
+
+        private boolean complete = true;
+
+        private Dependencies(long airportsVersion) {
+            this.airportsVersion = airportsVersion;
+        }
+
+        /**
+         * @param version the version counter of an airport, null if the airport is unknown
+         */
+        void add(AtomicLong version) {
+            add(version, version == null ? 0 : version.get());
+        }
+
+        /**
+         * @param version the version counter of an airport, null if the airport is unknown
+         * @param seen the version the readings were read at
+         */
+        void add(AtomicLong version, long seen) {
+            if (version == null) {
+                complete = false;
+                return;
+            }
+            if (size == counters.length) {
+                counters = Arrays.copyOf(counters, size * 2);
+                this.seen = Arrays.copyOf(this.seen, size * 2);
+            }
+            counters[size] = version;
+            this.seen[size++] = seen;
+        }
+    }
+
+    private static final class Entry {
+
+        final AtmosphericInformationList result;
+
+        final long airportsVersion;
+
+        final AtomicLong[] counters;
+
+        final long[] seen;
+
+        Entry(AtmosphericInformationList result, Dependencies dependencies) {
+            this.result = result;
+            this.airportsVersion = dependencies.airportsVersion;
+            this.counters = Arrays.copyOf(dependencies.counters, dependencies.size);
+            this.seen = Arrays.copyOf(dependencies.seen, dependencies.size);
+        }
+
+        boolean isCurrent(long currentAirportsVersion) {
+            if (airportsVersion != currentAirportsVersion) {
+                return false;
+            }
+            for (int i = 0; i < counters.length; i++) {
+                if (counters[i].get() != seen[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Key {
+
+        final String iataCode;
+
+        final double radius;
+
+        Key(String iataCode, double radius) {
+            this.iataCode = iataCode;
+            this.radius = radius;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return Double.compare(radius, that.radius) == 0 && iataCode.equals(that.iataCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * iataCode.hashCode() + Double.hashCode(radius);
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -2,23 +2,116 @@ package com.crossover.trial.weather.service;
 
 import com.crossover.trial.weather.data.AtmosphericInformation;
 import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointParser;
 import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
+import com.crossover.trial.weather.data.HistoricalDataPoint;
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.exception.WeatherLogException;
+import com.crossover.trial.weather.store.ChangeFeed;
+import com.crossover.trial.weather.store.PackedWeatherStore;
+import com.crossover.trial.weather.store.SnapshotWeatherStore;
+import com.crossover.trial.weather.store.WeatherHistory;
+import com.crossover.trial.weather.store.WeatherSnapshot;
+import com.crossover.trial.weather.store.WeatherStore;
+import com.crossover.trial.weather.store.WriteAheadLog;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by const on 8/10/16.
  */
 public class WeatherService {
 
+    /** system property selecting the store, "snapshot" (default) or "packed" */
+    public static final String STORE_PROPERTY = "weather.store";
+
+    /** batch status of a stored record */
+    public static final String STATUS_OK = "OK";
+
+    /** batch status of a record outside the valid range of its point type */
+    public static final String STATUS_OUT_OF_RANGE = "OUT_OF_RANGE";
+
+    /** system property setting the readings kept per airport and point type in the history, 0 disables it */
+    public static final String HISTORY_PROPERTY = "weather.history";
+
+    /** system property enabling the json encoding of an airport's readings whenever they change */
+    public static final String ENCODE_ON_WRITE_PROPERTY = "weather.encodeOnWrite";
+
+    /** readings updated within this window count towards the data size */
+    public static final long FRESH_WINDOW_MILLIS = 86400000;
+
+    private static final Logger LOGGER = Logger.getLogger(WeatherService.class.getName());
+
+    private static final Gson gson = new Gson();
+
     private static WeatherService instance;
 
     /** atmospheric information for each airport, idx corresponds with airportData */
-    private static Map<String, AtmosphericInformation> atmosphericInformation = new HashMap();
+    private static WeatherStore atmosphericInformation = createStore(System.getProperty(STORE_PROPERTY, "snapshot"));
+
+    /** airports with readings by last update minute */
+    private static FreshnessTracker freshness = new FreshnessTracker(FRESH_WINDOW_MILLIS, 60000);
+
+    /** past readings of each airport */
+    private static WeatherHistory history = new WeatherHistory(Integer.getInteger(HISTORY_PROPERTY, 64));
+
+    /** incremented after every change of an airport's readings, lets cached query results be validated */
+    private static Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /** if set the readings of each airport are encoded to json on every change, for reads that outnumber writes */
+    private static final boolean encodeOnWrite = Boolean.getBoolean(ENCODE_ON_WRITE_PROPERTY);
+
+    /** the latest encoded readings of each airport, only kept if {@link #encodeOnWrite} is set */
+    private static Map<String, AtomicReference<EncodedAtmosphericInformation>> encoded = new ConcurrentHashMap<>();
+
+    /** durable log of all changes, null unless {@link #openLog} was called */
+    private static volatile WriteAheadLog log;
+
+    /** stream of applied changes for replicas, null unless {@link #openChangeFeed} was called */
+    private static volatile ChangeFeed feed;
+
+    /** subscribers notified of accepted data points */
+    private static WeatherSubscriptions subscriptions = WeatherSubscriptions.getInstance();
+
+    /** number of locks the airports are striped over, a power of two */
+    private static final int STRIPES = 256;
+
+    /**
+     * Serialize the changes of an airport with their log records, so the log holds them in the order they were
+     * applied to the store and a replay ends with the readings this server served. Only taken while a log or feed
+     * is open: airports sharing a stripe then contend on it, as every writer does on the {@link #sequencer}.
+     * Without either, writers to different airports never contend.
+     */
+    private static final Object[] stripes = new Object[STRIPES];
+
+    /**
+     * Taken under a stripe to append a change to the log and publish it to the feed together, so both hold the
+     * changes in the same order and under the same sequence number.
+     */
+    private static final Object sequencer = new Object();
+
+    /** data point parser reused by each ingesting thread */
+    private static final ThreadLocal<DataPointParser> parsers = ThreadLocal.withInitial(DataPointParser::new);
 
     static {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
         instance = new WeatherService();
     }
 
@@ -30,17 +123,129 @@ public class WeatherService {
         return instance;
     }
 
+    private static WeatherStore createStore(String name) {
+        if ("packed".equalsIgnoreCase(name)) {
+            return new PackedWeatherStore();
+        }
+        return new SnapshotWeatherStore();
+    }
+
     public void clear() {
         atmosphericInformation.clear();
+        freshness.clear();
+        history.clear();
+        // counters held by cached results must not match again once the airports are re-added
+        versions.values().forEach(AtomicLong::incrementAndGet);
+        versions.clear();
+        encoded.clear();
     }
 
     public AtmosphericInformation getAtmosphericInformation(String iataCode) {
         return atmosphericInformation.get(iataCode);
     }
 
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @param type the point type
+     * @param field the value of the reading
+     * @return the current value, NaN if the airport is unknown or has no reading of the type
+     */
+    public double getValue(String iataCode, DataPointType type, DataPointField field) {
+        return atmosphericInformation.value(iataCode, type, field);
+    }
+
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @param type the point type
+     * @return true if the airport holds a reading of the type and was updated within {@link #FRESH_WINDOW_MILLIS}
+     */
+    public boolean hasFreshReading(String iataCode, DataPointType type) {
+        AtmosphericInformation ai = atmosphericInformation.get(iataCode);
+        return ai != null && ai.get(type) != null
+                && ai.getLastUpdateTime() > System.currentTimeMillis() - FRESH_WINDOW_MILLIS;
+    }
+
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @return the counter incremented after every change of the airport's readings, null if the airport is unknown
+     */
+    public AtomicLong getVersion(String iataCode) {
+        return versions.get(iataCode);
+    }
+
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @return the readings of the airport as of their last change and their json form, null if the airport is
+     * unknown or readings are not encoded on write
+     */
+    public EncodedAtmosphericInformation getEncoded(String iataCode) {
+        AtomicReference<EncodedAtmosphericInformation> current = encoded.get(iataCode);
+        return current == null ? null : current.get();
+    }
+
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @return the current readings of the airport and their json form, null if the airport is unknown
+     */
+    public EncodedAtmosphericInformation getCurrentEncoded(String iataCode) {
+        EncodedAtmosphericInformation eai = getEncoded(iataCode);
+        if (eai != null) {
+            return eai;
+        }
+        AtomicLong version = versions.get(iataCode);
+        // the version is taken first so the readings are at least as new as it
+        long current = version == null ? 0 : version.get();
+        AtmosphericInformation ai = atmosphericInformation.get(iataCode);
+        return ai == null ? null : new EncodedAtmosphericInformation(current, ai);
+    }
+
+    /**
+     * @param iataCode the airport code
+     * @throws IllegalArgumentException if the store can not hold the airport
+     */
+    public void checkAirportCode(String iataCode) {
+        if (!atmosphericInformation.accepts(iataCode)) {
+            throw new IllegalArgumentException("Unsupported airport code " + iataCode);
+        }
+    }
+
     public void addAtmosphericInformation(String iataCode) {
-        AtmosphericInformation ai = new AtmosphericInformation();
-        atmosphericInformation.put(iataCode, ai);
+        freshness.forget(atmosphericInformation.addAirport(iataCode));
+        history.addAirport(iataCode);
+        versions.putIfAbsent(iataCode, new AtomicLong());
+        if (encodeOnWrite) {
+            encoded.putIfAbsent(iataCode, new AtomicReference<>());
+        }
+        changed(iataCode);
+    }
+
+    /**
+     * Bump the version of an airport after its readings changed and encode them if enabled.
+     */
+    private static void changed(String iataCode) {
+        AtomicLong counter = versions.get(iataCode);
+        if (counter == null) {
+            return;
+        }
+        long version = counter.incrementAndGet();
+        AtomicReference<EncodedAtmosphericInformation> current = encoded.get(iataCode);
+        if (current == null) {
+            return;
+        }
+        // the readings are read after the version was taken, so they include every change up to it; an older
+        // encoding never replaces a newer one
+        EncodedAtmosphericInformation previous = current.get();
+        if (previous != null && previous.getVersion() >= version) {
+            return;
+        }
+        EncodedAtmosphericInformation update =
+                new EncodedAtmosphericInformation(version, atmosphericInformation.get(iataCode));
+        while (!current.compareAndSet(previous, update)) {
+            previous = current.get();
+            if (previous != null && previous.getVersion() >= version) {
+                return;
+            }
+        }
     }
 
     /**
@@ -49,38 +254,425 @@ public class WeatherService {
      * @param iataCode the 3 letter IATA code
      * @param pointType the point type {@link DataPointType}
      * @param dp a datapoint object holding pointType data
+     * @return true if the reading was stored, false if it is out of range for the point type
      *
      * @throws WeatherException if the update can not be completed
      */
-    public void addDataPoint(String iataCode, String pointType, DataPoint dp) throws WeatherException {
-        AtmosphericInformation ai = getAtmosphericInformation(iataCode);
-        updateAtmosphericInformation(ai, pointType, dp);
+    public boolean addDataPoint(String iataCode, String pointType, DataPoint dp) throws WeatherException {
+        DataPointType dpType = pointType(pointType);
+        // rejected points still count as an update, they just keep the previous reading
+        boolean accepted = AtmosphericInformationUpdateStrategy.forPointType(dpType).accepts(dp);
+        apply(iataCode, dpType, accepted, dp.getMean(), dp.getFirst(), dp.getSecond(), dp.getThird(), dp.getCount(),
+                System.currentTimeMillis(), log, feed, true);
+        return accepted;
+    }
+
+    /**
+     * Update the airports weather data with a json formatted data point. Unlike
+     * {@link #addDataPoint(String, String, DataPoint)} no DataPoint is built to parse it, this is the path taken by
+     * single point updates. The default snapshot store still copies the airport's readings on every update.
+     *
+     * @param iataCode the 3 letter IATA code
+     * @param pointType the point type {@link DataPointType}, in any case
+     * @param datapointJson the json form of a {@link DataPoint}
+     * @return true if the reading was stored, false if it is out of range for the point type
+     *
+     * @throws WeatherException if the point is malformed or the update can not be completed
+     */
+    public boolean addDataPoint(String iataCode, CharSequence pointType, CharSequence datapointJson)
+            throws WeatherException {
+        DataPointType dpType = pointType(pointType);
+        DataPointParser parser = parsers.get();
+        if (!parser.parse(datapointJson)) {
+            throw new WeatherException("Malformed datapoint " + datapointJson);
+        }
+        boolean accepted = AtmosphericInformationUpdateStrategy.forPointType(dpType).accepts(parser.getMean());
+        apply(iataCode, dpType, accepted, parser.getMean(), parser.getFirst(), parser.getSecond(), parser.getThird(),
+                parser.getCount(), System.currentTimeMillis(), log, feed, true);
+        return accepted;
+    }
+
+    /**
+     * Update the airports weather data with a reading given by its values, for callers that decode readings
+     * themselves and do not acknowledge them. No DataPoint is built for the reading; the default snapshot store
+     * still copies the airport's readings on every update, only the packed store takes it without allocating.
+     *
+     * The update is logged but the call does not wait for the log to force it to disk, whatever the fsync policy,
+     * so a thread serving many sources is not held up by each fsync.
+     *
+     * @param iataCode the 3 letter IATA code
+     * @param type the point type
+     * @param timestamp the collection time in milliseconds since UTC epoch, a reading collected before the current
+     * one of its point type is only added to the history
+     * @return true if the reading was stored, false if it is out of range for the point type
+     *
+     * @throws WeatherException if the airport is unknown or the update can not be completed
+     */
+    public boolean addDataPoint(String iataCode, DataPointType type, double mean, int first, int second, int third,
+                                int count, long timestamp) throws WeatherException {
+        boolean accepted = AtmosphericInformationUpdateStrategy.forPointType(type).accepts(mean);
+        apply(iataCode, type, accepted, mean, first, second, third, count, timestamp, log, feed, false);
+        return accepted;
+    }
+
+    private static DataPointType pointType(CharSequence pointType) throws WeatherException {
+        DataPointType dpType = DataPointType.lookup(pointType);
+        if (dpType == null) {
+            throw new WeatherException("Unknown point type " + pointType);
+        }
+        return dpType;
+    }
+
+    /**
+     * Stores a validated reading, a rejected one only records the update time, and logs and publishes it once it
+     * is applied. A reading collected before the current reading of its point type only goes to the history, at
+     * its collection time, and leaves the current readings and their update time as they are.
+     *
+     * @param log the log to append to, null while replaying
+     * @param feed the feed to publish to, null while replaying
+     * @param awaitLog wait until the log holds the change as its fsync policy requires
+     */
+    private static void apply(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                              int second, int third, int count, long timestamp, WriteAheadLog log, ChangeFeed feed,
+                              boolean awaitLog) throws WeatherException {
+        long previousUpdate;
+        long sequence = 0;
+        IOException logFailure = null;
+        if (log == null && feed == null) {
+            // nothing to keep in step with the store, the store and the history order the writers of an airport
+            previousUpdate = store(iataCode, type, accepted, mean, first, second, third, count, timestamp);
+        } else {
+            synchronized (stripe(iataCode)) {
+                previousUpdate = store(iataCode, type, accepted, mean, first, second, third, count, timestamp);
+                synchronized (sequencer) {
+                    if (log != null) {
+                        try {
+                            sequence = log.appendDataPoint(iataCode, type, accepted, mean, first, second, third,
+                                    count, timestamp);
+                        } catch (IOException e) {
+                            logFailure = e;
+                        }
+                    }
+                    if (feed != null) {
+                        feed.publishDataPoint(sequence, iataCode, type, accepted, mean, first, second, third,
+                                count, timestamp);
+                    }
+                }
+            }
+        }
+        if (previousUpdate != WeatherStore.STALE) {
+            changed(iataCode);
+            if (accepted || previousUpdate != WeatherStore.NO_READINGS) {
+                freshness.touch(iataCode, previousUpdate, Math.max(previousUpdate, timestamp),
+                        System.currentTimeMillis());
+            }
+            if (accepted) {
+                subscriptions.changed(iataCode);
+            }
+        }
+        if (log != null && logFailure == null && awaitLog) {
+            // waiting for the fsync outside the stripe lets other updates of the airport share it
+            try {
+                log.sync(sequence);
+            } catch (IOException e) {
+                logFailure = e;
+            }
+        }
+        if (logFailure != null) {
+            throw new WeatherLogException("Update of " + iataCode + " applied but not logged: "
+                    + logFailure.getMessage());
+        }
+    }
+
+    /**
+     * @return the previous update time as given by {@link WeatherStore#update}
+     */
+    private static long store(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                              int second, int third, int count, long timestamp) throws WeatherException {
+        long previousUpdate = accepted
+                ? atmosphericInformation.update(iataCode, type, mean, first, second, third, count, timestamp)
+                : atmosphericInformation.update(iataCode, type, null, timestamp);
+        if (previousUpdate == WeatherStore.UNKNOWN_AIRPORT) {
+            throw new WeatherException("Unknown airport " + iataCode);
+        }
+        if (accepted) {
+            history.add(iataCode, type, timestamp, mean, first, second, third, count);
+        }
+        return previousUpdate;
+    }
+
+    private static Object stripe(String iataCode) {
+        return stripes[iataCode.hashCode() & (STRIPES - 1)];
+    }
+
+    /**
+     * Replay the write-ahead log in the directory into the airport and weather state, then log every change made
+     * from now on. Must be called before the service takes requests and before {@link #openChangeFeed}.
+     *
+     * @param directory the log directory
+     * @param policy when logged changes are forced to disk
+     * @param fsyncMillis the interval for {@link WriteAheadLog.FsyncPolicy#INTERVAL}
+     * @param segmentBytes the size of a log segment file
+     * @param afterSequence the log sequence number covered by a restored snapshot, 0 to replay the whole log
+     */
+    public void openLog(File directory, WriteAheadLog.FsyncPolicy policy, long fsyncMillis, long segmentBytes,
+                        long afterSequence) throws IOException {
+        log = WriteAheadLog.open(directory, policy, fsyncMillis, segmentBytes, afterSequence, replayer());
+    }
+
+    /**
+     * Restore the airport and weather state from the newest snapshot in the directory. Must be called before the
+     * service takes requests and before {@link #openLog}.
+     *
+     * @return the log sequence number covered by the snapshot, 0 if there was none
+     */
+    public long restoreSnapshot(File directory) throws IOException {
+        AirportService airportService = AirportService.getInstance();
+        long now = System.currentTimeMillis();
+        return WeatherSnapshot.restore(directory, (iataCode, latitude, longitude, ai) -> {
+            airportService.addAirport(iataCode, latitude, longitude);
+            // the readings are current values, not new ones, and are not added to the history
+            long previousUpdate = atmosphericInformation.put(iataCode, ai);
+            changed(iataCode);
+            if (ai.hasNotNullField()) {
+                freshness.touch(iataCode, previousUpdate, ai.getLastUpdateTime(), now);
+            }
+        });
+    }
+
+    /**
+     * Replace the airport and weather state with the newest snapshot in the directory. Airports and readings the
+     * snapshot does not hold are dropped, as is the history of all airports.
+     *
+     * @return the log sequence number covered by the snapshot, 0 if there was none
+     */
+    public long replaceWithSnapshot(File directory) throws IOException {
+        AirportService.getInstance().clear();
+        clear();
+        return restoreSnapshot(directory);
+    }
+
+    /**
+     * Write a snapshot of all airports and their readings while updates continue, then delete the log segments it
+     * covers.
+     *
+     * @return the snapshot file
+     */
+    public File writeSnapshot(File directory) throws IOException {
+        WriteAheadLog current = log;
+        long sequence = current == null ? 0 : current.lastSequence();
+        File file = writeSnapshot(directory, sequence);
+        if (current != null) {
+            current.deleteSegmentsThrough(sequence);
+        }
+        return file;
     }
 
     /**
-     * update atmospheric information with the given data point for the given point type
+     * Write a snapshot of all airports and their readings while updates continue.
      *
-     * @param ai the atmospheric information object to update
-     * @param pointType the data point type as a string
-     * @param dp the actual data point
+     * @param sequence the sequence number of the last change applied before the snapshot was started
+     * @return the snapshot file
      */
-    private void updateAtmosphericInformation(AtmosphericInformation ai, String pointType, DataPoint dp) throws WeatherException {
-        final DataPointType dpType = DataPointType.valueOf(pointType.toUpperCase());
-        AtmosphericInformationUpdateStrategy updateStrategy = AtmosphericInformationUpdateStrategy.createUpdateStrategy(dpType);
-        updateStrategy.update(ai, dp);
+    public File writeSnapshot(File directory, long sequence) throws IOException {
+        return WeatherSnapshot.write(directory, sequence, AirportService.getInstance().getAirports(),
+                atmosphericInformation::get);
+    }
+
+    /**
+     * Publish every change made from now on to a feed replicas can follow.
+     *
+     * @param capacity the number of recent changes kept for replicas that fall behind
+     * @return the feed
+     */
+    public ChangeFeed openChangeFeed(int capacity) {
+        synchronized (sequencer) {
+            WriteAheadLog current = log;
+            // numbered like the log, a snapshot's log sequence number is then a position in the feed as well
+            feed = new ChangeFeed(capacity, current == null ? 0 : current.lastSequence());
+            return feed;
+        }
+    }
+
+    /**
+     * Stop publishing changes.
+     */
+    public void closeChangeFeed() {
+        synchronized (sequencer) {
+            feed = null;
+        }
+    }
+
+    /**
+     * Apply a change read from the feed of another server, without logging or publishing it.
+     */
+    public void applyReplicated(byte[] record) {
+        ChangeFeed.apply(record, replayer());
+    }
+
+    /** applies restored changes without logging them again */
+    private static WriteAheadLog.Replayer replayer() {
+        AirportService airportService = AirportService.getInstance();
+        return new WriteAheadLog.Replayer() {
+            @Override
+            public void airport(String iataCode, double latitude, double longitude) {
+                airportService.addAirport(iataCode, latitude, longitude);
+            }
+
+            @Override
+            public void dataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                                  int second, int third, int count, long timestamp) {
+                try {
+                    apply(iataCode, type, accepted, mean, first, second, third, count, timestamp, null, null, false);
+                } catch (WeatherException e) {
+                    LOGGER.log(Level.WARNING, "Skipping restored update", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Write the remaining log records and stop logging.
+     */
+    public void closeLog() throws IOException {
+        WriteAheadLog current = log;
+        log = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Register an airport with no readings, and log and publish the registration if logging or publishing is
+     * enabled.
+     *
+     * @throws UncheckedIOException if the log can not be written
+     */
+    void registerAirport(String iataCode, double latitude, double longitude) {
+        ChangeFeed currentFeed = feed;
+        WriteAheadLog current = log;
+        long sequence = 0;
+        if (current == null && currentFeed == null) {
+            addAtmosphericInformation(iataCode);
+            return;
+        }
+        // logged under the stripe so no update of the airport is logged ahead of its registration
+        synchronized (stripe(iataCode)) {
+            addAtmosphericInformation(iataCode);
+            IOException logFailure = null;
+            synchronized (sequencer) {
+                if (current != null) {
+                    try {
+                        sequence = current.appendAirport(iataCode, latitude, longitude);
+                    } catch (IOException e) {
+                        logFailure = e;
+                    }
+                }
+                if (currentFeed != null) {
+                    currentFeed.publishAirport(sequence, iataCode, latitude, longitude);
+                }
+            }
+            if (logFailure != null) {
+                throw new UncheckedIOException("Airport " + iataCode + " added but not logged", logFailure);
+            }
+        }
+        if (current != null) {
+            try {
+                current.sync(sequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Airport " + iataCode + " added but not logged", e);
+            }
+        }
+    }
+
+    /**
+     * @param iataCode the 3 letter IATA code
+     * @param pointType the point type {@link DataPointType}, in any case
+     * @param from the earliest collection time in milliseconds since UTC epoch, inclusive
+     * @param to the latest collection time, inclusive
+     * @return the stored readings of the point type collected in the time range, oldest first, at most the
+     * configured history capacity
+     *
+     * @throws WeatherException if the airport or point type is unknown
+     */
+    public List<HistoricalDataPoint> getHistory(String iataCode, String pointType, long from, long to)
+            throws WeatherException {
+        List<HistoricalDataPoint> readings = history.range(iataCode, pointType(pointType), from, to);
+        if (readings == null) {
+            throw new WeatherException("Unknown airport " + iataCode);
+        }
+        return readings;
+    }
+
+    /**
+     * Apply a stream of updates given as a json array of {"iata": CODE, "pointType": TYPE, "datapoint": {...}}
+     * records. Records are parsed and applied one at a time, the body is never held in memory as a whole.
+     *
+     * @param records the json formatted records
+     * @param status receives the status of each applied record in order, {@link #STATUS_OK},
+     * {@link #STATUS_OUT_OF_RANGE} or the reason the record failed; it holds the records applied before a
+     * malformed one when the records can not be read to the end
+     *
+     * @throws IOException if the records can not be read or are not a json array of objects
+     */
+    public void addDataPoints(Reader records, List<String> status) throws IOException {
+        JsonReader reader = new JsonReader(records);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String iataCode = null;
+            String pointType = null;
+            DataPoint dp = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "iata":
+                        iataCode = reader.nextString();
+                        break;
+                    case "pointType":
+                        pointType = reader.nextString();
+                        break;
+                    case "datapoint":
+                        dp = gson.fromJson(reader, DataPoint.class);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (iataCode == null || dp == null) {
+                status.add("Missing iata or datapoint");
+                continue;
+            }
+            try {
+                status.add(addDataPoint(iataCode, pointType, dp) ? STATUS_OK : STATUS_OUT_OF_RANGE);
+            } catch (WeatherException e) {
+                status.add(e.getMessage());
+            }
+        }
+        reader.endArray();
     }
 
     // TODO: name correctly
     public int getDataSize() {
-        int datasize = 0;
-        for (AtmosphericInformation ai : atmosphericInformation.values()) {
-            // we only count recent readings
-            // updated in the last day
-            if (ai.hasNotNullField() && ai.getLastUpdateTime() > System.currentTimeMillis() - 86400000) {
-                datasize++;
+        // we only count recent readings
+        // updated in the last day
+        return (int) freshness.freshCount(System.currentTimeMillis());
+    }
+
+    /**
+     * Drop the readings of airports that were not updated within the fresh window. Only airports whose last
+     * update aged out since the previous call are checked.
+     */
+    public void evictStaleReadings() {
+        long now = System.currentTimeMillis();
+        freshness.expire(now, iataCode -> {
+            long lastUpdate = atmosphericInformation.evict(iataCode, now - FRESH_WINDOW_MILLIS);
+            if (lastUpdate == WeatherStore.NO_READINGS) {
+                changed(iataCode);
             }
-        }
-        return datasize;
+            return lastUpdate;
+        });
     }
 
 }
@@ -0,0 +1,356 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the readings of an airport to its subscribers whenever it accepts a new data point.
+ *
+ * Ingestion only marks the airport as changed for each subscriber and queues the subscriber for delivery if it is
+ * not queued already, it never waits for a subscriber and never starts a thread. A fixed number of delivery
+ * threads take the queued subscribers and send the latest readings of every airport marked since the previous
+ * delivery, so a burst of changes reaches a slow subscriber as one event per airport.
+ *
+ * Writing to a subscriber can block while its client does not read. A subscriber whose write has not completed
+ * within the write timeout is dropped and the delivery thread writing to it is interrupted, which makes the
+ * container give up the write and close the connection. A stalled subscriber therefore holds a delivery thread for
+ * at most the write timeout. Keep alive messages are sent by the deliveries as well, the timer only requests them.
+ */
+public class WeatherSubscriptions {
+
+    private static final Logger LOGGER = Logger.getLogger(WeatherSubscriptions.class.getName());
+
+    /** system property setting the number of delivery threads, default 4 */
+    public static final String THREADS_PROPERTY = "weather.subscriptions.threads";
+
+    /** system property setting the milliseconds a write may take before the subscriber is dropped, default 10000 */
+    public static final String WRITE_TIMEOUT_PROPERTY = "weather.subscriptions.writeTimeoutMillis";
+
+    /** seconds between keep alive messages, which also detect subscribers that went away */
+    private static final long KEEP_ALIVE_SECONDS = 15;
+
+    /** milliseconds between checks for stalled writes */
+    private static final long WRITE_CHECK_MILLIS = 100;
+
+    /**
+     * Where the events of a subscription go. Every call runs on a delivery thread, which is interrupted if the call
+     * does not complete within the write timeout; the sink must then give up and let go of its connection.
+     */
+    public interface Sink {
+
+        /**
+         * @param iataCode the airport
+         * @param readings the latest readings and their version
+         * @return false if the subscriber is gone
+         */
+        boolean send(String iataCode, EncodedAtmosphericInformation readings);
+
+        /**
+         * @return false if the subscriber is gone
+         */
+        boolean keepAlive();
+
+        void close();
+    }
+
+    private static WeatherSubscriptions instance;
+
+    /** subscriptions of each airport */
+    private static Map<String, Set<Subscription>> byAirport = new ConcurrentHashMap<>();
+
+    private static Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    /** subscriptions waiting for a delivery thread, each at most once */
+    private static BlockingQueue<Subscription> ready = new LinkedBlockingQueue<>();
+
+    /** subscriptions with a write in progress */
+    private static Set<Subscription> writing = ConcurrentHashMap.newKeySet();
+
+    private static LongAdder events = new LongAdder();
+
+    /** changes that did not need an event of their own because one was still pending */
+    private static LongAdder coalesced = new LongAdder();
+
+    /** subscribers dropped because a write did not complete in time */
+    private static LongAdder dropped = new LongAdder();
+
+    private static volatile long writeTimeoutNanos;
+
+    static {
+        int threads = Integer.getInteger(THREADS_PROPERTY, 4);
+        for (int i = 1; i <= threads; i++) {
+            Thread thread = new Thread(WeatherSubscriptions::deliverReady, "weather-subscriptions-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(WRITE_TIMEOUT_PROPERTY, 10000));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "weather-subscriptions-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(WeatherSubscriptions::keepAlive, KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS);
+        timer.scheduleWithFixedDelay(WeatherSubscriptions::dropStalled, WRITE_CHECK_MILLIS, WRITE_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        instance = new WeatherSubscriptions();
+    }
+
+    private WeatherSubscriptions() {
+    }
+
+    public static WeatherSubscriptions getInstance() {
+        return instance;
+    }
+
+    /**
+     * One subscriber and the airports whose changes it has not been sent yet.
+     */
+    public static final class Subscription {
+
+        private final Set<String> airports;
+
+        private final Sink sink;
+
+        private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+        /** set while the subscription is queued or being delivered */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private volatile boolean keepAliveDue;
+
+        /** when the write in progress started, 0 if none is */
+        private volatile long writingSince;
+
+        /** the thread running the write in progress, null if none is */
+        private Thread writer;
+
+        private Subscription(Set<String> airports, Sink sink) {
+            this.airports = airports;
+            this.sink = sink;
+        }
+
+        private void changed(String iataCode) {
+            if (!changed.add(iataCode) || !schedule()) {
+                coalesced.increment();
+            }
+        }
+
+        private void keepAlive() {
+            keepAliveDue = true;
+            schedule();
+        }
+
+        /**
+         * @return true if the subscription was queued, false if it is queued or being delivered already
+         */
+        private boolean schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return false;
+            }
+            ready.add(this);
+            return true;
+        }
+
+        private void deliver() {
+            WeatherService weatherService = WeatherService.getInstance();
+            while (!closed.get()) {
+                boolean sentAny = false;
+                for (String iataCode : changed) {
+                    changed.remove(iataCode);
+                    EncodedAtmosphericInformation readings = weatherService.getCurrentEncoded(iataCode);
+                    if (readings == null) {
+                        continue;
+                    }
+                    if (!write(() -> sink.send(iataCode, readings))) {
+                        end();
+                        break;
+                    }
+                    events.increment();
+                    sentAny = true;
+                }
+                if (keepAliveDue && !closed.get()) {
+                    keepAliveDue = false;
+                    // an event just sent shows the subscriber is still there
+                    if (!sentAny && !write(sink::keepAlive)) {
+                        end();
+                    }
+                }
+                if (closed.get()) {
+                    break;
+                }
+                scheduled.set(false);
+                // a change marked after the loop found the subscription still scheduled and left it to this
+                // delivery, as does a close
+                if (changed.isEmpty() && !keepAliveDue && !closed.get() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+            // still scheduled, so no delivery runs after this one
+            write(() -> {
+                sink.close();
+                return true;
+            });
+        }
+
+        /** runs a call of the sink, timed by {@link #dropStalled} */
+        private boolean write(BooleanSupplier write) {
+            synchronized (this) {
+                writer = Thread.currentThread();
+            }
+            writingSince = Math.max(1, System.nanoTime());
+            writing.add(this);
+            try {
+                return write.getAsBoolean();
+            } catch (RuntimeException e) {
+                return false;
+            } finally {
+                writing.remove(this);
+                writingSince = 0;
+                synchronized (this) {
+                    writer = null;
+                    // an interrupt meant for this write must not reach the next one
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private boolean isStalled(long now) {
+            long since = writingSince;
+            return since != 0 && now - since > writeTimeoutNanos;
+        }
+
+        private synchronized void interruptWrite() {
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+
+        /**
+         * Stop the events and end the subscription.
+         */
+        public void close() {
+            end();
+        }
+
+        /**
+         * @return true if this call ended the subscription
+         */
+        private boolean end() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            subscriptions.remove(this);
+            for (String iataCode : airports) {
+                Set<Subscription> subscribers = byAirport.get(iataCode);
+                if (subscribers != null) {
+                    subscribers.remove(this);
+                }
+            }
+            // the sink is closed by a delivery, the one in progress if there is one
+            schedule();
+            return true;
+        }
+    }
+
+    /**
+     * Subscribe to the changes of airports. The current readings of each airport are sent right away.
+     *
+     * @param iataCodes the airports
+     * @param sink the subscriber
+     * @return the subscription
+     */
+    public Subscription subscribe(Collection<String> iataCodes, Sink sink) {
+        Subscription subscription = new Subscription(new LinkedHashSet<>(iataCodes), sink);
+        // changes arriving while the subscription is registered are left to the first delivery
+        subscription.scheduled.set(true);
+        subscription.changed.addAll(subscription.airports);
+        subscriptions.add(subscription);
+        for (String iataCode : subscription.airports) {
+            byAirport.computeIfAbsent(iataCode, code -> ConcurrentHashMap.newKeySet()).add(subscription);
+        }
+        ready.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Notify the subscribers of an airport that it accepted a new data point.
+     */
+    void changed(String iataCode) {
+        Set<Subscription> subscribers = byAirport.get(iataCode);
+        if (subscribers != null) {
+            for (Subscription subscription : subscribers) {
+                subscription.changed(iataCode);
+            }
+        }
+    }
+
+    /**
+     * @param millis how long a write may take before the subscriber is dropped
+     */
+    public void setWriteTimeout(long millis) {
+        writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void keepAlive() {
+        for (Subscription subscription : subscriptions) {
+            subscription.keepAlive();
+        }
+    }
+
+    private static void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscription subscription : writing) {
+            if (subscription.isStalled(now)) {
+                if (subscription.end()) {
+                    dropped.increment();
+                }
+                subscription.interruptWrite();
+            }
+        }
+    }
+
+    /** run by each delivery thread */
+    private static void deliverReady() {
+        while (true) {
+            try {
+                ready.take().deliver();
+            } catch (InterruptedException e) {
+                // only writes are interrupted, this one completed before the interrupt
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Delivery failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of subscribers, events sent, changes folded into a pending event and subscribers dropped
+     * because a write stalled
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("subscribers", (long) subscriptions.size());
+        stats.put("events", events.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package com.crossover.trial.weather.shard;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.geo.AirportGrid;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Assigns each airport to the shard that keeps its readings. With {@link Partition#GEO} every shard owns an
+ * equal longitude band of the globe, so the airports around a point mostly share a shard, with
+ * {@link Partition#HASH} airports are spread by their IATA code.
+ *
+ * The map also indexes every known airport so a radius query is only sent to the shards owning an airport
+ * within the radius.
+ */
+public class ShardMap {
+
+    /** how airports are split over the shards */
+    public enum Partition {
+        GEO, HASH
+    }
+
+    private final int shards;
+
+    private final Partition partition;
+
+    private final Map<String, AirportData> airports = new ConcurrentHashMap<>();
+
+    private final AirportGrid grid = new AirportGrid();
+
+    public ShardMap(int shards, Partition partition) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.shards = shards;
+        this.partition = partition;
+    }
+
+    public int size() {
+        return shards;
+    }
+
+    /**
+     * @return the shard owning an airport at the given position
+     */
+    public int shardOf(String iata, double latitude, double longitude) {
+        if (partition == Partition.HASH) {
+            return Math.floorMod(iata.hashCode(), shards);
+        }
+        int band = (int) Math.floor((longitude + 180) / 360 * shards);
+        return Math.max(0, Math.min(shards - 1, band));
+    }
+
+    /**
+     * @return the shard owning a known airport, -1 if the airport is unknown
+     */
+    public int shardOf(String iata) {
+        AirportData ad = airports.get(iata);
+        return ad == null ? -1 : shardOf(iata, ad.getLatitude(), ad.getLongitude());
+    }
+
+    public void addAirport(String iata, double latitude, double longitude) {
+        AirportData ad = new AirportData();
+        ad.setIata(iata);
+        ad.setLatitude(latitude);
+        ad.setLongitude(longitude);
+        airports.compute(iata, (code, previous) -> {
+            if (previous != null) {
+                grid.remove(previous);
+            }
+            grid.add(ad);
+            return ad;
+        });
+    }
+
+    /**
+     * @return the airport or null if it is unknown
+     */
+    public AirportData getAirport(String iata) {
+        return airports.get(iata);
+    }
+
+    public Set<String> getAirportsIata() {
+        return airports.keySet().stream().collect(Collectors.toSet());
+    }
+
+    /**
+     * @param iata the airport in the center
+     * @param radius the radius in KM
+     * @return the shards owning an airport within the radius in ascending order, none if the airport is unknown
+     */
+    public int[] shardsWithin(String iata, double radius) {
+        AirportData center = airports.get(iata);
+        if (center == null) {
+            return new int[0];
+        }
+        BitSet owners = new BitSet(shards);
+        grid.forEachWithin(center.getLatitude(), center.getLongitude(), radius,
+                ad -> owners.set(shardOf(ad.getIata(), ad.getLatitude(), ad.getLongitude())));
+        return owners.stream().toArray();
+    }
+}
@@ -0,0 +1,579 @@
+package com.crossover.trial.weather.shard;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.WeatherAggregate;
+import com.crossover.trial.weather.service.WeatherService;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the weather api in front of several weather servers, each keeping the readings of the airports
+ * {@link ShardMap} assigns to it. Airports are added to every shard so any shard can answer a radius query around
+ * any airport with the readings it owns, readings only go to the owning shard.
+ *
+ * Updates and single airport queries are forwarded to the owning shard, radius queries to every shard owning an
+ * airport within the radius at the same time, and their json arrays are concatenated. Aggregates over several
+ * shards are computed here from the concatenated readings, nearest airport and coordinate queries go to every
+ * shard and their answers are merged. Requests the router does
+ * not know about go to the first shard.
+ */
+public class ShardRoutingHttpHandler extends HttpHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardRoutingHttpHandler.class.getName());
+
+    private static final String JSON = "application/json";
+
+    /** airports fetched at a time while loading the airports of the shards */
+    private static final int LOAD_BATCH = 64;
+
+    private static final Gson gson = new Gson();
+
+    private final ShardMap shardMap;
+
+    private final String[] shards;
+
+    private final Client client = ClientBuilder.newClient();
+
+    /**
+     * @param shardMap the assignment of airports to shards
+     * @param shards the base urls of the shards, for example http://localhost:9091, in shard order
+     */
+    public ShardRoutingHttpHandler(ShardMap shardMap, List<String> shards) {
+        if (shards.size() != shardMap.size()) {
+            throw new IllegalArgumentException(shards.size() + " shard urls for " + shardMap.size() + " shards");
+        }
+        this.shardMap = shardMap;
+        this.shards = new String[shards.size()];
+        for (int i = 0; i < this.shards.length; i++) {
+            String url = shards.get(i);
+            this.shards[i] = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        }
+    }
+
+    /** status, content type and body of a response */
+    private static final class Reply {
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Reply(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Reply json(Object entity) {
+            return new Reply(200, JSON, gson.toJson(entity).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Fill the map with the airports known to the first shard, so a restarted router routes like before.
+     */
+    public void loadAirports() throws InterruptedException {
+        String[] codes = client.target(shards[0] + "/collect/airports").request().get(String[].class);
+        for (int from = 0; from < codes.length; from += LOAD_BATCH) {
+            List<Future<AirportData>> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(codes.length, from + LOAD_BATCH); i++) {
+                batch.add(client.target(shards[0] + "/collect/airport/" + codes[i]).request().async()
+                        .get(AirportData.class));
+            }
+            for (Future<AirportData> future : batch) {
+                try {
+                    AirportData ad = future.get();
+                    shardMap.addAirport(ad.getIata(), ad.getLatitude(), ad.getLongitude());
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Could not load an airport", e.getCause());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        String path = request.getRequestURI();
+        String query = request.getQueryString();
+        String target = query == null ? path : path + "?" + query;
+        String[] segments = path.substring(1).split("/");
+        Method method = request.getMethod();
+        byte[] body = readBody(request.getInputStream());
+        String contentType = request.getContentType();
+
+        Reply reply;
+        String api = segments[0];
+        String resource = segments.length > 1 ? segments[1] : "";
+        if ("collect".equals(api)) {
+            if ("weather".equals(resource) && segments.length == 4 && method == Method.POST) {
+                reply = forward(ownerOf(segments[2]), method, target, contentType, body);
+            } else if ("weather".equals(resource) && segments.length == 2 && method == Method.POST) {
+                reply = updateWeatherBatch(target, contentType, body);
+            } else if ("airport".equals(resource) && segments.length == 5 && method == Method.POST) {
+                reply = addAirport(segments[2], segments[3], segments[4], target, contentType, body);
+            } else if ("airports".equals(resource) && method == Method.POST) {
+                reply = addAirports(target, contentType, body);
+            } else if ("airports".equals(resource) && method == Method.GET) {
+                reply = Reply.json(shardMap.getAirportsIata());
+            } else if ("airport".equals(resource) && segments.length == 3 && method == Method.GET) {
+                AirportData ad = shardMap.getAirport(segments[2]);
+                reply = ad == null ? new Reply(204, null, new byte[0]) : Reply.json(ad);
+            } else if ("ping".equals(resource)) {
+                reply = new Reply(200, "text/plain", "ready".getBytes(StandardCharsets.UTF_8));
+            } else if ("exit".equals(resource)) {
+                System.exit(0);
+                return;
+            } else {
+                reply = forward(0, method, target, contentType, body);
+            }
+        } else if ("query".equals(api)) {
+            if ("weather".equals(resource) && segments.length == 4 && method == Method.GET) {
+                reply = weather(segments[2], segments[3], target);
+            } else if ("aggregate".equals(resource) && segments.length == 5 && method == Method.GET) {
+                String[] percentiles = request.getParameterValues("percentile");
+                reply = aggregate(segments[2], segments[3], segments[4], request.getParameter("field"),
+                        percentiles == null ? null : Arrays.asList(percentiles), target);
+            } else if (("area".equals(resource) && segments.length == 5
+                    || "box".equals(resource) && segments.length == 6) && method == Method.GET) {
+                reply = inArea(target, "area".equals(resource));
+            } else if ("nearest".equals(resource) && segments.length == 4 && method == Method.GET) {
+                reply = nearest(segments[3], target);
+            } else if ("history".equals(resource) && segments.length == 4) {
+                reply = forward(ownerOf(segments[2]), method, target, contentType, body);
+            } else if ("ping".equals(resource) || "metrics".equals(resource)) {
+                reply = perShard(target);
+            } else {
+                reply = forward(0, method, target, contentType, body);
+            }
+        } else {
+            reply = new Reply(404, null, new byte[0]);
+        }
+
+        response.setStatus(reply.status);
+        if (reply.contentType != null) {
+            response.setContentType(reply.contentType);
+        }
+        response.setContentLength(reply.body.length);
+        response.getOutputStream().write(reply.body);
+    }
+
+    /** the owning shard of an airport, the first one for unknown airports so they fail as on a single server */
+    private int ownerOf(String iata) {
+        int shard = shardMap.shardOf(iata);
+        return shard < 0 ? 0 : shard;
+    }
+
+    private Reply weather(String iata, String radiusString, String target) throws InterruptedException {
+        double radius;
+        try {
+            radius = radiusString.trim().isEmpty() ? 0 : Double.parseDouble(radiusString);
+        } catch (NumberFormatException e) {
+            return forward(0, Method.GET, target, null, null);
+        }
+        if (radius == 0) {
+            return forward(ownerOf(iata), Method.GET, target, null, null);
+        }
+        int[] owners = shardMap.shardsWithin(iata, radius);
+        if (owners.length == 1) {
+            return forward(owners[0], Method.GET, target, null, null);
+        }
+        List<Reply> replies = fanOut(owners, Method.GET, target, null, null);
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        merged.write('[');
+        boolean first = true;
+        for (Reply reply : replies) {
+            if (reply.status != 200) {
+                return reply;
+            }
+            int open = indexOf(reply.body, '[', true);
+            int close = indexOf(reply.body, ']', false);
+            if (open < 0 || close <= open + 1) {
+                continue;
+            }
+            if (!first) {
+                merged.write(',');
+            }
+            merged.write(reply.body, open + 1, close - open - 1);
+            first = false;
+        }
+        merged.write(']');
+        return new Reply(200, JSON, merged.toByteArray());
+    }
+
+    /**
+     * Forward an aggregate query to the only shard owning airports within the radius, otherwise aggregate the
+     * readings of the radius query over the owning shards here, as percentiles of the shards do not combine.
+     */
+    private Reply aggregate(String iata, String radiusString, String pointType, String field,
+                            List<String> percentiles, String target) throws InterruptedException {
+        DataPointType type = DataPointType.lookup(pointType);
+        DataPointField dpField = field == null ? DataPointField.MEAN : DataPointField.lookup(field);
+        double radius;
+        double[] ranks;
+        try {
+            radius = radiusString.trim().isEmpty() ? 0 : Double.parseDouble(radiusString);
+            ranks = WeatherAggregate.percentileRanks(percentiles);
+        } catch (IllegalArgumentException e) {
+            return forward(ownerOf(iata), Method.GET, target, null, null);
+        }
+        int[] owners = radius == 0 || shardMap.shardOf(iata) < 0 ? new int[0] : shardMap.shardsWithin(iata, radius);
+        if (type == null || dpField == null || owners.length <= 1) {
+            return forward(owners.length == 1 ? owners[0] : ownerOf(iata), Method.GET, target, null, null);
+        }
+        Reply readings = weather(iata, radiusString, "/query/weather/" + iata + "/" + radiusString);
+        if (readings.status != 200) {
+            return readings;
+        }
+        WeatherAggregate.Builder aggregate = new WeatherAggregate.Builder(type, dpField);
+        for (AtmosphericInformation ai : gson.fromJson(new String(readings.body, StandardCharsets.UTF_8),
+                AtmosphericInformation[].class)) {
+            aggregate.add(ai.get(type));
+        }
+        return Reply.json(aggregate.build(ranks));
+    }
+
+    /**
+     * Concatenate the answers of every shard to a coordinate query. Only the owner of an airport has its readings,
+     * so each airport with readings comes from exactly one shard.
+     *
+     * @param byDistance keep the closest first order of a radius query
+     */
+    private Reply inArea(String target, boolean byDistance) throws InterruptedException {
+        List<JsonObject> found = new ArrayList<>();
+        for (Reply reply : fanOut(allShards(), Method.GET, target, null, null)) {
+            if (reply.status != 200) {
+                return reply;
+            }
+            for (JsonElement element : new JsonParser().parse(new String(reply.body, StandardCharsets.UTF_8))
+                    .getAsJsonArray()) {
+                found.add(element.getAsJsonObject());
+            }
+        }
+        if (byDistance) {
+            found.sort(Comparator.comparingDouble(nearby -> nearby.get("distance").getAsDouble()));
+        }
+        JsonArray merged = new JsonArray();
+        found.forEach(merged::add);
+        return new Reply(200, JSON, merged.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Ask every shard for the nearest airports and keep the closest k. Every shard knows every airport but only
+     * the owner has its readings, so of an airport returned by several shards the owner's answer is kept.
+     */
+    private Reply nearest(String kString, String target) throws InterruptedException {
+        List<Reply> replies = fanOut(allShards(), Method.GET, target, null, null);
+        Map<String, JsonObject> byAirport = new HashMap<>();
+        for (int shard = 0; shard < replies.size(); shard++) {
+            Reply reply = replies.get(shard);
+            if (reply.status != 200) {
+                return reply;
+            }
+            for (JsonElement element : new JsonParser().parse(new String(reply.body, StandardCharsets.UTF_8))
+                    .getAsJsonArray()) {
+                String iata = element.getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString();
+                if (!byAirport.containsKey(iata) || shardMap.shardOf(iata) == shard) {
+                    byAirport.put(iata, element.getAsJsonObject());
+                }
+            }
+        }
+        List<JsonObject> closest = new ArrayList<>(byAirport.values());
+        closest.sort(Comparator.comparingDouble(nearby -> nearby.get("distance").getAsDouble()));
+        JsonArray merged = new JsonArray();
+        // every shard accepted k
+        for (JsonObject nearby : closest.subList(0, Math.min(Integer.parseInt(kString), closest.size()))) {
+            merged.add(nearby);
+        }
+        return new Reply(200, JSON, merged.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Split a batch of updates by owning shard and put the status of every record back in request order.
+     */
+    private Reply updateWeatherBatch(String target, String contentType, byte[] body) throws InterruptedException {
+        JsonArray records;
+        try {
+            JsonElement parsed = new JsonParser().parse(new String(body, StandardCharsets.UTF_8));
+            if (!parsed.isJsonArray()) {
+                return forward(0, Method.POST, target, contentType, body);
+            }
+            records = parsed.getAsJsonArray();
+        } catch (JsonParseException e) {
+            // the shard answers malformed batches the same way a single server does
+            return forward(0, Method.POST, target, contentType, body);
+        }
+
+        JsonArray[] batches = new JsonArray[shards.length];
+        List<List<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            batches[i] = new JsonArray();
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            JsonElement record = records.get(i);
+            JsonElement iata = record.isJsonObject() ? record.getAsJsonObject().get("iata") : null;
+            int shard = iata != null && iata.isJsonPrimitive() ? ownerOf(iata.getAsString()) : 0;
+            batches[shard].add(record);
+            positions.get(shard).add(i);
+        }
+
+        List<Integer> used = new ArrayList<>();
+        List<Future<javax.ws.rs.core.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (batches[i].size() > 0) {
+                used.add(i);
+                futures.add(invocation(i, target).async().post(Entity.entity(batches[i].toString(), JSON)));
+            }
+        }
+        String[] status = new String[records.size()];
+        long accepted = 0;
+        for (int i = 0; i < used.size(); i++) {
+            Reply reply = await(futures.get(i));
+            if (reply.status != 200) {
+                return reply;
+            }
+            JsonObject result = new JsonParser().parse(new String(reply.body, StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+            accepted += result.get("accepted").getAsLong();
+            JsonArray shardStatus = result.getAsJsonArray("status");
+            List<Integer> at = positions.get(used.get(i));
+            for (int j = 0; j < shardStatus.size(); j++) {
+                status[at.get(j)] = shardStatus.get(j).getAsString();
+            }
+        }
+        Map<String, Object> retval = new HashMap<>();
+        retval.put("accepted", accepted);
+        retval.put("status", status);
+        return Reply.json(retval);
+    }
+
+    /**
+     * Add an airport to every shard, and to the map once its owning shard has it. A shard that failed is asked
+     * again once; if it still fails the failure is returned, adding the airport again repairs the other shards.
+     */
+    private Reply addAirport(String iata, String latString, String longString, String target, String contentType,
+                             byte[] body) throws InterruptedException {
+        List<Reply> replies = fanOutRetrying(Method.POST, target, contentType, body);
+        try {
+            String code = iata.replaceAll("\"", "");
+            double latitude = Double.valueOf(latString);
+            double longitude = Double.valueOf(longString);
+            if (replies.get(shardMap.shardOf(code, latitude, longitude)).status == 200) {
+                shardMap.addAirport(code, latitude, longitude);
+            }
+        } catch (NumberFormatException e) {
+            // every shard rejected it
+        }
+        return firstFailure(replies);
+    }
+
+    /**
+     * Add the airports to every shard, and to the map the ones their owning shard accepted, as for a single
+     * airport.
+     */
+    private Reply addAirports(String target, String contentType, byte[] body) throws InterruptedException {
+        List<Reply> replies = fanOutRetrying(Method.POST, target, contentType, body);
+        JsonArray[] status = new JsonArray[replies.size()];
+        JsonArray anyStatus = null;
+        for (int shard = 0; shard < status.length; shard++) {
+            status[shard] = statusOf(replies.get(shard));
+            anyStatus = anyStatus == null ? status[shard] : anyStatus;
+        }
+        if (anyStatus != null) {
+            // the shards validate alike, a record is parsed only if some shard accepted it
+            JsonArray airports = new JsonParser().parse(new String(body, StandardCharsets.UTF_8)).getAsJsonArray();
+            for (int i = 0; i < airports.size(); i++) {
+                if (!acceptedBySome(status, i)) {
+                    continue;
+                }
+                JsonObject ad = airports.get(i).getAsJsonObject();
+                String iata = ad.get("iata").getAsString();
+                double latitude = ad.get("latitude").getAsDouble();
+                double longitude = ad.get("longitude").getAsDouble();
+                JsonArray ownerStatus = status[shardMap.shardOf(iata, latitude, longitude)];
+                if (ownerStatus != null && i < ownerStatus.size()
+                        && WeatherService.STATUS_OK.equals(ownerStatus.get(i).getAsString())) {
+                    shardMap.addAirport(iata, latitude, longitude);
+                }
+            }
+        }
+        return firstFailure(replies);
+    }
+
+    /** the per record status of a shard's reply to a batch, null if it has none */
+    private static JsonArray statusOf(Reply reply) {
+        try {
+            JsonElement parsed = new JsonParser().parse(new String(reply.body, StandardCharsets.UTF_8));
+            if (parsed.isJsonObject() && parsed.getAsJsonObject().has("status")) {
+                return parsed.getAsJsonObject().getAsJsonArray("status");
+            }
+        } catch (JsonParseException e) {
+            // a failure without a status
+        }
+        return null;
+    }
+
+    private static boolean acceptedBySome(JsonArray[] status, int record) {
+        for (JsonArray shardStatus : status) {
+            if (shardStatus != null && record < shardStatus.size()
+                    && WeatherService.STATUS_OK.equals(shardStatus.get(record).getAsString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send a request to every shard and send it once more to the shards that failed with a server error or could
+     * not be reached.
+     *
+     * @return the replies in the order of the shards
+     */
+    private List<Reply> fanOutRetrying(Method method, String target, String contentType, byte[] body)
+            throws InterruptedException {
+        List<Reply> replies = fanOut(allShards(), method, target, contentType, body);
+        for (int shard = 0; shard < replies.size(); shard++) {
+            if (replies.get(shard).status >= 500) {
+                LOGGER.log(Level.WARNING, "Shard " + shard + " failed " + target + ", retrying");
+                replies.set(shard, forward(shard, method, target, contentType, body));
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * @return a json dict with the summed data size and the response of each shard
+     */
+    private Reply perShard(String target) throws InterruptedException {
+        List<Reply> replies = fanOut(allShards(), Method.GET, target, null, null);
+        JsonArray byShard = new JsonArray();
+        long datasize = 0;
+        for (Reply reply : replies) {
+            if (reply.status != 200) {
+                return reply;
+            }
+            JsonElement parsed = new JsonParser().parse(new String(reply.body, StandardCharsets.UTF_8));
+            if (parsed.isJsonObject() && parsed.getAsJsonObject().has("datasize")) {
+                datasize += parsed.getAsJsonObject().get("datasize").getAsLong();
+            }
+            byShard.add(parsed);
+        }
+        JsonObject retval = new JsonObject();
+        retval.addProperty("datasize", datasize);
+        retval.add("shards", byShard);
+        return new Reply(200, JSON, retval.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int[] allShards() {
+        int[] all = new int[shards.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    private Reply forward(int shard, Method method, String target, String contentType, byte[] body)
+            throws InterruptedException {
+        return fanOut(new int[] { shard }, method, target, contentType, body).get(0);
+    }
+
+    /**
+     * Send a request to several shards at once.
+     *
+     * @return the replies in the order of the shards
+     */
+    private List<Reply> fanOut(int[] to, Method method, String target, String contentType, byte[] body)
+            throws InterruptedException {
+        List<Future<javax.ws.rs.core.Response>> futures = new ArrayList<>();
+        for (int shard : to) {
+            Invocation.Builder invocation = invocation(shard, target);
+            if (body == null || method == Method.GET) {
+                futures.add(invocation.async().method(method.getMethodString()));
+            } else {
+                futures.add(invocation.async().method(method.getMethodString(),
+                        Entity.entity(body, contentType == null ? "text/plain" : contentType)));
+            }
+        }
+        List<Reply> replies = new ArrayList<>();
+        for (Future<javax.ws.rs.core.Response> future : futures) {
+            replies.add(await(future));
+        }
+        return replies;
+    }
+
+    private Invocation.Builder invocation(int shard, String target) {
+        return client.target(URI.create(shards[shard] + target)).request();
+    }
+
+    /** the reply of a shard, 502 if the shard could not be reached */
+    private static Reply await(Future<javax.ws.rs.core.Response> future) throws InterruptedException {
+        try {
+            javax.ws.rs.core.Response response = future.get();
+            byte[] entity = response.hasEntity() ? response.readEntity(byte[].class) : new byte[0];
+            String type = response.getMediaType() == null ? null : response.getMediaType().toString();
+            return new Reply(response.getStatus(), type, entity);
+        } catch (ExecutionException | ProcessingException e) {
+            LOGGER.log(Level.WARNING, "Shard request failed", e);
+            return new Reply(502, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Reply firstFailure(List<Reply> replies) {
+        for (Reply reply : replies) {
+            if (reply.status != 200) {
+                return reply;
+            }
+        }
+        return replies.get(0);
+    }
+
+    private static int indexOf(byte[] body, char c, boolean fromStart) {
+        for (int i = 0; i < body.length; i++) {
+            int at = fromStart ? i : body.length - 1 - i;
+            if (body[at] == c) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,52 @@
+package com.crossover.trial.weather.store;
+
+/**
+ * Packs 3 letter IATA and 4 letter ICAO codes into a dense int range so they can index primitive arrays.
+ * IATA codes take [0, 26^3), ICAO codes follow in [26^3, 26^3 + 26^4).
+ */
+public final class AirportCodes {
+
+    /** number of distinct 3 letter codes */
+    public static final int IATA_CODES = 26 * 26 * 26;
+
+    /** size of the whole code space */
+    public static final int CODE_SPACE = IATA_CODES + 26 * 26 * 26 * 26;
+
+    private AirportCodes() {
+    }
+
+    /**
+     * @param code a 3 or 4 letter airport code
+     * @return the packed code or -1 if the code is not 3 or 4 upper case letters A-Z
+     */
+    public static int encode(CharSequence code) {
+        if (code == null || (code.length() != 3 && code.length() != 4)) {
+            return -1;
+        }
+        int packed = 0;
+        for (int i = 0; i < code.length(); i++) {
+            // codes are case sensitive everywhere else, folding would make "bos" and "BOS" share a slot
+            int letter = code.charAt(i) - 'A';
+            if (letter < 0 || letter >= 26) {
+                return -1;
+            }
+            packed = packed * 26 + letter;
+        }
+        return code.length() == 3 ? packed : IATA_CODES + packed;
+    }
+
+    /**
+     * @param packed a value returned by {@link #encode(CharSequence)}
+     * @return the upper case airport code
+     */
+    public static String decode(int packed) {
+        int length = packed < IATA_CODES ? 3 : 4;
+        int value = packed < IATA_CODES ? packed : packed - IATA_CODES;
+        char[] code = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            code[i] = (char) ('A' + value % 26);
+            value /= 26;
+        }
+        return new String(code);
+    }
+}
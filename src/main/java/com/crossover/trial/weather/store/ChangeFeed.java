@@ -0,0 +1,164 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.DataPointType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Numbered stream of the airport registrations and weather updates applied since the feed was opened, in the
+ * order they were applied, for replicas to follow. Records are encoded like those of the {@link WriteAheadLog}.
+ *
+ * When the server also keeps a {@link WriteAheadLog} the changes are published with their log sequence numbers, so
+ * a change has the same number in both.
+ *
+ * Only the most recent records are kept, a reader that falls further behind has to start over from a snapshot.
+ * Each feed has a random epoch, so a reader can tell its sequence numbers from those of an earlier run.
+ */
+public class ChangeFeed {
+
+    private final byte[][] records;
+
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** signalled when a record is published */
+    private final Condition published = lock.newCondition();
+
+    /** sequence number of the last published record, records are numbered from 1, guarded by lock */
+    private long lastSequence;
+
+    /**
+     * @param capacity the number of recent records kept for readers
+     */
+    public ChangeFeed(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity the number of recent records kept for readers
+     * @param lastSequence the sequence number the first record follows, the last one of the log
+     */
+    public ChangeFeed(int capacity, long lastSequence) {
+        this.records = new byte[capacity][];
+        this.lastSequence = lastSequence;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence number of the oldest record still kept
+     */
+    public long firstSequence() {
+        lock.lock();
+        try {
+            return Math.max(1, lastSequence - records.length + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void publishAirport(String iataCode, double latitude, double longitude) {
+        publishAirport(0, iataCode, latitude, longitude);
+    }
+
+    /**
+     * @param sequence the log sequence number of the change, the next after the last published one, or 0 to
+     * number it after the last published one
+     */
+    public void publishAirport(long sequence, String iataCode, double latitude, double longitude) {
+        byte[] iata = iataCode.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(WriteAheadLog.airportBytes(iata));
+        WriteAheadLog.putAirport(record, iata, latitude, longitude);
+        publish(sequence, record.array());
+    }
+
+    public void publishDataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                                 int second, int third, int count, long timestamp) {
+        publishDataPoint(0, iataCode, type, accepted, mean, first, second, third, count, timestamp);
+    }
+
+    /**
+     * @param sequence the log sequence number of the change, the next after the last published one, or 0 to
+     * number it after the last published one
+     */
+    public void publishDataPoint(long sequence, String iataCode, DataPointType type, boolean accepted, double mean,
+                                 int first, int second, int third, int count, long timestamp) {
+        byte[] iata = iataCode.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(WriteAheadLog.dataPointBytes(iata));
+        WriteAheadLog.putDataPoint(record, iata, type, accepted, mean, first, second, third, count, timestamp);
+        publish(sequence, record.array());
+    }
+
+    private void publish(long sequence, byte[] record) {
+        lock.lock();
+        try {
+            if (sequence != 0 && sequence != lastSequence + 1) {
+                throw new IllegalStateException("Change " + sequence + " published after " + lastSequence);
+            }
+            records[(int) (++lastSequence % records.length)] = record;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for records after a sequence number.
+     *
+     * @param after the sequence number of the last record the reader has
+     * @param max the number of records returned at most
+     * @param maxWaitMillis how long to wait if there is no newer record
+     * @return the records following the given one in order, empty if none was published in time, null if some
+     * of them are no longer kept
+     */
+    public List<byte[]> read(long after, int max, long maxWaitMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        lock.lock();
+        try {
+            while (lastSequence <= after) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0) {
+                    return new ArrayList<>();
+                }
+                published.awaitNanos(wait);
+            }
+            if (after + 1 < Math.max(1, lastSequence - records.length + 1)) {
+                return null;
+            }
+            int n = (int) Math.min(max, lastSequence - after);
+            List<byte[]> batch = new ArrayList<>(n);
+            for (long sequence = after + 1; sequence <= after + n; sequence++) {
+                batch.add(records[(int) (sequence % records.length)]);
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand a record read from a feed to the replayer.
+     */
+    public static void apply(byte[] record, WriteAheadLog.Replayer replayer) {
+        WriteAheadLog.apply(ByteBuffer.wrap(record), replayer);
+    }
+}
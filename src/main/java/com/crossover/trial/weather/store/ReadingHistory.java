@@ -0,0 +1,128 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.HistoricalDataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The last readings of one point type at one airport, in a ring buffer of primitive arrays with a fixed capacity.
+ * Once full, each reading overwrites the oldest one. Readings are kept in order of their collection time whatever
+ * order they arrive in.
+ *
+ * Writers take the write lock of a {@link StampedLock}. Range reads binary search the collection times and copy
+ * only the readings in the range, optimistically first and again under the read lock if a write interfered.
+ */
+public class ReadingHistory {
+
+    /** first, second, third and count of a data point */
+    private static final int STATS = 4;
+
+    /** bytes held per reading */
+    public static final int BYTES_PER_READING = 8 + 8 + STATS * 4;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final long[] times;
+
+    private final double[] means;
+
+    private final int[] stats;
+
+    /** readings written so far, the newest is at (written - 1) % capacity */
+    private long written;
+
+    public ReadingHistory(int capacity) {
+        times = new long[capacity];
+        means = new double[capacity];
+        stats = new int[capacity * STATS];
+    }
+
+    public void add(long timestamp, double mean, int first, int second, int third, int count) {
+        long stamp = lock.writeLock();
+        try {
+            int capacity = times.length;
+            long oldest = Math.max(0, written - capacity);
+            // a reading arriving out of order goes in at its collection time, keeping the times sorted for the
+            // search, and the newer readings move up by one
+            long insert = written;
+            while (insert > oldest && times[(int) ((insert - 1) % capacity)] > timestamp) {
+                insert--;
+            }
+            if (written >= capacity && insert == oldest) {
+                // older than every reading of a full history, it would be the one to drop
+                return;
+            }
+            for (long i = written; i > insert; i--) {
+                move((int) ((i - 1) % capacity), (int) (i % capacity));
+            }
+            int at = (int) (insert % capacity);
+            times[at] = timestamp;
+            means[at] = mean;
+            stats[at * STATS] = first;
+            stats[at * STATS + 1] = second;
+            stats[at * STATS + 2] = third;
+            stats[at * STATS + 3] = count;
+            written++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        means[to] = means[from];
+        System.arraycopy(stats, from * STATS, stats, to * STATS, STATS);
+    }
+
+    /**
+     * @param from the earliest collection time, inclusive
+     * @param to the latest collection time, inclusive
+     * @return the readings collected in the time range, oldest first
+     */
+    public List<HistoricalDataPoint> range(long from, long to) {
+        long stamp = lock.tryOptimisticRead();
+        List<HistoricalDataPoint> result = copyRange(from, to);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = copyRange(from, to);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    /** must stay in bounds on the inconsistent state an optimistic read may see */
+    private List<HistoricalDataPoint> copyRange(long from, long to) {
+        long newest = written;
+        long oldest = Math.max(0, newest - times.length);
+        long start = firstAfter(oldest, newest, from - 1);
+        long end = to == Long.MAX_VALUE ? newest : firstAfter(start, newest, to);
+        List<HistoricalDataPoint> result = new ArrayList<>((int) Math.max(0, Math.min(end - start, times.length)));
+        for (long i = start; i < end && result.size() < times.length; i++) {
+            int at = (int) (i % times.length);
+            DataPoint dp = new DataPoint.Builder().withMean(means[at]).withFirst(stats[at * STATS])
+                    .withMedian(stats[at * STATS + 1]).withLast(stats[at * STATS + 2])
+                    .withCount(stats[at * STATS + 3]).build();
+            result.add(new HistoricalDataPoint(times[at], dp));
+        }
+        return result;
+    }
+
+    /** the first reading in [low, high) collected after the given time, high if there is none */
+    private long firstAfter(long low, long high, long time) {
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (times[(int) (mid % times.length)] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,101 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The default store. Each airport holds an immutable {@link AtmosphericInformation} snapshot which is replaced by
+ * compare-and-set, so readers never block and writers only contend on the same airport.
+ */
+public class SnapshotWeatherStore implements WeatherStore {
+
+    private final Map<String, AtomicReference<AtmosphericInformation>> atmosphericInformation = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean accepts(String iataCode) {
+        return iataCode != null;
+    }
+
+    @Override
+    public long addAirport(String iataCode) {
+        AtomicReference<AtmosphericInformation> previous =
+                atmosphericInformation.put(iataCode, new AtomicReference<>(new AtmosphericInformation()));
+        return previous == null ? NO_READINGS : updateTimeOf(previous.get());
+    }
+
+    @Override
+    public AtmosphericInformation get(String iataCode) {
+        AtomicReference<AtmosphericInformation> ai = atmosphericInformation.get(iataCode);
+        return ai == null ? null : ai.get();
+    }
+
+    @Override
+    public double value(String iataCode, DataPointType type, DataPointField field) {
+        AtomicReference<AtmosphericInformation> ai = atmosphericInformation.get(iataCode);
+        DataPoint dp = ai == null ? null : ai.get().get(type);
+        return dp == null ? Double.NaN : field.of(dp);
+    }
+
+    @Override
+    public long update(String iataCode, DataPointType type, DataPoint dp, long timestamp) {
+        AtomicReference<AtmosphericInformation> ai = atmosphericInformation.get(iataCode);
+        if (ai == null) {
+            return UNKNOWN_AIRPORT;
+        }
+        AtmosphericInformation previous = ai.getAndUpdate(current -> {
+            if (isStale(current, type, dp, timestamp)) {
+                return current;
+            }
+            AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder(current)
+                    .withLastUpdateTime(current.hasNotNullField()
+                            ? Math.max(current.getLastUpdateTime(), timestamp) : timestamp);
+            if (dp != null) {
+                builder.with(type, dp, timestamp);
+            }
+            return builder.build();
+        });
+        return isStale(previous, type, dp, timestamp) ? STALE : updateTimeOf(previous);
+    }
+
+    private static boolean isStale(AtmosphericInformation current, DataPointType type, DataPoint dp, long timestamp) {
+        return dp != null && current.get(type) != null && timestamp < current.getUpdateTime(type);
+    }
+
+    @Override
+    public long update(String iataCode, DataPointType type, double mean, int first, int second, int third, int count,
+                       long timestamp) {
+        return update(iataCode, type, new DataPoint.Builder().withMean(mean).withFirst(first).withMedian(second)
+                .withLast(third).withCount(count).build(), timestamp);
+    }
+
+    @Override
+    public long put(String iataCode, AtmosphericInformation ai) {
+        AtomicReference<AtmosphericInformation> current = atmosphericInformation.get(iataCode);
+        return current == null ? UNKNOWN_AIRPORT : updateTimeOf(current.getAndSet(ai));
+    }
+
+    @Override
+    public long evict(String iataCode, long updatedBefore) {
+        AtomicReference<AtmosphericInformation> ai = atmosphericInformation.get(iataCode);
+        if (ai == null) {
+            return NO_READINGS;
+        }
+        return updateTimeOf(ai.updateAndGet(current -> current.hasNotNullField()
+                && current.getLastUpdateTime() <= updatedBefore ? new AtmosphericInformation() : current));
+    }
+
+    @Override
+    public void clear() {
+        atmosphericInformation.clear();
+    }
+
+    private static long updateTimeOf(AtmosphericInformation ai) {
+        return ai.hasNotNullField() ? ai.getLastUpdateTime() : NO_READINGS;
+    }
+}
@@ -0,0 +1,73 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.HistoricalDataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded reading history of every airport. Each airport keeps a {@link ReadingHistory} per point type, created
+ * on the first reading of that type, so an airport never holds more than
+ * capacity * {@link ReadingHistory#BYTES_PER_READING} bytes per point type however long the service runs.
+ */
+public class WeatherHistory {
+
+    private static final int TYPES = DataPointType.values().length;
+
+    private final int capacity;
+
+    private final Map<String, AtomicReferenceArray<ReadingHistory>> histories = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity readings kept per airport and point type, 0 disables the history
+     */
+    public WeatherHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Register an airport with an empty history, dropping the history of a previous registration.
+     */
+    public void addAirport(String iataCode) {
+        histories.put(iataCode, new AtomicReferenceArray<>(TYPES));
+    }
+
+    public void add(String iataCode, DataPointType type, long timestamp, double mean, int first, int second,
+                    int third, int count) {
+        if (capacity == 0) {
+            return;
+        }
+        AtomicReferenceArray<ReadingHistory> airport = histories.get(iataCode);
+        if (airport == null) {
+            return;
+        }
+        ReadingHistory history = airport.get(type.ordinal());
+        if (history == null) {
+            airport.compareAndSet(type.ordinal(), null, new ReadingHistory(capacity));
+            history = airport.get(type.ordinal());
+        }
+        history.add(timestamp, mean, first, second, third, count);
+    }
+
+    /**
+     * @return the readings of the airport and point type collected in the time range, both ends inclusive, or
+     * null if the airport is unknown
+     */
+    public List<HistoricalDataPoint> range(String iataCode, DataPointType type, long from, long to) {
+        AtomicReferenceArray<ReadingHistory> airport = histories.get(iataCode);
+        if (airport == null) {
+            return null;
+        }
+        ReadingHistory history = airport.get(type.ordinal());
+        // a mutable list, gson can not reflect on the JDK empty list from Java 9 on
+        return history == null ? new ArrayList<>() : history.range(from, to);
+    }
+
+    public void clear() {
+        histories.clear();
+    }
+}
@@ -0,0 +1,228 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point in time image of all airports and their current readings, restored on startup before the write-ahead log
+ * is replayed from the sequence number the snapshot covers.
+ *
+ * Snapshots are written while updates continue, airports are read one at a time. Every airport is at least as
+ * recent as the log sequence number in the header, so replaying the log records after it brings each airport to
+ * its latest state.
+ *
+ * File layout, big endian: magic, version, log sequence number and creation time, then per airport its code,
+ * latitude, longitude, last update time, a bit per point type present and 32 bytes per reading, its values and
+ * collection time, then the airport count and a CRC32 of everything before it. Version 1 snapshots left the count
+ * out of the CRC32, version 1 and 2 snapshots left out the collection time of the readings.
+ */
+public class WeatherSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(WeatherSnapshot.class.getName());
+
+    private static final int MAGIC = 0x57534e50;
+
+    private static final int VERSION = 3;
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+
+    /** airport count and CRC32 */
+    private static final int TRAILER_BYTES = 4 + 8;
+
+    private static final String PREFIX = "snapshot-";
+
+    private static final String SUFFIX = ".bin";
+
+    /** snapshots kept in the directory, older ones are deleted after a write */
+    private static final int KEEP = 2;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    /**
+     * Receives the airports of a restored snapshot.
+     */
+    public interface Restorer {
+
+        void airport(String iataCode, double latitude, double longitude, AtmosphericInformation ai);
+    }
+
+    /**
+     * Write a snapshot and delete all but the newest snapshots of the directory.
+     *
+     * @param directory the snapshot directory, created if missing
+     * @param sequence the last log sequence number applied before the first airport is read
+     * @param airports the airports to write
+     * @param readings the current readings of an airport
+     * @return the snapshot file
+     */
+    public static File write(File directory, long sequence, Collection<AirportData> airports,
+                             Function<String, AtmosphericInformation> readings) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create snapshot directory " + directory);
+        }
+        long created = System.currentTimeMillis();
+        File file = new File(directory, String.format("%s%020d%s", PREFIX, created, SUFFIX));
+        File tmp = new File(directory, file.getName() + ".tmp");
+
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeLong(created);
+            int count = 0;
+            for (AirportData ad : airports) {
+                AtmosphericInformation ai = readings.apply(ad.getIata());
+                if (ai == null) {
+                    continue;
+                }
+                byte[] iata = ad.getIata().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(iata.length);
+                out.write(iata);
+                out.writeDouble(ad.getLatitude());
+                out.writeDouble(ad.getLongitude());
+                out.writeLong(ai.getLastUpdateTime());
+                int present = 0;
+                for (DataPointType type : TYPES) {
+                    if (ai.get(type) != null) {
+                        present |= 1 << type.ordinal();
+                    }
+                }
+                out.writeByte(present);
+                for (DataPointType type : TYPES) {
+                    DataPoint dp = ai.get(type);
+                    if (dp != null) {
+                        out.writeDouble(dp.getMean());
+                        out.writeInt(dp.getFirst());
+                        out.writeInt(dp.getSecond());
+                        out.writeInt(dp.getThird());
+                        out.writeInt(dp.getCount());
+                        out.writeLong(ai.getUpdateTime(type));
+                    }
+                }
+                count++;
+            }
+            out.writeInt(count);
+            out.flush();
+            out.writeLong(crc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        File[] snapshots = snapshots(directory);
+        for (int i = 0; i < snapshots.length - KEEP; i++) {
+            if (!snapshots[i].delete()) {
+                LOGGER.warning("Could not delete old snapshot " + snapshots[i]);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Restore the newest intact snapshot of the directory.
+     *
+     * @param directory the snapshot directory
+     * @param restorer receives the airports and their readings
+     * @return the log sequence number the snapshot covers, 0 if there is no snapshot
+     */
+    public static long restore(File directory, Restorer restorer) throws IOException {
+        File[] snapshots = snapshots(directory);
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            try (FileChannel channel = FileChannel.open(snapshots[i].toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                // read once without restoring, a snapshot that does not parse must not leave airports behind
+                if (isIntact(buffer) && read(buffer.duplicate(), null) >= 0) {
+                    return read(buffer, restorer);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warning("Can not read snapshot " + snapshots[i] + ": " + e);
+            }
+            LOGGER.warning("Skipping damaged snapshot " + snapshots[i]);
+        }
+        return 0;
+    }
+
+    private static boolean isIntact(ByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC) {
+            return false;
+        }
+        int version = buffer.getInt(4);
+        if (version < 1 || version > VERSION) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        content.limit(version == 1 ? size - TRAILER_BYTES : size - 8);
+        crc.update(content);
+        return crc.getValue() == buffer.getLong(size - 8);
+    }
+
+    /**
+     * @param restorer receives the airports, null to only check that the snapshot parses
+     * @return the log sequence number the snapshot covers, -1 if the airports do not end at the trailer
+     */
+    private static long read(ByteBuffer buffer, Restorer restorer) {
+        boolean withUpdateTimes = buffer.getInt(4) >= 3;
+        buffer.position(8);
+        long sequence = buffer.getLong();
+        buffer.getLong();
+        int count = buffer.getInt(buffer.limit() - TRAILER_BYTES);
+        byte[] iata = new byte[16];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort();
+            if (iata.length < length) {
+                iata = new byte[length];
+            }
+            buffer.get(iata, 0, length);
+            String iataCode = new String(iata, 0, length, StandardCharsets.UTF_8);
+            double latitude = buffer.getDouble();
+            double longitude = buffer.getDouble();
+            AtmosphericInformation.Builder ai = new AtmosphericInformation.Builder().withLastUpdateTime(buffer.getLong());
+            int present = buffer.get();
+            for (DataPointType type : TYPES) {
+                if ((present & 1 << type.ordinal()) != 0) {
+                    DataPoint dp = new DataPoint.Builder().withMean(buffer.getDouble()).withFirst(buffer.getInt())
+                            .withMedian(buffer.getInt()).withLast(buffer.getInt()).withCount(buffer.getInt()).build();
+                    // older snapshots take the last update time for the collection time
+                    ai.with(type, dp, withUpdateTimes ? buffer.getLong() : 0);
+                }
+            }
+            if (restorer != null) {
+                restorer.airport(iataCode, latitude, longitude, ai.build());
+            }
+        }
+        return buffer.position() == buffer.limit() - TRAILER_BYTES ? sequence : -1;
+    }
+
+    private static File[] snapshots(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,94 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+
+/**
+ * Storage for the current atmospheric information of every known airport. Implementations must be safe for
+ * concurrent readers and writers.
+ */
+public interface WeatherStore {
+
+    /** returned by {@link #update} for an unknown airport */
+    long UNKNOWN_AIRPORT = -1;
+
+    /** returned in place of an update time for an airport without readings */
+    long NO_READINGS = 0;
+
+    /** returned by {@link #update} for a reading collected before the current reading of its point type */
+    long STALE = -2;
+
+    /**
+     * @param iataCode the airport code
+     * @return true if the store can hold the airport, checked before the airport is registered anywhere
+     */
+    boolean accepts(String iataCode);
+
+    /**
+     * Register an airport with no readings, dropping any readings a previous registration had.
+     *
+     * @param iataCode the airport code
+     * @return the update time of the dropped readings, {@link #NO_READINGS} if there were none
+     */
+    long addAirport(String iataCode);
+
+    /**
+     * @param iataCode the airport code
+     * @return the current readings of the airport or null if the airport is unknown
+     */
+    AtmosphericInformation get(String iataCode);
+
+    /**
+     * Read a single value of a reading without building its {@link DataPoint}.
+     *
+     * @param iataCode the airport code
+     * @param type the point type
+     * @param field the value of the reading
+     * @return the value or NaN if the airport is unknown or has no reading of the type
+     */
+    double value(String iataCode, DataPointType type, DataPointField field);
+
+    /**
+     * Record an update for an airport. A reading collected before the current reading of its point type is not
+     * stored, and the update time of an airport holding readings never moves backwards.
+     *
+     * @param iataCode the airport code
+     * @param type the point type being updated
+     * @param dp the new reading, or null if only the update time should be recorded
+     * @param timestamp the collection time in milliseconds since UTC epoch
+     * @return the previous update time if the airport held readings, {@link #NO_READINGS} if it held none,
+     * {@link #STALE} if the reading was not stored or {@link #UNKNOWN_AIRPORT}
+     */
+    long update(String iataCode, DataPointType type, DataPoint dp, long timestamp);
+
+    /**
+     * Record a reading given by its values, for callers that do not build a {@link DataPoint}.
+     *
+     * @return as {@link #update(String, DataPointType, DataPoint, long)}
+     */
+    long update(String iataCode, DataPointType type, double mean, int first, int second, int third, int count,
+                long timestamp);
+
+    /**
+     * Replace all readings of a registered airport, used to restore a snapshot.
+     *
+     * @param iataCode the airport code
+     * @param ai the readings and their update time
+     * @return as {@link #update(String, DataPointType, DataPoint, long)}
+     */
+    long put(String iataCode, AtmosphericInformation ai);
+
+    /**
+     * Drop the readings of an airport unless it was updated after the given time.
+     *
+     * @param iataCode the airport code
+     * @param updatedBefore readings last updated at or before this time are dropped
+     * @return the last update time if the airport still holds readings, {@link #NO_READINGS} otherwise
+     */
+    long evict(String iataCode, long updatedBefore);
+
+    /** remove all airports */
+    void clear();
+}
@@ -0,0 +1,486 @@
+package com.crossover.trial.weather.store;
+
+import com.crossover.trial.weather.data.DataPointType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of airport registrations and weather updates, replayed on startup to restore the in memory
+ * state.
+ *
+ * Changes are encoded into a shared buffer by the calling thread and written by a single flusher thread, which
+ * swaps the buffer and writes everything appended since its last write in one go (group commit). How long a caller
+ * waits depends on the {@link FsyncPolicy}. The log is a directory of segment files named after the sequence
+ * number of their first record, a new segment is started once the current one reaches the configured size.
+ *
+ * Each record is framed by its length and a CRC32 of its content. Replay stops at the first damaged frame of a
+ * segment, which is how a write torn by a crash shows up, and logging always continues in a fresh segment.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+
+    public enum FsyncPolicy {
+        /** acknowledge a change once it is forced to disk, changes arriving together share one fsync */
+        ALWAYS,
+        /** force the log at a fixed interval, a crash loses at most the changes of the last interval */
+        INTERVAL,
+        /** write without forcing, flushing to disk is left to the operating system */
+        NONE
+    }
+
+    /**
+     * Receives the logged changes on replay, in the order they were logged.
+     */
+    public interface Replayer {
+
+        void airport(String iataCode, double latitude, double longitude);
+
+        /**
+         * @param accepted false for a reading that was rejected as out of range and only recorded the update time
+         */
+        void dataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first, int second,
+                       int third, int count, long timestamp);
+    }
+
+    private static final String SEGMENT_PREFIX = "wal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte AIRPORT = 1;
+
+    private static final byte DATA_POINT = 2;
+
+    private static final byte REJECTED_DATA_POINT = 3;
+
+    /** payload length and CRC32 of the payload */
+    private static final int FRAME_HEADER = 8;
+
+    /** callers wait for the flusher once this much is waiting to be written */
+    private static final int MAX_PENDING_BYTES = 16 << 20;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private final File directory;
+
+    private final FsyncPolicy policy;
+
+    private final long fsyncMillis;
+
+    private final long segmentBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** signalled when records are appended or the log is closed */
+    private final Condition appended = lock.newCondition();
+
+    /** signalled when the flusher finished a write */
+    private final Condition flushed = lock.newCondition();
+
+    private final CRC32 crc = new CRC32();
+
+    /** records appended and not yet handed to the flusher, guarded by lock */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+    /** buffer the flusher writes from, swapped with pending */
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+
+    /** sequence number of the last appended record, guarded by lock */
+    private long lastAppended;
+
+    /** sequence number of the last record written, and forced with {@link FsyncPolicy#ALWAYS}, guarded by lock */
+    private long lastWritten;
+
+    /** the error that stopped the flusher, guarded by lock */
+    private IOException failure;
+
+    private boolean closed;
+
+    /** the open segment, only used by the flusher thread once it runs */
+    private FileChannel segment;
+
+    private final Thread flusher;
+
+    private WriteAheadLog(File directory, FsyncPolicy policy, long fsyncMillis, long segmentBytes, long lastSequence)
+            throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.fsyncMillis = fsyncMillis;
+        this.segmentBytes = segmentBytes;
+        this.lastAppended = lastSequence;
+        this.lastWritten = lastSequence;
+        this.segment = openSegment(lastSequence + 1);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Replay the log in the directory and open it for appending.
+     *
+     * @param directory the log directory, created if missing
+     * @param policy when appended records are forced to disk
+     * @param fsyncMillis the interval for {@link FsyncPolicy#INTERVAL}
+     * @param segmentBytes the size at which a new segment file is started
+     * @param afterSequence only records after this sequence number are replayed, 0 for all of them
+     * @param replayer receives every replayed change
+     * @return the open log
+     */
+    public static WriteAheadLog open(File directory, FsyncPolicy policy, long fsyncMillis, long segmentBytes,
+                                     long afterSequence, Replayer replayer) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create log directory " + directory);
+        }
+        long lastSequence = afterSequence;
+        File[] segments = segments(directory);
+        for (int i = 0; i < segments.length; i++) {
+            if (i + 1 < segments.length && firstSequence(segments[i + 1]) - 1 <= afterSequence) {
+                // every record of the segment is older than the restored state
+                continue;
+            }
+            lastSequence = Math.max(lastSequence, replay(segments[i], afterSequence, replayer));
+        }
+        return new WriteAheadLog(directory, policy, fsyncMillis, segmentBytes, lastSequence);
+    }
+
+    /**
+     * Delete the segments that only hold records up to the given sequence number, once a snapshot covers them.
+     * The segment being written is kept.
+     */
+    public void deleteSegmentsThrough(long sequence) {
+        File[] segments = segments(directory);
+        for (int i = 0; i + 1 < segments.length; i++) {
+            if (firstSequence(segments[i + 1]) - 1 <= sequence && !segments[i].delete()) {
+                LOGGER.warning("Could not delete log segment " + segments[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the sequence number of the last record appended, records are numbered from 1
+     */
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastAppended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logAirport(String iataCode, double latitude, double longitude) throws IOException {
+        sync(appendAirport(iataCode, latitude, longitude));
+    }
+
+    public void logDataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                             int second, int third, int count, long timestamp) throws IOException {
+        sync(appendDataPoint(iataCode, type, accepted, mean, first, second, third, count, timestamp));
+    }
+
+    /**
+     * Append an airport record without waiting for it to be written, see {@link #sync(long)}.
+     *
+     * @return the sequence number of the record
+     */
+    public long appendAirport(String iataCode, double latitude, double longitude) throws IOException {
+        byte[] iata = iataCode.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            int frame = beginFrame(airportBytes(iata));
+            putAirport(pending, iata, latitude, longitude);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append a data point record without waiting for it to be written, see {@link #sync(long)}.
+     *
+     * @return the sequence number of the record
+     */
+    public long appendDataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                                int second, int third, int count, long timestamp) throws IOException {
+        byte[] iata = iataCode.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            int frame = beginFrame(dataPointBytes(iata));
+            putDataPoint(pending, iata, type, accepted, mean, first, second, third, count, timestamp);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait as long as the fsync policy requires for an appended record.
+     *
+     * @param sequence the sequence number returned when the record was appended
+     */
+    public void sync(long sequence) throws IOException {
+        lock.lock();
+        try {
+            await(sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write everything appended so far and stop the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** size of an airport record with the given encoded code */
+    static int airportBytes(byte[] iata) {
+        return 1 + 2 + iata.length + 16;
+    }
+
+    static void putAirport(ByteBuffer buffer, byte[] iata, double latitude, double longitude) {
+        buffer.put(AIRPORT).putShort((short) iata.length).put(iata).putDouble(latitude).putDouble(longitude);
+    }
+
+    /** size of a data point record with the given encoded code */
+    static int dataPointBytes(byte[] iata) {
+        return 1 + 2 + iata.length + 1 + 8 + 8 + 16;
+    }
+
+    static void putDataPoint(ByteBuffer buffer, byte[] iata, DataPointType type, boolean accepted, double mean,
+                             int first, int second, int third, int count, long timestamp) {
+        buffer.put(accepted ? DATA_POINT : REJECTED_DATA_POINT).putShort((short) iata.length).put(iata)
+                .put((byte) type.ordinal()).putLong(timestamp).putDouble(mean)
+                .putInt(first).putInt(second).putInt(third).putInt(count);
+    }
+
+    /** reserves room for a record with the given payload size and returns the start of its frame */
+    private int beginFrame(int payloadBytes) throws IOException {
+        checkOpen();
+        while (pending.position() > MAX_PENDING_BYTES) {
+            flushed.awaitUninterruptibly();
+            checkOpen();
+        }
+        if (pending.remaining() < FRAME_HEADER + payloadBytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + FRAME_HEADER + payloadBytes));
+            pending.flip();
+            pending = larger.put(pending);
+        }
+        int frame = pending.position();
+        pending.position(frame + FRAME_HEADER);
+        return frame;
+    }
+
+    /** fills in the frame header and returns the sequence number of the record */
+    private long endFrame(int frame) {
+        int payloadBytes = pending.position() - frame - FRAME_HEADER;
+        crc.reset();
+        crc.update(pending.array(), frame + FRAME_HEADER, payloadBytes);
+        pending.putInt(frame, payloadBytes).putInt(frame + 4, (int) crc.getValue());
+        if (frame == 0) {
+            // first record since the last swap, the flusher may be idle
+            appended.signal();
+        }
+        return ++lastAppended;
+    }
+
+    /** waits as long as the fsync policy requires for the record, must hold the lock */
+    private void await(long sequence) throws IOException {
+        if (policy != FsyncPolicy.ALWAYS) {
+            return;
+        }
+        // the flusher writes everything appended before it stops, only a failure ends the wait early
+        while (lastWritten < sequence) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed", failure);
+            }
+            flushed.awaitUninterruptibly();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log failed", failure);
+        }
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+    }
+
+    private void flushLoop() {
+        long lastForce = System.currentTimeMillis();
+        boolean unforced = false;
+        lock.lock();
+        try {
+            while (true) {
+                if (pending.position() == 0) {
+                    if (closed) {
+                        break;
+                    }
+                    if (policy == FsyncPolicy.INTERVAL && unforced) {
+                        long wait = lastForce + fsyncMillis - System.currentTimeMillis();
+                        if (wait > 0) {
+                            appended.await(wait, TimeUnit.MILLISECONDS);
+                            continue;
+                        }
+                    } else {
+                        appended.await();
+                        continue;
+                    }
+                }
+
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                long upTo = lastAppended;
+                boolean force = policy == FsyncPolicy.ALWAYS || policy == FsyncPolicy.INTERVAL
+                        && System.currentTimeMillis() - lastForce >= fsyncMillis;
+                lock.unlock();
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining()) {
+                        segment.write(batch);
+                    }
+                    batch.clear();
+                    if (force) {
+                        segment.force(false);
+                        lastForce = System.currentTimeMillis();
+                    }
+                    unforced = !force;
+                    if (segment.position() >= segmentBytes) {
+                        segment.force(false);
+                        segment.close();
+                        segment = openSegment(upTo + 1);
+                    }
+                } finally {
+                    lock.lock();
+                }
+                lastWritten = upTo;
+                flushed.signalAll();
+            }
+            if (policy != FsyncPolicy.NONE) {
+                segment.force(false);
+            }
+            segment.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Write-ahead log failed, changes are no longer logged", e);
+            failure = e;
+            flushed.signalAll();
+        } catch (InterruptedException e) {
+            failure = new IOException("Write-ahead log flusher interrupted", e);
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        // a segment of that name holds no valid record, or replay would have continued past its first sequence
+        return FileChannel.open(new File(directory, segmentName(firstSequence)).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long firstSequence(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /** @return the sequence number of the last valid record of the segment */
+    private static long replay(File file, long afterSequence, Replayer replayer) throws IOException {
+        long sequence = firstSequence(file) - 1;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] payload = new byte[256];
+            int frame = 0;
+            while (buffer.remaining() >= FRAME_HEADER) {
+                frame = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                buffer.get(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (++sequence > afterSequence) {
+                    apply(ByteBuffer.wrap(payload, 0, length), replayer);
+                }
+                frame = buffer.position();
+            }
+            if (frame < buffer.limit()) {
+                LOGGER.warning(String.format("Ignoring %d damaged bytes at the end of %s", buffer.limit() - frame, file));
+            }
+        }
+        return sequence;
+    }
+
+    /** decodes one record payload and hands it to the replayer */
+    static void apply(ByteBuffer record, Replayer replayer) {
+        byte kind = record.get();
+        byte[] iata = new byte[record.getShort()];
+        record.get(iata);
+        String iataCode = new String(iata, StandardCharsets.UTF_8);
+        if (kind == AIRPORT) {
+            replayer.airport(iataCode, record.getDouble(), record.getDouble());
+        } else {
+            DataPointType type = TYPES[record.get()];
+            long timestamp = record.getLong();
+            replayer.dataPoint(iataCode, type, kind == DATA_POINT, record.getDouble(), record.getInt(),
+                    record.getInt(), record.getInt(), record.getInt(), timestamp);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.geo.AirportGrid;
+import com.crossover.trial.weather.geo.GeoMath;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AirportGridTest {
+
+    private AirportGrid grid;
+
+    private List<AirportData> airports;
+
+    @Before
+    public void setUp() throws Exception {
+        grid = new AirportGrid();
+        airports = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            add("A" + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+        // a cluster around the antimeridian and one near the north pole
+        for (int i = 0; i < 200; i++) {
+            add("M" + i, random.nextDouble() * 10 - 5, 175 + random.nextDouble() * 10 - (i % 2 == 0 ? 0 : 360));
+            add("P" + i, 85 + random.nextDouble() * 5, random.nextDouble() * 360 - 180);
+        }
+    }
+
+    @Test
+    public void testMatchesFullScan() throws Exception {
+        double[][] queries = {{0, 0}, {40.6, -73.7}, {0, 179.9}, {2, -179.5}, {89.5, 10}, {-89, -120}, {60, 30}};
+        double[] radii = {10, 200, 1000, 5000, 25000};
+        for (double[] q : queries) {
+            for (double radius : radii) {
+                assertEquals("lat=" + q[0] + " lon=" + q[1] + " radius=" + radius,
+                        fullScan(q[0], q[1], radius), gridQuery(q[0], q[1], radius));
+            }
+        }
+    }
+
+    @Test
+    public void testZeroRadiusFindsAirport() throws Exception {
+        // the cosine pre-filter must not lose an airport to rounding
+        for (AirportData ad : airports) {
+            assertTrue(ad.getIata(), gridQuery(ad.getLatitude(), ad.getLongitude(), 0).contains(ad.getIata()));
+        }
+    }
+
+    @Test
+    public void testBoxMatchesFullScan() throws Exception {
+        double[][] boxes = {{-10, -10, 10, 10}, {30, -80, 45, -70}, {-5, 170, 5, -170}, {-5, 179.5, 5, 179},
+                {80, -180, 90, 180}, {-90, 0, 90, 0.5}, {0, 175, 0, 175}, {-3, -180, 3, -179}};
+        for (double[] box : boxes) {
+            Set<String> found = new TreeSet<>();
+            grid.forEachInBox(box[0], box[1], box[2], box[3], ad -> found.add(ad.getIata()));
+            Set<String> expected = new TreeSet<>();
+            for (AirportData ad : airports) {
+                double lon = ad.getLongitude();
+                boolean inLongitude = box[1] <= box[3]
+                        ? lon >= box[1] && lon <= box[3] : lon >= box[1] || lon <= box[3];
+                if (ad.getLatitude() >= box[0] && ad.getLatitude() <= box[2] && inLongitude) {
+                    expected.add(ad.getIata());
+                }
+            }
+            assertEquals(Arrays.toString(box), expected, found);
+        }
+    }
+
+    @Test
+    public void testNearestMatchesFullScan() throws Exception {
+        double[][] queries = {{0, 0}, {40.6, -73.7}, {0, 179.9}, {2, -179.5}, {89.5, 10}, {-89, -120}, {60, 30}};
+        for (double[] q : queries) {
+            for (int k : new int[] {1, 5, 50}) {
+                assertEquals("lat=" + q[0] + " lon=" + q[1] + " k=" + k,
+                        fullScanNearest(q[0], q[1], k, "A"), gridNearest(q[0], q[1], k, "A"));
+                // the pole cluster is far from most query points, so the search has to spread
+                assertEquals("lat=" + q[0] + " lon=" + q[1] + " k=" + k + " P",
+                        fullScanNearest(q[0], q[1], k, "P"), gridNearest(q[0], q[1], k, "P"));
+            }
+        }
+        assertEquals(200, grid.nearest(0, 0, 1000, ad -> ad.getIata().startsWith("M")).size());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        AirportData ad = airports.get(0);
+        grid.remove(ad);
+        assertEquals(false, gridQuery(ad.getLatitude(), ad.getLongitude(), 1).contains(ad.getIata()));
+    }
+
+    private void add(String iata, double latitude, double longitude) {
+        AirportData ad = new AirportData();
+        ad.setIata(iata);
+        ad.setLatitude(latitude);
+        ad.setLongitude(longitude);
+        airports.add(ad);
+        grid.add(ad);
+    }
+
+    private Set<String> gridQuery(double latitude, double longitude, double radius) {
+        Set<String> found = new TreeSet<>();
+        grid.forEachWithin(latitude, longitude, radius, ad -> found.add(ad.getIata()));
+        return found;
+    }
+
+    private List<String> gridNearest(double latitude, double longitude, int k, String prefix) {
+        List<String> found = new ArrayList<>();
+        for (AirportGrid.Neighbor neighbor : grid.nearest(latitude, longitude, k,
+                ad -> ad.getIata().startsWith(prefix))) {
+            found.add(neighbor.getAirport().getIata());
+        }
+        return found;
+    }
+
+    private List<String> fullScanNearest(double latitude, double longitude, int k, String prefix) {
+        List<AirportData> sorted = new ArrayList<>();
+        for (AirportData ad : airports) {
+            if (ad.getIata().startsWith(prefix)) {
+                sorted.add(ad);
+            }
+        }
+        sorted.sort(Comparator.comparingDouble(
+                ad -> GeoMath.distance(latitude, longitude, ad.getLatitude(), ad.getLongitude())));
+        List<String> found = new ArrayList<>();
+        for (AirportData ad : sorted.subList(0, Math.min(k, sorted.size()))) {
+            found.add(ad.getIata());
+        }
+        return found;
+    }
+
+    private Set<String> fullScan(double latitude, double longitude, double radius) {
+        Set<String> found = new TreeSet<>();
+        for (AirportData ad : airports) {
+            if (GeoMath.distance(latitude, longitude, ad.getLatitude(), ad.getLongitude()) <= radius) {
+                found.add(ad.getIata());
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,57 @@
+package com.crossover.trial.weather;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AirportLoaderTest {
+
+    @Test
+    public void testCsvReader() throws Exception {
+        CsvReader reader = new CsvReader(new StringReader(
+                "1,\"General Edward Lawrence Logan Intl\",\"Boston, MA\",\"BOS\",42.36\r\n"
+                        + "2,\"Say \"\"Hi\"\"\",\"two\nlines\",,\n"
+                        + "3,last"));
+        assertArrayEquals(new String[]{"1", "General Edward Lawrence Logan Intl", "Boston, MA", "BOS", "42.36"},
+                reader.readRecord());
+        assertArrayEquals(new String[]{"2", "Say \"Hi\"", "two\nlines", "", ""}, reader.readRecord());
+        assertArrayEquals(new String[]{"3", "last"}, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void testProgressResumesAfterFirstGap() throws Exception {
+        File file = File.createTempFile("progress", ".txt");
+        file.delete();
+        try {
+            AirportLoader.LoadProgress progress = new AirportLoader.LoadProgress(file);
+            assertEquals(0, progress.committedRows());
+            // batches finish out of order, rows after a gap are not committed yet
+            progress.committed(100, 200, 100);
+            assertEquals(0, progress.committedRows());
+            assertTrue(!file.exists());
+            progress.committed(0, 100, 100);
+            assertEquals(200, progress.committedRows());
+            progress.committed(300, 400, 100);
+            assertEquals(200, progress.committedRows());
+
+            AirportLoader.LoadProgress resumed = new AirportLoader.LoadProgress(file);
+            assertEquals(200, resumed.committedRows());
+
+            // nothing advances once a batch failed, a rerun starts at the failed batch
+            resumed.fail();
+            resumed.committed(200, 300, 100);
+            assertEquals(200, resumed.committedRows());
+            assertEquals("200", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+        } finally {
+            file.delete();
+        }
+    }
+}
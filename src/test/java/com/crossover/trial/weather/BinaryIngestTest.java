@@ -0,0 +1,129 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.HistoricalDataPoint;
+import com.crossover.trial.weather.ingest.BinaryIngestListener;
+import com.crossover.trial.weather.ingest.IngestFrame;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.WeatherService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BinaryIngestTest {
+
+    private WeatherService weatherService = WeatherService.getInstance();
+
+    private BinaryIngestListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        weatherService.clear();
+        AirportService.getInstance().init();
+        InetSocketAddress any = new InetSocketAddress("localhost", 0);
+        listener = new BinaryIngestListener(weatherService, any, any);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        listener.close();
+    }
+
+    @Test
+    public void testTcpFrames() throws Exception {
+        ByteBuffer frames = ByteBuffer.allocate(3 * IngestFrame.BYTES);
+        IngestFrame.put(frames, "BOS", DataPointType.WIND, 22, 10, 20, 30, 10, 0);
+        IngestFrame.put(frames, "JFK", DataPointType.TEMPERATURE, 18.5, 10, 18, 25, 4, 0);
+        // out of range for humidity
+        IngestFrame.put(frames, "BOS", DataPointType.HUMIDTY, 150, 1, 2, 3, 4, 0);
+        frames.flip();
+        try (SocketChannel channel = SocketChannel.open(listener.getTcpAddress())) {
+            // a frame split across reads is decoded once it is complete
+            frames.limit(IngestFrame.BYTES + 5);
+            channel.write(frames);
+            Thread.sleep(50);
+            frames.limit(frames.capacity());
+            channel.write(frames);
+            awaitFrames(3);
+        }
+
+        AtmosphericInformation bos = weatherService.getAtmosphericInformation("BOS");
+        assertEquals(22, bos.getWind().getMean(), 0.0);
+        assertEquals(30, bos.getWind().getThird());
+        assertNull(bos.getHumidity());
+        assertEquals(18.5, weatherService.getAtmosphericInformation("JFK").getTemperature().getMean(), 0.0);
+        Map<String, Long> stats = listener.getStats();
+        assertEquals(2L, (long) stats.get("accepted"));
+        assertEquals(1L, (long) stats.get("rejected"));
+    }
+
+    @Test
+    public void testUdpFrames() throws Exception {
+        ByteBuffer frames = ByteBuffer.allocate(2 * IngestFrame.BYTES + 1);
+        IngestFrame.put(frames, "BOS", DataPointType.PRESSURE, 700, 650, 700, 750, 3, 0);
+        IngestFrame.put(frames, "XXXX", DataPointType.PRESSURE, 700, 650, 700, 750, 3, 0);
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            frames.flip();
+            channel.send(frames, listener.getUdpAddress());
+            // not a whole number of frames
+            frames.limit(frames.capacity()).position(0);
+            channel.send(frames, listener.getUdpAddress());
+            awaitFrames(4);
+        }
+
+        assertEquals(700, weatherService.getAtmosphericInformation("BOS").getPressure().getMean(), 0.0);
+        Map<String, Long> stats = listener.getStats();
+        assertEquals(1L, (long) stats.get("accepted"));
+        assertEquals(2L, (long) stats.get("failed"));
+    }
+
+    @Test
+    public void testLateFramesOnlyGoToTheHistory() throws Exception {
+        long now = System.currentTimeMillis();
+        ByteBuffer frames = ByteBuffer.allocate(4 * IngestFrame.BYTES);
+        IngestFrame.put(frames, "BOS", DataPointType.WIND, 10, 1, 2, 3, 4, now - 1000);
+        IngestFrame.put(frames, "BOS", DataPointType.WIND, 30, 1, 2, 3, 4, now - 500);
+        // collected before the current wind reading but arriving after it
+        IngestFrame.put(frames, "BOS", DataPointType.WIND, 20, 1, 2, 3, 4, now - 5000);
+        // the first reading of its type is current whenever it was collected
+        IngestFrame.put(frames, "BOS", DataPointType.TEMPERATURE, 15, 1, 2, 3, 4, now - 2000);
+        frames.flip();
+        try (SocketChannel channel = SocketChannel.open(listener.getTcpAddress())) {
+            channel.write(frames);
+            awaitFrames(4);
+        }
+
+        AtmosphericInformation bos = weatherService.getAtmosphericInformation("BOS");
+        assertEquals(30, bos.getWind().getMean(), 0.0);
+        assertEquals(15, bos.getTemperature().getMean(), 0.0);
+        assertEquals(now - 500, bos.getLastUpdateTime());
+        List<HistoricalDataPoint> history = weatherService.getHistory("BOS", "wind", 0, Long.MAX_VALUE);
+        assertEquals(3, history.size());
+        assertEquals(now - 5000, history.get(0).getTime());
+        assertEquals(20, history.get(0).getDataPoint().getMean(), 0.0);
+        assertEquals(now - 1000, history.get(1).getTime());
+        assertEquals(now - 500, history.get(2).getTime());
+        assertEquals(1, weatherService.getHistory("BOS", "wind", now - 5000, now - 5000).size());
+    }
+
+    private void awaitFrames(long frames) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            Map<String, Long> stats = listener.getStats();
+            if (stats.get("accepted") + stats.get("rejected") + stats.get("failed") >= frames) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
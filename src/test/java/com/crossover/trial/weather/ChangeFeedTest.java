@@ -0,0 +1,80 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.store.ChangeFeed;
+import com.crossover.trial.weather.store.WriteAheadLog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        ChangeFeed feed = new ChangeFeed(16);
+        feed.publishAirport("BOS", 42.36, -71.0);
+        feed.publishDataPoint("BOS", DataPointType.WIND, true, 5.5, 1, 2, 3, 10, 1000L);
+        feed.publishDataPoint("BOS", DataPointType.PRESSURE, false, 2.0, 0, 0, 0, 1, 2000L);
+        assertEquals(3, feed.lastSequence());
+
+        assertEquals(Arrays.asList("airport BOS 42.36 -71.0", "BOS WIND true 5.5 1 2 3 10 1000",
+                "BOS PRESSURE false 2.0 0 0 0 1 2000"), replay(feed.read(0, 10, 0)));
+        assertEquals(Arrays.asList("BOS PRESSURE false 2.0 0 0 0 1 2000"), replay(feed.read(2, 10, 0)));
+        assertEquals(1, feed.read(0, 1, 0).size());
+        assertTrue(feed.read(3, 10, 0).isEmpty());
+    }
+
+    @Test
+    public void testReaderBehindTheKeptRecords() throws Exception {
+        ChangeFeed feed = new ChangeFeed(4);
+        for (int i = 1; i <= 10; i++) {
+            feed.publishDataPoint("BOS", DataPointType.WIND, true, i, 0, 0, 0, 1, i);
+        }
+        assertEquals(7, feed.firstSequence());
+        assertNull(feed.read(5, 10, 0));
+        assertEquals(Arrays.asList("BOS WIND true 7.0 0 0 0 1 7", "BOS WIND true 8.0 0 0 0 1 8",
+                "BOS WIND true 9.0 0 0 0 1 9", "BOS WIND true 10.0 0 0 0 1 10"), replay(feed.read(6, 10, 0)));
+    }
+
+    @Test
+    public void testReadWaitsForRecords() throws Exception {
+        ChangeFeed feed = new ChangeFeed(4);
+        Thread publisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            feed.publishAirport("JFK", 40.64, -73.78);
+        });
+        publisher.start();
+        assertEquals(Arrays.asList("airport JFK 40.64 -73.78"), replay(feed.read(0, 10, 5000)));
+        publisher.join();
+    }
+
+    private static List<String> replay(List<byte[]> records) {
+        List<String> replayed = new ArrayList<>();
+        for (byte[] record : records) {
+            ChangeFeed.apply(record, new WriteAheadLog.Replayer() {
+                @Override
+                public void airport(String iataCode, double latitude, double longitude) {
+                    replayed.add("airport " + iataCode + " " + latitude + " " + longitude);
+                }
+
+                @Override
+                public void dataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                                      int second, int third, int count, long timestamp) {
+                    replayed.add(iataCode + " " + type + " " + accepted + " " + mean + " " + first + " " + second
+                            + " " + third + " " + count + " " + timestamp);
+                }
+            });
+        }
+        return replayed;
+    }
+}
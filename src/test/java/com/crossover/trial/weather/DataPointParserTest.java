@@ -0,0 +1,100 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointParser;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.SnapshotWeatherStore;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class DataPointParserTest {
+
+    private Gson gson = new Gson();
+
+    private DataPointParser parser = new DataPointParser();
+
+    @Test
+    public void testParse() throws Exception {
+        DataPoint dp = new DataPoint.Builder()
+                .withFirst(10).withMedian(20).withMean(22.1).withLast(30).withCount(10).build();
+        assertTrue(parser.parse(gson.toJson(dp)));
+        assertEquals(dp, parser.toDataPoint());
+
+        String[] samples = {
+                "{}",
+                " { \"count\" : 5 , \"mean\" : -1.5e2 } ",
+                "{\"first\":\"7\",\"mean\":0.1,\"extra\":{\"a\":[1,\"}\",null]},\"second\":null,\"third\":3.0}",
+                "{\"mean\":1234567890.123456789,\"count\":2147483647}",
+                "{\"mean\":4.9E-324}",
+        };
+        for (String sample : samples) {
+            assertTrue(sample, parser.parse(sample));
+            assertEquals(sample, gson.fromJson(sample, DataPoint.class), parser.toDataPoint());
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        String[] samples = {null, "", "{", "[]", "{\"mean\":}", "{\"mean\":1,}", "{\"mean\":1}x", "{\"count\":1.5}",
+                "{\"count\":3000000000}", "{\"mean\":\"1}", "{\"mean\":1 \"count\":2}", "{\"extra\":]}"};
+        for (String sample : samples) {
+            assertFalse(sample, parser.parse(sample));
+        }
+    }
+
+    @Test
+    public void testPointTypeLookup() throws Exception {
+        assertEquals(DataPointType.WIND, DataPointType.lookup("wind"));
+        assertEquals(DataPointType.HUMIDTY, DataPointType.lookup("HumidTY"));
+        assertNull(DataPointType.lookup("windy"));
+        assertNull(DataPointType.lookup(null));
+    }
+
+    /**
+     * The single point path from the json text through {@link WeatherService} must not allocate beyond what the
+     * store itself needs for a reading, measured with the per thread allocation counter of HotSpot. The default
+     * snapshot store copies the readings of the airport on every update, the packed store needs nothing.
+     */
+    @Test
+    public void testIngestionDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        WeatherService weatherService = WeatherService.getInstance();
+        weatherService.clear();
+        AirportService.getInstance().init();
+        SnapshotWeatherStore store = new SnapshotWeatherStore();
+        store.addAirport("MMU");
+        String json = "{\"mean\":22.1,\"first\":10,\"second\":20,\"third\":30,\"count\":10}";
+
+        int iterations = 100000;
+        // increasing like the arrival times the service uses, an older reading would not be stored
+        long time = 0;
+        for (int round = 0; round < 3; round++) {
+            ingest(weatherService, json, iterations);
+            for (int i = 0; i < iterations; i++) {
+                store.update("MMU", DataPointType.TEMPERATURE, 22.1, 10, 20, 30, 10, time++);
+            }
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            store.update("MMU", DataPointType.TEMPERATURE, 22.1, 10, 20, 30, 10, time++);
+        }
+        long storeBytes = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        ingest(weatherService, json, iterations);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - storeBytes;
+        assertTrue(allocated + " bytes beyond the store for " + iterations + " points", allocated < iterations);
+    }
+
+    private void ingest(WeatherService weatherService, String json, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            assertTrue(weatherService.addDataPoint("MMU", "temperature", json));
+        }
+    }
+}
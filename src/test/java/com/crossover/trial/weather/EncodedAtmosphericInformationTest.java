@@ -0,0 +1,36 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class EncodedAtmosphericInformationTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testMatchesJackson() throws Exception {
+        assertSameJson(new AtmosphericInformation());
+
+        double[] means = {22.5, -3.25, 0, 55, 1e-7, 123456789.125, 1e21, Double.MIN_VALUE, Double.NaN};
+        AtmosphericInformation.Builder builder = new AtmosphericInformation.Builder().withLastUpdateTime(1471345566123L);
+        for (int i = 0; i < means.length; i++) {
+            DataPoint dp = new DataPoint.Builder().withMean(means[i]).withFirst(-i).withMedian(Integer.MAX_VALUE)
+                    .withLast(Integer.MIN_VALUE).withCount(i).build();
+            builder.with(DataPointType.values()[i % DataPointType.values().length], dp);
+            assertSameJson(builder.build());
+        }
+    }
+
+    private void assertSameJson(AtmosphericInformation ai) throws Exception {
+        assertEquals(mapper.writeValueAsString(ai),
+                new String(EncodedAtmosphericInformation.encode(ai), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,68 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.service.FreshnessTracker;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FreshnessTrackerTest {
+
+    private static final long MINUTE = 60000;
+
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    @Test
+    public void testFreshCount() throws Exception {
+        FreshnessTracker tracker = new FreshnessTracker(DAY, MINUTE);
+        long start = 1000 * DAY;
+        tracker.touch("BOS", 0, start, start);
+        tracker.touch("JFK", 0, start + 10 * MINUTE, start + 10 * MINUTE);
+        // a second update moves the airport, it is not counted twice
+        tracker.touch("BOS", start, start + 20 * MINUTE, start + 20 * MINUTE);
+        assertEquals(2, tracker.freshCount(start + 20 * MINUTE));
+
+        assertEquals(2, tracker.freshCount(start + DAY + 5 * MINUTE));
+        assertEquals(1, tracker.freshCount(start + DAY + 15 * MINUTE));
+        assertEquals(0, tracker.freshCount(start + DAY + 25 * MINUTE));
+
+        tracker.forget(start + 20 * MINUTE);
+        assertEquals(1, tracker.freshCount(start + 20 * MINUTE));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        FreshnessTracker tracker = new FreshnessTracker(DAY, MINUTE);
+        long start = 1000 * DAY;
+        Map<String, Long> lastUpdate = new HashMap<>();
+        lastUpdate.put("BOS", start);
+        lastUpdate.put("JFK", start);
+        tracker.touch("BOS", 0, start, start);
+        tracker.touch("JFK", 0, start, start);
+        lastUpdate.put("JFK", start + 30 * MINUTE);
+        tracker.touch("JFK", start, start + 30 * MINUTE, start + 30 * MINUTE);
+
+        long now = start + DAY + 10 * MINUTE;
+        tracker.expire(now, iata -> {
+            long time = lastUpdate.get(iata);
+            if (time <= now - DAY) {
+                lastUpdate.put(iata, 0L);
+                return 0;
+            }
+            return time;
+        });
+        assertEquals(0L, (long) lastUpdate.get("BOS"));
+        assertEquals(start + 30 * MINUTE, (long) lastUpdate.get("JFK"));
+
+        // JFK was re-queued at its latest update and is evicted once that ages out
+        long later = start + DAY + 40 * MINUTE;
+        tracker.expire(later, iata -> {
+            lastUpdate.put(iata, 0L);
+            return 0;
+        });
+        assertEquals(0L, (long) lastUpdate.get("JFK"));
+        assertEquals(0, tracker.freshCount(later));
+    }
+}
@@ -0,0 +1,81 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.metrics.LatencyHistogram;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        int threads = 4;
+        int perThread = 25000;
+        long[] values = new long[threads * perThread];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal latencies from a few microseconds to seconds
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 7);
+        }
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int from = t * perThread;
+            writers[t] = new Thread(() -> {
+                for (int i = from; i < from + perThread; i++) {
+                    histogram.record(values[i]);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Arrays.sort(values);
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[]{0, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+            long estimate = snapshot.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, exact, estimate, exact / 32.0 + 1);
+        }
+    }
+
+    @Test
+    public void testThreadsSharingShardsLoseNoCounts() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // far more threads than shards, each retires after a burst as pool workers do
+        Thread[] writers = new Thread[256];
+        for (int t = 0; t < writers.length; t++) {
+            long value = t + 1;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    histogram.record(value);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(256 * 2000, snapshot.getCount());
+        assertEquals(256, snapshot.getMax());
+        assertEquals(128.5, snapshot.getMean(), 1e-9);
+    }
+
+    @Test
+    public void testLargeValuesAreClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.snapshot().getMax());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,142 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointField;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.store.AirportCodes;
+import com.crossover.trial.weather.store.PackedWeatherStore;
+import com.crossover.trial.weather.store.SnapshotWeatherStore;
+import com.crossover.trial.weather.store.WeatherStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PackedWeatherStoreTest {
+
+    private PackedWeatherStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new PackedWeatherStore();
+        store.addAirport("BOS");
+        store.addAirport("KJFK");
+    }
+
+    @Test
+    public void testAirportCodes() throws Exception {
+        assertEquals(0, AirportCodes.encode("AAA"));
+        assertEquals(AirportCodes.IATA_CODES - 1, AirportCodes.encode("ZZZ"));
+        assertEquals(AirportCodes.CODE_SPACE - 1, AirportCodes.encode("ZZZZ"));
+        assertEquals(-1, AirportCodes.encode("1A3"));
+        assertEquals(-1, AirportCodes.encode(""));
+        assertEquals(-1, AirportCodes.encode("bos"));
+        assertEquals("BOS", AirportCodes.decode(AirportCodes.encode("BOS")));
+        assertEquals("KJFK", AirportCodes.decode(AirportCodes.encode("KJFK")));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataPoint dp = new DataPoint.Builder()
+                .withFirst(10).withMedian(20).withMean(22.5).withLast(30).withCount(7).build();
+        for (DataPointType type : DataPointType.values()) {
+            store.update("KJFK", type, dp, 1000L + type.ordinal());
+        }
+        AtmosphericInformation ai = store.get("KJFK");
+        for (DataPointType type : DataPointType.values()) {
+            assertEquals(dp, ai.get(type));
+        }
+        assertEquals(22.5, ai.getWind().getMean(), 0.0);
+        assertEquals(1000L + DataPointType.values().length - 1, ai.getLastUpdateTime());
+        assertFalse(store.get("BOS").hasNotNullField());
+        for (DataPointField field : DataPointField.values()) {
+            assertEquals(field.of(dp), store.value("KJFK", DataPointType.HUMIDTY, field), 0.0);
+        }
+        assertTrue(Double.isNaN(store.value("BOS", DataPointType.WIND, DataPointField.MEAN)));
+
+        assertEquals(1000L + DataPointType.values().length - 1, store.evict("KJFK", 999L));
+        assertTrue(store.get("KJFK").hasNotNullField());
+        assertEquals(WeatherStore.NO_READINGS, store.evict("KJFK", 2000L));
+        assertFalse(store.get("KJFK").hasNotNullField());
+        store.update("KJFK", DataPointType.WIND, dp, 3000L);
+
+        // re-registration drops the readings
+        store.addAirport("KJFK");
+        assertFalse(store.get("KJFK").hasNotNullField());
+    }
+
+    @Test
+    public void testStaleReadingsAreNotCurrent() throws Exception {
+        DataPoint first = new DataPoint.Builder().withMean(1).build();
+        DataPoint late = new DataPoint.Builder().withMean(2).build();
+        for (WeatherStore store : new WeatherStore[]{this.store, new SnapshotWeatherStore()}) {
+            store.addAirport("BOS");
+            assertEquals(WeatherStore.NO_READINGS, store.update("BOS", DataPointType.WIND, first, 2000L));
+            assertEquals(2000L, store.update("BOS", DataPointType.HUMIDTY, first, 3000L));
+            assertEquals(WeatherStore.STALE, store.update("BOS", DataPointType.WIND, late, 1000L));
+            // a rejected reading and one of another type do not move the update time back either
+            assertEquals(3000L, store.update("BOS", DataPointType.WIND, null, 500L));
+            assertEquals(3000L, store.update("BOS", DataPointType.PRESSURE, late, 1500L));
+
+            AtmosphericInformation ai = store.get("BOS");
+            assertEquals(1, ai.getWind().getMean(), 0.0);
+            assertEquals(2, ai.getPressure().getMean(), 0.0);
+            assertEquals(3000L, ai.getLastUpdateTime());
+            assertEquals(2000L, ai.getUpdateTime(DataPointType.WIND));
+            assertEquals(1500L, ai.getUpdateTime(DataPointType.PRESSURE));
+            assertEquals(0L, ai.getUpdateTime(DataPointType.TEMPERATURE));
+
+            // a reading collected at the same time replaces the current one
+            assertEquals(3000L, store.update("BOS", DataPointType.WIND, late, 2000L));
+            assertEquals(2, store.get("BOS").getWind().getMean(), 0.0);
+        }
+    }
+
+    @Test
+    public void testUnknownAirport() throws Exception {
+        assertNull(store.get("LGA"));
+        assertEquals(WeatherStore.UNKNOWN_AIRPORT, store.update("LGA", DataPointType.WIND, null, 1L));
+        assertNull(store.get("1A3"));
+        assertNull(store.get("bos"));
+        assertFalse(store.accepts("bos"));
+        assertTrue(store.accepts("LGA"));
+    }
+
+    @Test
+    public void testFootprint() throws Exception {
+        for (int code = 0; code < 1000; code++) {
+            store.addAirport(AirportCodes.decode(code));
+        }
+        // one chunk of slots on top of the fixed code table
+        assertEquals(4L * AirportCodes.CODE_SPACE + 1024L * PackedWeatherStore.BYTES_PER_SLOT, store.footprintBytes());
+    }
+
+    @Test
+    public void testReadsAreNeverTorn() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200000; i++) {
+                DataPoint dp = new DataPoint.Builder()
+                        .withFirst(i).withMedian(i).withMean(i).withLast(i).withCount(i).build();
+                store.update("BOS", DataPointType.TEMPERATURE, dp, i);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            AtmosphericInformation ai = store.get("BOS");
+            DataPoint dp = ai.getTemperature();
+            if (dp != null) {
+                assertEquals(ai.getLastUpdateTime(), dp.getFirst());
+                assertEquals(dp.getFirst(), dp.getSecond());
+                assertEquals(dp.getFirst(), dp.getThird());
+                assertEquals(dp.getFirst(), dp.getCount());
+                assertEquals(dp.getFirst(), dp.getMean(), 0.0);
+            }
+        }
+        writer.join();
+    }
+}
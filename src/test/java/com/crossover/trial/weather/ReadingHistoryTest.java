@@ -0,0 +1,63 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.HistoricalDataPoint;
+import com.crossover.trial.weather.store.ReadingHistory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadingHistoryTest {
+
+    @Test
+    public void testRangeAfterWrapAround() throws Exception {
+        ReadingHistory history = new ReadingHistory(8);
+        for (int i = 1; i <= 20; i++) {
+            history.add(i * 10L, i, i, i, i, i);
+        }
+        // only the last 8 readings, times 130 to 200, are kept
+        List<HistoricalDataPoint> all = history.range(0, Long.MAX_VALUE);
+        assertEquals(8, all.size());
+        assertEquals(130L, all.get(0).getTime());
+        assertEquals(200L, all.get(7).getTime());
+        assertEquals(20, all.get(7).getDataPoint().getCount());
+
+        List<HistoricalDataPoint> range = history.range(145, 170);
+        assertEquals(3, range.size());
+        assertEquals(150L, range.get(0).getTime());
+        assertEquals(17.0, range.get(2).getDataPoint().getMean(), 0.0);
+
+        assertEquals(0, history.range(0, 120).size());
+        assertEquals(0, history.range(201, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testReadingsOutOfOrder() throws Exception {
+        ReadingHistory history = new ReadingHistory(4);
+        history.add(100, 1, 1, 1, 1, 1);
+        history.add(300, 3, 3, 3, 3, 3);
+        // late readings go in at their collection time, after the readings collected at the same time
+        history.add(200, 2, 2, 2, 2, 2);
+        history.add(100, 4, 4, 4, 4, 4);
+        List<HistoricalDataPoint> all = history.range(0, Long.MAX_VALUE);
+        assertEquals(4, all.size());
+        long[] times = {100, 100, 200, 300};
+        double[] means = {1, 4, 2, 3};
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], all.get(i).getTime());
+            assertEquals(means[i], all.get(i).getDataPoint().getMean(), 0.0);
+        }
+        assertEquals(2, history.range(100, 100).size());
+
+        // once full the oldest is dropped, a reading older than all of them is not kept
+        history.add(150, 5, 5, 5, 5, 5);
+        history.add(50, 6, 6, 6, 6, 6);
+        all = history.range(0, Long.MAX_VALUE);
+        assertEquals(4, all.size());
+        assertEquals(100L, all.get(0).getTime());
+        assertEquals(4, all.get(0).getDataPoint().getCount());
+        assertEquals(150L, all.get(1).getTime());
+        assertEquals(300L, all.get(3).getTime());
+    }
+}
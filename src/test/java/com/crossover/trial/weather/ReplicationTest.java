@@ -0,0 +1,336 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.replication.Replication;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a leader and a follower server as separate processes on this host. The follower reaches the leader through
+ * a proxy the test can cut, to see it catch up after a disconnect.
+ */
+public class ReplicationTest {
+
+    /** changes the leader keeps for a follower that is behind */
+    private static final int BACKLOG = 16;
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private final List<Process> servers = new ArrayList<>();
+
+    private File output;
+
+    /** the port the leader takes changes from, the follower reaches it through {@link #proxy} */
+    private int replicationPort;
+
+    private Proxy proxy;
+
+    private Client client;
+
+    private String leader;
+
+    private String follower;
+
+    private WeatherClient leaderClient;
+
+    @Before
+    public void setUp() throws Exception {
+        output = File.createTempFile("replication", ".log");
+        client = ClientBuilder.newClient();
+        replicationPort = freePort();
+        proxy = new Proxy(replicationPort);
+        leader = "http://localhost:" + freePort();
+        follower = "http://localhost:" + freePort();
+        start(leader, "-D" + Replication.LISTEN_PROPERTY + "=localhost:" + replicationPort,
+                "-D" + Replication.BACKLOG_PROPERTY + "=" + BACKLOG);
+        start(follower, "-D" + Replication.FOLLOW_PROPERTY + "=localhost:" + proxy.getPort());
+        leaderClient = new WeatherClient(leader);
+
+        assertEquals(200, client.target(leader + "/collect/airport/BOS/42.36/-71.0").request()
+                .post(Entity.entity("", "application/json")).getStatus());
+        update(1);
+        JsonObject caughtUp = awaitFollower(stats -> applied(stats) == leaderSequence());
+        // a new follower starts from a snapshot
+        assertEquals(1, caughtUp.get("snapshots").getAsLong());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Process server : servers) {
+            server.destroy();
+            server.waitFor();
+        }
+        proxy.close();
+        client.close();
+        output.delete();
+    }
+
+    @Test
+    public void testCatchUpAfterDisconnect() throws Exception {
+        proxy.cut();
+        JsonObject disconnected = awaitFollower(stats -> !stats.get("connected").getAsBoolean());
+        update(2);
+        update(3);
+        update(4);
+        // the follower does not see the new changes, but shows for how long it has not been caught up
+        Thread.sleep(100);
+        JsonObject lagging = replication(follower);
+        assertFalse(lagging.get("connected").getAsBoolean());
+        assertTrue(lagging.get("lag_ms").getAsLong() >= 100);
+        assertEquals(applied(disconnected), applied(lagging));
+
+        proxy.resume();
+        JsonObject caughtUp = awaitFollower(stats -> stats.get("connected").getAsBoolean()
+                && applied(stats) == leaderSequence());
+        // continued from its sequence number, without a snapshot
+        assertEquals(1, caughtUp.get("snapshots").getAsLong());
+        assertEquals(applied(lagging) + 3, applied(caughtUp));
+        assertEquals(0, caughtUp.get("lag_records").getAsLong());
+        assertEquals(weather(leader), weather(follower));
+    }
+
+    @Test
+    public void testSnapshotAfterFallingBehind() throws Exception {
+        proxy.cut();
+        awaitFollower(stats -> !stats.get("connected").getAsBoolean());
+        for (int i = 0; i < 2 * BACKLOG; i++) {
+            update(10 + i);
+        }
+
+        proxy.resume();
+        JsonObject caughtUp = awaitFollower(stats -> stats.get("connected").getAsBoolean()
+                && applied(stats) == leaderSequence());
+        assertEquals(2, caughtUp.get("snapshots").getAsLong());
+        assertEquals(weather(leader), weather(follower));
+    }
+
+    @Test
+    public void testSnapshotAfterLeaderRestart() throws Exception {
+        addAirport("LGA");
+        update("LGA", 2);
+        awaitFollower(stats -> applied(stats) == leaderSequence());
+        assertEquals(airports(leader), airports(follower));
+
+        proxy.cut();
+        awaitFollower(stats -> !stats.get("connected").getAsBoolean());
+        Process previous = servers.remove(0);
+        previous.destroy();
+        previous.waitFor();
+        // the new leader has no log, it only knows BOS without readings and JFK
+        start(leader, "-D" + Replication.LISTEN_PROPERTY + "=localhost:" + replicationPort,
+                "-D" + Replication.BACKLOG_PROPERTY + "=" + BACKLOG);
+        addAirport("BOS");
+        addAirport("JFK");
+        update("JFK", 3);
+
+        proxy.resume();
+        JsonObject caughtUp = awaitFollower(stats -> stats.get("snapshots").getAsLong() == 2
+                && stats.get("connected").getAsBoolean() && applied(stats) == leaderSequence());
+        assertEquals(leaderSequence(), applied(caughtUp));
+        assertEquals(new HashSet<>(Arrays.asList("BOS", "JFK")), airports(follower));
+        assertEquals(weather(leader), weather(follower));
+        assertEquals(weather(leader, "JFK"), weather(follower, "JFK"));
+    }
+
+    private void start(String url, String... properties) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dweather.url=" + url + "/");
+        Collections.addAll(command, properties);
+        command.add(WeatherServer.class.getName());
+        servers.add(new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(output)).start());
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                if (client.target(url + "/query/ping").request().get().getStatus() == 200) {
+                    return;
+                }
+            } catch (ProcessingException e) {
+                // not listening yet
+            }
+            assertTrue(url + " did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    private void addAirport(String iata) {
+        assertEquals(200, client.target(leader + "/collect/airport/" + iata + "/40.7/-73.9").request()
+                .post(Entity.entity("", "application/json")).getStatus());
+    }
+
+    private void update(int mean) {
+        update("BOS", mean);
+    }
+
+    private void update(String iata, int mean) {
+        DataPoint dp = new DataPoint.Builder().withFirst(mean).withLast(mean).withMean(mean).withMedian(mean)
+                .withCount(1).build();
+        assertEquals(200, leaderClient.updateWeather(iata, "wind", dp));
+    }
+
+    private String weather(String url) {
+        return weather(url, "BOS");
+    }
+
+    private String weather(String url, String iata) {
+        return client.target(url + "/query/weather/" + iata + "/0").request().get(String.class);
+    }
+
+    private Set<String> airports(String url) {
+        Set<String> airports = new HashSet<>();
+        for (JsonElement iata : new JsonParser().parse(client.target(url + "/collect/airports").request()
+                .get(String.class)).getAsJsonArray()) {
+            airports.add(iata.getAsString());
+        }
+        return airports;
+    }
+
+    private JsonObject replication(String url) {
+        return new JsonParser().parse(client.target(url + "/query/ping").request().get(String.class))
+                .getAsJsonObject().getAsJsonObject("replication");
+    }
+
+    private long leaderSequence() {
+        return replication(leader).get("sequence").getAsLong();
+    }
+
+    private static long applied(JsonObject stats) {
+        return stats.get("applied").getAsLong();
+    }
+
+    /** the follower's replication stats on ping once they match */
+    private JsonObject awaitFollower(Predicate<JsonObject> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            JsonObject stats = replication(follower);
+            if (condition.test(stats)) {
+                return stats;
+            }
+            assertTrue("follower stuck at " + stats, System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /** forwards connections to a port until it is cut, then refuses them until it is resumed */
+    private static class Proxy implements Closeable {
+        private final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final int target;
+        private final List<Socket> open = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean blocked;
+
+        Proxy(int target) throws IOException {
+            this.target = target;
+            Thread acceptor = new Thread(this::accept, "replication-proxy");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        void cut() {
+            blocked = true;
+            synchronized (open) {
+                for (Socket socket : open) {
+                    closeQuietly(socket);
+                }
+                open.clear();
+            }
+        }
+
+        void resume() {
+            blocked = false;
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket in = server.accept();
+                    if (blocked) {
+                        in.close();
+                        continue;
+                    }
+                    Socket out = new Socket(InetAddress.getLoopbackAddress(), target);
+                    open.add(in);
+                    open.add(out);
+                    pipe(in, out);
+                    pipe(out, in);
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private static void pipe(Socket from, Socket to) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                } catch (IOException e) {
+                    // cut
+                } finally {
+                    closeQuietly(from);
+                    closeQuietly(to);
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private static void closeQuietly(Socket socket) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            cut();
+            server.close();
+        }
+    }
+}
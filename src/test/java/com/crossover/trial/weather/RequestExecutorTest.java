@@ -0,0 +1,47 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.endpoint.RequestExecutor;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestExecutorTest {
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+        for (boolean forkJoin : new boolean[]{false, true}) {
+            RequestExecutor executor = new RequestExecutor("test", forkJoin, 1, 1);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            Runnable slow = () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            };
+            assertTrue(executor.tryExecute(slow));
+            started.await();
+            assertTrue(executor.tryExecute(done::countDown));
+            assertFalse(executor.tryExecute(done::countDown));
+
+            Map<String, Long> stats = executor.getStats();
+            assertEquals(1, stats.get("active").longValue());
+            assertEquals(1, stats.get("queued").longValue());
+            assertEquals(1, stats.get("rejected").longValue());
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            executor.shutdown();
+        }
+    }
+}
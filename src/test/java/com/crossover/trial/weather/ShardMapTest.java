@@ -0,0 +1,52 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.shard.ShardMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardMapTest {
+
+    @Test
+    public void testGeoPartitionByLongitudeBand() throws Exception {
+        ShardMap map = new ShardMap(3, ShardMap.Partition.GEO);
+        assertEquals(0, map.shardOf("BOS", 42.36, -71.0));
+        assertEquals(1, map.shardOf("LHR", 51.47, -0.45));
+        assertEquals(2, map.shardOf("NRT", 35.76, 140.38));
+        assertEquals(0, map.shardOf("AAA", 0, -180));
+        assertEquals(2, map.shardOf("ZZZ", 0, 180));
+        assertEquals(-1, map.shardOf("BOS"));
+    }
+
+    @Test
+    public void testHashPartitionIsStable() throws Exception {
+        ShardMap map = new ShardMap(4, ShardMap.Partition.HASH);
+        int shard = map.shardOf("BOS", 42.36, -71.0);
+        assertTrue(shard >= 0 && shard < 4);
+        assertEquals(shard, map.shardOf("BOS", 0, 0));
+        map.addAirport("BOS", 42.36, -71.0);
+        assertEquals(shard, map.shardOf("BOS"));
+    }
+
+    @Test
+    public void testShardsWithinRadius() throws Exception {
+        ShardMap map = new ShardMap(3, ShardMap.Partition.GEO);
+        map.addAirport("XAA", 42, -59.5);
+        map.addAirport("XBB", 42, -60.5);
+        map.addAirport("BOS", 42.364347, -71.005181);
+        map.addAirport("LHR", 51.47, -0.45);
+
+        assertArrayEquals(new int[] { 1 }, map.shardsWithin("XAA", 10));
+        assertArrayEquals(new int[] { 0, 1 }, map.shardsWithin("XAA", 200));
+        assertArrayEquals(new int[] { 0 }, map.shardsWithin("BOS", 500));
+        assertArrayEquals(new int[] { 0, 1 }, map.shardsWithin("LHR", 20000));
+        assertArrayEquals(new int[0], map.shardsWithin("JFK", 200));
+
+        // a moved airport is only found at its new position
+        map.addAirport("XBB", 42, 100);
+        assertEquals(2, map.shardOf("XBB"));
+        assertArrayEquals(new int[] { 1 }, map.shardsWithin("XAA", 200));
+    }
+}
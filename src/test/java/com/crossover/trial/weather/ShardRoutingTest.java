@@ -0,0 +1,292 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.shard.ShardMap;
+import com.crossover.trial.weather.shard.ShardRoutingHttpHandler;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the router in front of three stub shards in this process. With the geo partition BOS, XBB and XCC belong to
+ * shard 0, XAA and XDD to shard 1 and NRT to shard 2.
+ */
+public class ShardRoutingTest {
+
+    /** distance of each airport from BOS, as every stub answers a nearest query */
+    private static final Map<String, Double> FROM_BOS = new HashMap<>();
+
+    static {
+        FROM_BOS.put("BOS", 0.0);
+        FROM_BOS.put("XBB", 950.0);
+        FROM_BOS.put("XAA", 1030.0);
+        FROM_BOS.put("NRT", 10800.0);
+    }
+
+    /** a shard answering from what it was sent, tagging every answer with its index */
+    private static class StubShard extends HttpHandler {
+        final int index;
+        final Set<String> airports = ConcurrentHashMap.newKeySet();
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        /** requests still to fail with a server error */
+        final AtomicInteger failures = new AtomicInteger();
+
+        StubShard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            String path = request.getRequestURI();
+            String body = new String(readBody(request.getInputStream()), StandardCharsets.UTF_8);
+            requests.add(request.getMethod().getMethodString() + " " + path);
+            String[] segments = path.substring(1).split("/");
+            if (failures.getAndDecrement() > 0) {
+                response.setStatus(500);
+                return;
+            }
+            failures.compareAndSet(-1, 0);
+
+            String reply;
+            if (path.startsWith("/collect/airport/")) {
+                airports.add(segments[2]);
+                reply = "";
+            } else if (path.equals("/collect/airports")) {
+                JsonArray status = new JsonArray();
+                for (JsonElement airport : new JsonParser().parse(body).getAsJsonArray()) {
+                    airports.add(airport.getAsJsonObject().get("iata").getAsString());
+                    status.add(WeatherService.STATUS_OK);
+                }
+                reply = batchReply(status);
+            } else if (path.equals("/collect/weather")) {
+                JsonArray status = new JsonArray();
+                for (JsonElement record : new JsonParser().parse(body).getAsJsonArray()) {
+                    status.add("s" + index + ":" + record.getAsJsonObject().get("iata").getAsString());
+                }
+                reply = batchReply(status);
+            } else if (path.startsWith("/query/weather/")) {
+                reply = "[{\"shard\":" + index + "}]";
+            } else if (path.startsWith("/query/nearest/")) {
+                JsonArray nearest = new JsonArray();
+                for (String iata : airports) {
+                    JsonObject airport = new JsonObject();
+                    airport.addProperty("iata", iata);
+                    JsonObject nearby = new JsonObject();
+                    nearby.add("airport", airport);
+                    nearby.addProperty("distance", FROM_BOS.get(iata));
+                    nearby.addProperty("shard", index);
+                    nearest.add(nearby);
+                }
+                reply = nearest.toString();
+            } else if (path.equals("/query/ping")) {
+                reply = "{\"datasize\":" + (index + 1) + ",\"shard\":" + index + "}";
+            } else {
+                response.setStatus(404);
+                return;
+            }
+            response.setContentType("application/json");
+            response.getWriter().write(reply);
+        }
+
+        private static String batchReply(JsonArray status) {
+            JsonObject reply = new JsonObject();
+            reply.addProperty("accepted", status.size());
+            reply.add("status", status);
+            return reply.toString();
+        }
+    }
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    private final StubShard[] shards = new StubShard[3];
+
+    private ShardMap shardMap;
+
+    private Client client;
+
+    private String router;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new StubShard(i);
+            urls.add(start(shards[i]));
+        }
+        shardMap = new ShardMap(shards.length, ShardMap.Partition.GEO);
+        router = start(new ShardRoutingHttpHandler(shardMap, urls));
+        client = ClientBuilder.newClient();
+
+        addAirport("BOS", 42.36, -71.0);
+        addAirport("XBB", 42, -60.5);
+        addAirport("XAA", 42, -59.5);
+        addAirport("NRT", 35.76, 140.38);
+        for (StubShard shard : shards) {
+            shard.requests.clear();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        for (HttpServer server : servers) {
+            server.shutdownNow();
+        }
+    }
+
+    private String start(HttpHandler handler) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        HttpServer server = HttpServer.createSimpleServer(null, "localhost", port);
+        server.getServerConfiguration().addHttpHandler(handler, "/");
+        server.start();
+        servers.add(server);
+        return "http://localhost:" + port;
+    }
+
+    private int addAirport(String iata, double latitude, double longitude) {
+        return client.target(router + "/collect/airport/" + iata + "/" + latitude + "/" + longitude).request()
+                .post(Entity.entity("", "application/json")).getStatus();
+    }
+
+    private JsonElement get(String path) {
+        return new JsonParser().parse(client.target(router + path).request().get(String.class));
+    }
+
+    @Test
+    public void testAirportsReachEveryShard() throws Exception {
+        for (StubShard shard : shards) {
+            assertEquals("[BOS, NRT, XAA, XBB]", new TreeSet<>(shard.airports).toString());
+        }
+        assertEquals(0, shardMap.shardOf("XBB"));
+        assertEquals(1, shardMap.shardOf("XAA"));
+        assertEquals(2, shardMap.shardOf("NRT"));
+    }
+
+    @Test
+    public void testBatchIsSplitByOwnerAndMergedInOrder() throws Exception {
+        String batch = "[{\"iata\":\"BOS\"},{\"iata\":\"XAA\"},{\"iata\":\"NRT\"},{\"iata\":\"XBB\"},"
+                + "{\"iata\":\"QQQ\"}]";
+        JsonObject reply = new JsonParser().parse(client.target(router + "/collect/weather").request()
+                .post(Entity.entity(batch, "application/json"), String.class)).getAsJsonObject();
+
+        assertEquals(5, reply.get("accepted").getAsInt());
+        assertEquals("[\"s0:BOS\",\"s1:XAA\",\"s2:NRT\",\"s0:XBB\",\"s0:QQQ\"]", reply.get("status").toString());
+        for (StubShard shard : shards) {
+            assertEquals(Arrays.asList("POST /collect/weather"), shard.requests);
+        }
+    }
+
+    @Test
+    public void testRadiusQueryMergesOwningShards() throws Exception {
+        assertEquals("[{\"shard\":0},{\"shard\":1}]", get("/query/weather/XAA/200").toString());
+        assertTrue(shards[2].requests.isEmpty());
+
+        assertEquals("[{\"shard\":2}]", get("/query/weather/NRT/0").toString());
+        assertEquals(1, shards[2].requests.size());
+        assertEquals(1, shards[0].requests.size());
+    }
+
+    @Test
+    public void testNearestKeepsTheOwnersAnswer() throws Exception {
+        JsonArray nearest = get("/query/nearest/BOS/3").getAsJsonArray();
+        assertEquals(3, nearest.size());
+        String[] expected = {"BOS", "XBB", "XAA"};
+        for (int i = 0; i < expected.length; i++) {
+            JsonObject nearby = nearest.get(i).getAsJsonObject();
+            String iata = nearby.getAsJsonObject("airport").get("iata").getAsString();
+            assertEquals(expected[i], iata);
+            assertEquals(shardMap.shardOf(iata), nearby.get("shard").getAsInt());
+        }
+    }
+
+    @Test
+    public void testPingReportsEveryShard() throws Exception {
+        JsonObject ping = get("/query/ping").getAsJsonObject();
+        assertEquals(1 + 2 + 3, ping.get("datasize").getAsLong());
+        JsonArray byShard = ping.getAsJsonArray("shards");
+        assertEquals(3, byShard.size());
+        for (int i = 0; i < byShard.size(); i++) {
+            assertEquals(i, byShard.get(i).getAsJsonObject().get("shard").getAsInt());
+        }
+    }
+
+    @Test
+    public void testPartialAirportFailure() throws Exception {
+        // a shard failing once is asked again
+        shards[2].failures.set(1);
+        assertEquals(200, addAirport("XEE", 10, 100));
+        assertEquals(2, shardMap.shardOf("XEE"));
+        assertTrue(shards[2].airports.contains("XEE"));
+
+        // the owner has it, so it is routed although another shard still misses it
+        shards[1].failures.set(2);
+        assertEquals(500, addAirport("XCC", 10, -100));
+        assertEquals(0, shardMap.shardOf("XCC"));
+        assertFalse(shards[1].airports.contains("XCC"));
+
+        // the owner does not have it, so it stays unknown to the router
+        shards[1].failures.set(2);
+        assertEquals(500, addAirport("XDD", 10, 0));
+        assertEquals(-1, shardMap.shardOf("XDD"));
+        assertTrue(shards[0].airports.contains("XDD"));
+
+        // adding it again repairs the shards that missed it
+        assertEquals(200, addAirport("XDD", 10, 0));
+        assertEquals(1, shardMap.shardOf("XDD"));
+    }
+
+    @Test
+    public void testPartialAirportBatchFailure() throws Exception {
+        shards[1].failures.set(2);
+        String batch = "[{\"iata\":\"XCC\",\"latitude\":10,\"longitude\":-100},"
+                + "{\"iata\":\"XDD\",\"latitude\":10,\"longitude\":0}]";
+        assertEquals(500, client.target(router + "/collect/airports").request()
+                .post(Entity.entity(batch, "application/json")).getStatus());
+        assertEquals(0, shardMap.shardOf("XCC"));
+        assertEquals(-1, shardMap.shardOf("XDD"));
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
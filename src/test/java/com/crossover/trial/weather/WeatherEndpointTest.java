@@ -2,21 +2,43 @@ package com.crossover.trial.weather;
 
 import com.crossover.trial.weather.data.AtmosphericInformation;
 import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.EncodedAtmosphericInformation;
 import com.crossover.trial.weather.endpoint.RestWeatherCollectorEndpoint;
 import com.crossover.trial.weather.endpoint.RestWeatherQueryEndpoint;
 import com.crossover.trial.weather.endpoint.WeatherCollectorEndpoint;
 import com.crossover.trial.weather.endpoint.WeatherQueryEndpoint;
+import com.crossover.trial.weather.metrics.RequestMetrics;
 import com.crossover.trial.weather.service.AirportService;
 import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.service.WeatherSubscriptions;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class WeatherEndpointTest {
 
@@ -70,6 +92,117 @@ public class WeatherEndpointTest {
         assertEquals(3, ais.size());
     }
 
+    @Test
+    public void testCoordinateQueries() throws Exception {
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        _update.updateWeather("EWR", "wind", _gson.toJson(_dp));
+
+        // a point in upper New York Bay, JFK is closer than EWR and LGA has no readings
+        JsonArray around = new JsonParser().parse((String) _query.weatherAround("40.65", "-74.05", "50")
+                .getEntity()).getAsJsonArray();
+        assertEquals(2, around.size());
+        assertEquals("EWR", around.get(0).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+        assertEquals("JFK", around.get(1).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+
+        JsonArray box = new JsonParser().parse((String) _query.weatherInBox("40", "-74", "43", "-70")
+                .getEntity()).getAsJsonArray();
+        assertEquals(2, box.size());
+        // crossing the antimeridian the box covers everything but the Americas
+        assertEquals("[]", _query.weatherInBox("40", "-60", "43", "-80").getEntity());
+        assertEquals(3, new JsonParser().parse((String) _query.weatherInBox("40", "-80", "43", "-170")
+                .getEntity()).getAsJsonArray().size());
+
+        assertEquals(400, _query.weatherAround("91", "0", "10").getStatus());
+        assertEquals(400, _query.weatherInBox("43", "-74", "40", "-70").getStatus());
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        _update.updateWeather("EWR", "wind", _gson.toJson(_dp));
+        _update.updateWeather("MMU", "wind", _gson.toJson(_dp));
+
+        JsonArray nearest = new JsonParser().parse((String) _query.nearest("JFK", "3", null).getEntity())
+                .getAsJsonArray();
+        assertEquals(3, nearest.size());
+        assertEquals("JFK", nearest.get(0).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+        assertEquals("LGA", nearest.get(1).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+        assertEquals("EWR", nearest.get(2).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+
+        // only airports reporting wind, BOS being farthest
+        nearest = new JsonParser().parse((String) _query.nearest("JFK", "5", "wind").getEntity()).getAsJsonArray();
+        assertEquals(3, nearest.size());
+        assertEquals("EWR", nearest.get(0).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+        assertEquals("BOS", nearest.get(2).getAsJsonObject().getAsJsonObject("airport").get("iata").getAsString());
+        assertEquals(22, nearest.get(2).getAsJsonObject().getAsJsonObject("weather").getAsJsonObject("wind")
+                .get("mean").getAsDouble(), 0);
+
+        assertEquals(400, _query.nearest("JFK", "0", null).getStatus());
+        assertEquals(400, _query.nearest("XXX", "3", null).getStatus());
+    }
+
+    @Test
+    public void testQueriesWhileAirportsAreAdded() throws Exception {
+        ExecutorService adder = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> adding = adder.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    airportDataService.addAirport("X" + (char) ('A' + i % 26) + (char) ('A' + i / 26 % 26),
+                            40.7, -74);
+                }
+            });
+            while (!adding.isDone()) {
+                assertEquals(200, _query.weather("JFK", "200").getStatus());
+                assertEquals(200, _query.nearest("JFK", "10", null).getStatus());
+            }
+            adding.get();
+        } finally {
+            adder.shutdown();
+        }
+
+        // airports still indexed whose readings are gone are left out rather than failing the query
+        weatherService.clear();
+        assertEquals(200, _query.weather("JFK", "0").getStatus());
+        assertEquals(0, weather("JFK", "200").size());
+        assertEquals(200, _query.nearest("JFK", "3", null).getStatus());
+        assertEquals("[]", _query.nearest("JFK", "3", null).getEntity());
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        _dp.setMean(40);
+        _update.updateWeather("EWR", "wind", _gson.toJson(_dp));
+        _dp.setMean(30);
+        _update.updateWeather("LGA", "wind", _gson.toJson(_dp));
+
+        JsonObject aggregate = new JsonParser().parse((String) _query.aggregate("JFK", "200", "wind", null,
+                Arrays.asList("50", "100")).getEntity()).getAsJsonObject();
+        assertEquals(3, aggregate.get("count").getAsInt());
+        assertEquals(92.0 / 3, aggregate.get("mean").getAsDouble(), 1e-9);
+        assertEquals(22, aggregate.get("min").getAsDouble(), 0);
+        assertEquals(40, aggregate.get("max").getAsDouble(), 0);
+        assertEquals(30, aggregate.getAsJsonObject("percentiles").get("p50").getAsDouble(), 0);
+        assertEquals(40, aggregate.getAsJsonObject("percentiles").get("p100").getAsDouble(), 0);
+
+        aggregate = new JsonParser().parse((String) _query.aggregate("JFK", "200", "humidty", "third", null)
+                .getEntity()).getAsJsonObject();
+        assertEquals(0, aggregate.get("count").getAsInt());
+        assertNull(aggregate.get("mean"));
+
+        assertEquals(400, _query.aggregate("JFK", "200", "snow", null, null).getStatus());
+        assertEquals(400, _query.aggregate("JFK", "200", "wind", null, Collections.singletonList("0")).getStatus());
+    }
+
+    @Test
+    public void testUpdateRejectsBadInput() throws Exception {
+        assertEquals(200, _update.updateWeather("JFK", "wind", _gson.toJson(_dp)).getStatus());
+        // out of range points are an accepted update that keeps the previous reading
+        assertEquals(200, _update.updateWeather("JFK", "humidty", "{\"mean\":150}").getStatus());
+        assertEquals(400, _update.updateWeather("JFK", "wind", "{\"mean\":").getStatus());
+        assertEquals(400, _update.updateWeather("JFK", "snow", _gson.toJson(_dp)).getStatus());
+        assertEquals(400, _update.updateWeather("XXX", "wind", _gson.toJson(_dp)).getStatus());
+    }
+
     @Test
     public void testUpdate() throws Exception {
 
@@ -91,4 +224,315 @@ public class WeatherEndpointTest {
         assertEquals(ais.get(0).getCloudCover(), cloudCoverDp);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        String[] types = {"wind", "temperature", "humidty", "pressure", "cloudcover", "precipitation"};
+        DataPoint dp = new DataPoint.Builder()
+                .withCount(10).withFirst(10).withMedian(20).withLast(30).withMean(22).build();
+        dp.setMean(700);
+        String pressureJson = _gson.toJson(dp);
+        dp.setMean(22);
+        String json = _gson.toJson(dp);
+
+        ExecutorService executor = Executors.newFixedThreadPool(types.length);
+        List<Future<?>> futures = new ArrayList<>();
+        for (String type : types) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    _update.updateWeather("JFK", type, type.equals("pressure") ? pressureJson : json);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // every type written by its own thread must survive the concurrent updates of the others
+        AtmosphericInformation ai = weather("JFK", "0").get(0);
+        assertEquals(dp, ai.getWind());
+        assertEquals(dp, ai.getTemperature());
+        assertEquals(dp, ai.getHumidity());
+        assertEquals(dp, ai.getCloudCover());
+        assertEquals(dp, ai.getPrecipitation());
+        assertEquals(700, ai.getPressure().getMean(), 0.0);
+    }
+
+    @Test
+    public void testAddAirports() throws Exception {
+        String airports = "[{\"iata\":\"LHR\",\"latitude\":51.4706,\"longitude\":-0.461941},"
+                + "{\"iata\":\"STN\",\"latitude\":51.885},"
+                + "{\"iata\":\"LTN\",\"latitude\":51.874722,\"longitude\":-0.368333}]";
+        Response response = _update.addAirports(new ByteArrayInputStream(airports.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, response.getStatus());
+        JsonObject result = new JsonParser().parse((String) response.getEntity()).getAsJsonObject();
+        assertEquals(2, result.get("accepted").getAsInt());
+        JsonArray status = result.get("status").getAsJsonArray();
+        assertEquals("OK", status.get(0).getAsString());
+        assertEquals("Missing iata, latitude or longitude", status.get(1).getAsString());
+        assertEquals("OK", status.get(2).getAsString());
+        assertEquals(51.874722, AirportService.getAirportData("LTN").getLatitude(), 0.0);
+        assertNull(AirportService.getAirportData("STN"));
+
+        // the airports before a malformed one are added and reported
+        airports = "[{\"iata\":\"STN\",\"latitude\":51.885,\"longitude\":0.235},{\"iata\"";
+        response = _update.addAirports(new ByteArrayInputStream(airports.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(400, response.getStatus());
+        result = new JsonParser().parse((String) response.getEntity()).getAsJsonObject();
+        assertEquals(1, result.get("status").getAsJsonArray().size());
+        assertEquals(0.235, AirportService.getAirportData("STN").getLongitude(), 0.0);
+    }
+
+    @Test
+    public void testBatchUpdate() throws Exception {
+        String batch = "[{\"iata\":\"JFK\",\"pointType\":\"wind\",\"datapoint\":" + _gson.toJson(_dp) + "},"
+                + "{\"iata\":\"EWR\",\"pointType\":\"PRESSURE\",\"datapoint\":" + _gson.toJson(_dp) + "},"
+                + "{\"iata\":\"XXX\",\"pointType\":\"wind\",\"datapoint\":" + _gson.toJson(_dp) + "},"
+                + "{\"iata\":\"LGA\",\"pointType\":\"cloudcover\",\"datapoint\":" + _gson.toJson(_dp) + "}]";
+        String response = (String) _update.updateWeatherBatch(
+                new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8))).getEntity();
+        JsonElement result = new JsonParser().parse(response);
+        assertEquals(2, result.getAsJsonObject().get("accepted").getAsInt());
+        assertEquals("OUT_OF_RANGE", result.getAsJsonObject().get("status").getAsJsonArray().get(1).getAsString());
+        assertEquals("Unknown airport XXX", result.getAsJsonObject().get("status").getAsJsonArray().get(2).getAsString());
+
+        List<AtmosphericInformation> ais = weather("LGA", "0");
+        assertEquals(_dp, ais.get(0).getCloudCover());
+        assertEquals(400, _update.updateWeatherBatch(
+                new ByteArrayInputStream("[{".getBytes(StandardCharsets.UTF_8))).getStatus());
+
+        // the records before a malformed one are applied and reported
+        batch = "[{\"iata\":\"MMU\",\"pointType\":\"wind\",\"datapoint\":" + _gson.toJson(_dp) + "},{\"iata\":";
+        Response partial = _update.updateWeatherBatch(
+                new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(400, partial.getStatus());
+        result = new JsonParser().parse((String) partial.getEntity());
+        assertEquals(1, result.getAsJsonObject().get("accepted").getAsInt());
+        assertEquals(1, result.getAsJsonObject().get("status").getAsJsonArray().size());
+        assertTrue(result.getAsJsonObject().has("error"));
+        assertEquals(_dp, weatherService.getAtmosphericInformation("MMU").getWind());
+    }
+
+    @Test
+    public void testRequestFrequency() throws Exception {
+        _query.weather("JFK", "200");
+        _query.weather("JFK", "5000");
+
+        JsonElement pingResult = new JsonParser().parse(_query.ping());
+        assertEquals(1.0 / 3, pingResult.getAsJsonObject().get("iata_freq").getAsJsonObject().get("BOS").getAsDouble(), 1e-9);
+        assertEquals(2.0 / 3, pingResult.getAsJsonObject().get("iata_freq").getAsJsonObject().get("JFK").getAsDouble(), 1e-9);
+        assertEquals(0.0, pingResult.getAsJsonObject().get("iata_freq").getAsJsonObject().get("EWR").getAsDouble(), 0.0);
+        JsonArray radiusFreq = pingResult.getAsJsonObject().get("radius_freq").getAsJsonArray();
+        assertEquals(AirportService.RADIUS_BUCKETS, radiusFreq.size());
+        assertEquals(1, radiusFreq.get(0).getAsInt());
+        assertEquals(1, radiusFreq.get(20).getAsInt());
+        assertEquals(1, radiusFreq.get(AirportService.RADIUS_BUCKETS - 1).getAsInt());
+    }
+
+    @Test
+    public void testHistory() throws Exception {
+        _dp.setMean(40);
+        _update.updateWeather("BOS", "wind", _gson.toJson(_dp));
+        // out of range, not part of the history
+        _dp.setMean(-1);
+        _update.updateWeather("BOS", "wind", _gson.toJson(_dp));
+
+        JsonArray history = new JsonParser().parse((String) _query.history("BOS", "WIND", null, null).getEntity())
+                .getAsJsonArray();
+        assertEquals(2, history.size());
+        assertEquals(22.0, history.get(0).getAsJsonObject().get("dataPoint").getAsJsonObject().get("mean").getAsDouble(), 0.0);
+        assertEquals(40.0, history.get(1).getAsJsonObject().get("dataPoint").getAsJsonObject().get("mean").getAsDouble(), 0.0);
+
+        long last = history.get(1).getAsJsonObject().get("time").getAsLong();
+        String future = String.valueOf(last + 1);
+        assertEquals("[]", _query.history("BOS", "wind", future, null).getEntity());
+        assertEquals("[]", _query.history("JFK", "wind", null, null).getEntity());
+        assertEquals(400, _query.history("XXX", "wind", null, null).getStatus());
+        assertEquals(400, _query.history("BOS", "fog", null, null).getStatus());
+    }
+
+    @Test
+    public void testQueryCache() throws Exception {
+        List<AtmosphericInformation> first = weather("JFK", "200");
+        assertSame(first, _query.weather("JFK", "200").getEntity());
+        assertEquals(0, first.size());
+
+        // EWR lies inside the circle, a new reading there invalidates the cached result
+        _update.updateWeather("EWR", "wind", _gson.toJson(_dp));
+        List<AtmosphericInformation> second = weather("JFK", "200");
+        assertNotSame(first, second);
+        assertEquals(1, second.size());
+
+        // so does a new airport
+        airportDataService.addAirport("TEB", 40.85, -74.06);
+        assertNotSame(second, _query.weather("JFK", "200").getEntity());
+
+        JsonObject cache = new JsonParser().parse(_query.ping()).getAsJsonObject().get("query_cache").getAsJsonObject();
+        assertEquals(1, cache.get("hits").getAsInt());
+        // the query in setUp and three for JFK
+        assertEquals(4, cache.get("misses").getAsInt());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        RequestMetrics metrics = RequestMetrics.getInstance();
+        metrics.clear();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record("GET", "/query/weather/BOS/" + i, 200, i * 1000000L);
+        }
+        metrics.record("POST", "/collect/weather/BOS/fog", 400, 50000);
+
+        JsonObject endpoints = new JsonParser().parse(_query.metrics()).getAsJsonObject().get("endpoints")
+                .getAsJsonObject();
+        JsonObject weather = endpoints.get("GET /query/weather").getAsJsonObject().get("200").getAsJsonObject();
+        assertEquals(100, weather.get("count").getAsInt());
+        assertEquals(50000, weather.get("p50_us").getAsDouble(), 50000 / 32.0);
+        assertEquals(100000, weather.get("max_us").getAsInt());
+        assertEquals(1, endpoints.get("POST /collect/weather").getAsJsonObject().get("400").getAsJsonObject()
+                .get("count").getAsInt());
+    }
+
+    @Test
+    public void testSubscription() throws Exception {
+        CountDownLatch firstEvent = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        WeatherSubscriptions.Subscription subscription = WeatherSubscriptions.getInstance().subscribe(
+                airportDataService.getAirportsWithin("JFK", 30), new WeatherSubscriptions.Sink() {
+                    @Override
+                    public boolean send(String iataCode, EncodedAtmosphericInformation readings) {
+                        DataPoint wind = readings.getAtmosphericInformation().getWind();
+                        events.add(iataCode + " " + (wind == null ? "-" : wind.getMean()));
+                        firstEvent.countDown();
+                        try {
+                            // a slow consumer
+                            release.await();
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean keepAlive() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+        try {
+            // JFK and LGA are within 30 km, BOS is not
+            assertTrue(firstEvent.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 10; i++) {
+                _update.updateWeather("JFK", "wind", _gson.toJson(new DataPoint.Builder().withMean(i).build()));
+                _update.updateWeather("BOS", "wind", _gson.toJson(new DataPoint.Builder().withMean(i).build()));
+            }
+            // out of range, not pushed
+            _update.updateWeather("LGA", "wind", _gson.toJson(new DataPoint.Builder().withMean(-1).build()));
+            release.countDown();
+
+            List<String> received = new ArrayList<>();
+            String event;
+            while ((event = events.poll(500, TimeUnit.MILLISECONDS)) != null) {
+                received.add(event);
+            }
+            // the current readings of both airports, the burst folded into at most one more event
+            assertTrue(received.toString(), received.size() <= 3);
+            assertTrue(received.contains("LGA -"));
+            assertEquals("JFK 10.0", received.get(received.size() - 1));
+        } finally {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Subscribers that stop reading hold a delivery thread until their write times out, then they are dropped and
+     * the write is interrupted.
+     */
+    @Test
+    public void testStalledSubscribersAreDropped() throws Exception {
+        int stalledCount = 6;
+        CountDownLatch unblock = new CountDownLatch(1);
+        CountDownLatch stalledClosed = new CountDownLatch(stalledCount);
+        List<WeatherSubscriptions.Subscription> stalled = new ArrayList<>();
+        WeatherSubscriptions subscriptions = WeatherSubscriptions.getInstance();
+        long dropped = subscriptions.getStats().get("dropped");
+        subscriptions.setWriteTimeout(500);
+        try {
+            // more stalled subscribers than delivery threads, each blocked until its write is interrupted
+            for (int i = 0; i < stalledCount; i++) {
+                stalled.add(subscriptions.subscribe(Collections.singleton("JFK"), new WeatherSubscriptions.Sink() {
+                    @Override
+                    public boolean send(String iataCode, EncodedAtmosphericInformation readings) {
+                        try {
+                            unblock.await();
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                        return false;
+                    }
+
+                    @Override
+                    public boolean keepAlive() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                        stalledClosed.countDown();
+                    }
+                }));
+            }
+            BlockingQueue<String> events = new LinkedBlockingQueue<>();
+            WeatherSubscriptions.Subscription reading = subscriptions.subscribe(Collections.singleton("JFK"),
+                    new WeatherSubscriptions.Sink() {
+                        @Override
+                        public boolean send(String iataCode, EncodedAtmosphericInformation readings) {
+                            DataPoint wind = readings.getAtmosphericInformation().getWind();
+                            events.add(iataCode + " " + (wind == null ? "-" : wind.getMean()));
+                            return true;
+                        }
+
+                        @Override
+                        public boolean keepAlive() {
+                            return true;
+                        }
+
+                        @Override
+                        public void close() {
+                        }
+                    });
+            try {
+                assertEquals("JFK -", events.poll(5, TimeUnit.SECONDS));
+                assertTrue(stalledClosed.await(5, TimeUnit.SECONDS));
+                assertEquals(dropped + stalledCount, (long) subscriptions.getStats().get("dropped"));
+
+                // the delivery threads are free again and changes start none of their own
+                for (int i = 0; i < 100; i++) {
+                    _update.updateWeather("JFK", "wind", _gson.toJson(new DataPoint.Builder().withMean(i).build()));
+                }
+                String last;
+                do {
+                    last = events.poll(500, TimeUnit.MILLISECONDS);
+                } while (last != null && !last.equals("JFK 99.0"));
+                assertEquals("JFK 99.0", last);
+                long deliveryThreads = Thread.getAllStackTraces().keySet().stream()
+                        .filter(thread -> thread.getName().matches("weather-subscriptions-\\d+")).count();
+                assertEquals((long) Integer.getInteger(WeatherSubscriptions.THREADS_PROPERTY, 4), deliveryThreads);
+            } finally {
+                reading.close();
+            }
+        } finally {
+            unblock.countDown();
+            stalled.forEach(WeatherSubscriptions.Subscription::close);
+            subscriptions.setWriteTimeout(10000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AtmosphericInformation> weather(String iata, String radius) {
+        return (List<AtmosphericInformation>) _query.weather(iata, radius).getEntity();
+    }
+}
@@ -0,0 +1,143 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.WeatherLoadGenerator.Operation;
+import com.crossover.trial.weather.data.DataPoint;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WeatherLoadGeneratorTest {
+
+    /** answers every request without a server, pings take the given time */
+    private static class FakeClient extends WeatherClient {
+        private final long pingMillis;
+
+        FakeClient(long pingMillis) {
+            super("http://localhost:1");
+            this.pingMillis = pingMillis;
+        }
+
+        @Override
+        public int updateWeather(String iata, String pointType, DataPoint dp) {
+            return 200;
+        }
+
+        @Override
+        public int weather(String iata, String radius) {
+            return 200;
+        }
+
+        @Override
+        public int ping() {
+            try {
+                Thread.sleep(pingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 200;
+        }
+    }
+
+    private static WeatherLoadGenerator generator(WeatherClient client, double rate, int connections,
+                                                  double duration, String mix) {
+        return new WeatherLoadGenerator(client, new String[]{"BOS", "JFK"}, rate, connections, 0, duration,
+                WeatherLoadGenerator.parseMix(mix), new String[]{"0", "200"});
+    }
+
+    @Test
+    public void testParseMix() throws Exception {
+        Map<Operation, Integer> mix = WeatherLoadGenerator.parseMix(" weather=75, Update = 20,ping=5");
+        assertEquals("[WEATHER, UPDATE, PING]", mix.keySet().toString());
+        assertEquals(75, (int) mix.get(Operation.WEATHER));
+        assertEquals(20, (int) mix.get(Operation.UPDATE));
+        assertEquals(5, (int) mix.get(Operation.PING));
+
+        for (String bad : new String[]{"weather", "weather=1=2", "query=5", "ping=many"}) {
+            try {
+                WeatherLoadGenerator.parseMix(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException expected) {
+                // NumberFormatException is an IllegalArgumentException as well
+            }
+        }
+    }
+
+    @Test
+    public void testPickFollowsWeights() throws Exception {
+        WeatherLoadGenerator generator = generator(new FakeClient(0), 1, 1, 0, "update=20,weather=0,ping=80");
+        Random random = new Random(11);
+        Map<Operation, Integer> picked = new EnumMap<>(Operation.class);
+        int draws = 100000;
+        for (int i = 0; i < draws; i++) {
+            picked.merge(generator.pick(random), 1, Integer::sum);
+        }
+        assertFalse(picked.containsKey(Operation.WEATHER));
+        assertEquals(0.2, picked.get(Operation.UPDATE) / (double) draws, 0.01);
+        assertEquals(0.8, picked.get(Operation.PING) / (double) draws, 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixWithoutWeightIsRejected() throws Exception {
+        generator(new FakeClient(0), 1, 1, 0, "update=0,ping=0");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSummaryShape() throws Exception {
+        Map<String, Object> summary = generator(new FakeClient(0), 400, 2, 0.25, "update=1,weather=1,ping=1").run();
+
+        assertEquals("[config, requests, errors, unsent, achieved_rate, operations]",
+                summary.keySet().toString());
+        Map<String, Object> config = (Map<String, Object>) summary.get("config");
+        assertEquals(400.0, config.get("target_rate"));
+        assertEquals(2, config.get("connections"));
+        assertEquals(2, config.get("airports"));
+
+        // 2 connections 5ms apart for 250ms, a late wakeup at the very end may leave the last one unsent
+        long requests = (Long) summary.get("requests");
+        assertEquals(0L, summary.get("errors"));
+        assertEquals(100L, requests + (Long) summary.get("unsent"));
+
+        Map<String, Object> operations = (Map<String, Object>) summary.get("operations");
+        assertEquals("[update, weather, ping]", operations.keySet().toString());
+        long total = 0;
+        long unsent = 0;
+        for (Object o : operations.values()) {
+            Map<String, Object> report = (Map<String, Object>) o;
+            assertEquals("[count, errors, unsent, rate, latency, service_time]", report.keySet().toString());
+            assertEquals("[mean_us, p50_us, p90_us, p99_us, p999_us, max_us]",
+                    ((Map<String, Object>) report.get("latency")).keySet().toString());
+            assertEquals("[mean_us, p50_us, p90_us, p99_us, p999_us, max_us]",
+                    ((Map<String, Object>) report.get("service_time")).keySet().toString());
+            total += (Long) report.get("count");
+            unsent += (Long) report.get("unsent");
+        }
+        assertEquals(requests, total);
+        assertEquals(summary.get("unsent"), unsent);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStopsAtTheEndAndReportsUnsent() throws Exception {
+        // 20 requests 10ms apart, the first one takes longer than the whole run
+        long started = System.nanoTime();
+        Map<String, Object> summary = generator(new FakeClient(300), 100, 1, 0.2, "ping=1").run();
+        long elapsedMillis = (System.nanoTime() - started) / 1000000;
+
+        assertEquals(1L, summary.get("requests"));
+        assertEquals(19L, summary.get("unsent"));
+        // the unsent requests waited 10ms to 190ms until the end, without them the only latency would be ~300ms
+        Map<String, Object> ping = (Map<String, Object>) ((Map<String, Object>) summary.get("operations")).get("ping");
+        assertEquals(19L, ping.get("unsent"));
+        long median = (Long) ((Map<String, Object>) ping.get("latency")).get("p50_us");
+        assertTrue("median " + median + "us", median > 50000 && median < 250000);
+        assertTrue("ran for " + elapsedMillis + "ms", elapsedMillis < 1000);
+    }
+}
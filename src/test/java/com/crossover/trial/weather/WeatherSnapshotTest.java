@@ -0,0 +1,123 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AirportData;
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPoint;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.store.WeatherSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+
+public class WeatherSnapshotTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("snapshot").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        DataPoint dp = new DataPoint.Builder()
+                .withFirst(10).withMedian(20).withMean(22.5).withLast(30).withCount(7).build();
+        Map<String, AtmosphericInformation> readings = new HashMap<>();
+        // the wind reading was collected before the last update
+        readings.put("BOS", new AtmosphericInformation.Builder().with(DataPointType.WIND, dp, 900L).withPressure(dp)
+                .withLastUpdateTime(1000L).build());
+        readings.put("JFK", new AtmosphericInformation());
+        WeatherSnapshot.write(directory, 42, Arrays.asList(airport("BOS", 42.36, -71.0), airport("JFK", 40.6, -73.7)),
+                readings::get);
+
+        List<String> restored = new ArrayList<>();
+        assertEquals(42, WeatherSnapshot.restore(directory, recorder(restored)));
+        assertEquals(Arrays.asList("BOS 42.36 -71.0 1000 WIND@900 PRESSURE@1000", "JFK 40.6 -73.7 0"), restored);
+    }
+
+    @Test
+    public void testDamagedSnapshotIsSkipped() throws Exception {
+        WeatherSnapshot.write(directory, 1, Arrays.asList(airport("BOS", 1, 2)), iata -> new AtmosphericInformation());
+        Thread.sleep(2);
+        File newest = WeatherSnapshot.write(directory, 2, Arrays.asList(airport("JFK", 3, 4)),
+                iata -> new AtmosphericInformation());
+        try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            file.seek(30);
+            file.write(0xff);
+        }
+
+        List<String> restored = new ArrayList<>();
+        assertEquals(1, WeatherSnapshot.restore(directory, recorder(restored)));
+        assertEquals(Arrays.asList("BOS 1.0 2.0 0"), restored);
+    }
+
+    @Test
+    public void testWrongCountIsSkipped() throws Exception {
+        for (int count : new int[]{1, 1000}) {
+            tearDown();
+            setUp();
+            WeatherSnapshot.write(directory, 1, Arrays.asList(airport("BOS", 1, 2)), iata -> new AtmosphericInformation());
+            Thread.sleep(2);
+            File newest = WeatherSnapshot.write(directory, 2, Arrays.asList(airport("JFK", 3, 4), airport("LGA", 5, 6)),
+                    iata -> new AtmosphericInformation());
+            // a count that does not match the airports, under a checksum that does
+            try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+                file.seek(file.length() - 12);
+                file.writeInt(count);
+                byte[] content = new byte[(int) file.length() - 8];
+                file.seek(0);
+                file.readFully(content);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                file.writeLong(crc.getValue());
+            }
+
+            List<String> restored = new ArrayList<>();
+            assertEquals(1, WeatherSnapshot.restore(directory, recorder(restored)));
+            assertEquals(Arrays.asList("BOS 1.0 2.0 0"), restored);
+        }
+    }
+
+    private static AirportData airport(String iata, double latitude, double longitude) {
+        AirportData ad = new AirportData();
+        ad.setIata(iata);
+        ad.setLatitude(latitude);
+        ad.setLongitude(longitude);
+        return ad;
+    }
+
+    private static WeatherSnapshot.Restorer recorder(List<String> restored) {
+        DataPoint dp = new DataPoint.Builder()
+                .withFirst(10).withMedian(20).withMean(22.5).withLast(30).withCount(7).build();
+        return (iataCode, latitude, longitude, ai) -> {
+            StringBuilder sb = new StringBuilder(iataCode + " " + latitude + " " + longitude + " " + ai.getLastUpdateTime());
+            for (DataPointType type : DataPointType.values()) {
+                if (ai.get(type) != null) {
+                    assertEquals(dp, ai.get(type));
+                    sb.append(' ').append(type).append('@').append(ai.getUpdateTime(type));
+                }
+            }
+            restored.add(sb.toString());
+        };
+    }
+}
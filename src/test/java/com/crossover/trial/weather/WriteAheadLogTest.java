@@ -0,0 +1,227 @@
+package com.crossover.trial.weather;
+
+import com.crossover.trial.weather.data.AtmosphericInformation;
+import com.crossover.trial.weather.data.DataPointType;
+import com.crossover.trial.weather.service.AirportService;
+import com.crossover.trial.weather.service.WeatherService;
+import com.crossover.trial.weather.store.ChangeFeed;
+import com.crossover.trial.weather.store.WriteAheadLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteAheadLogTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("wal").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS, 1 << 20, new ArrayList<>());
+        log.logAirport("BOS", 42.364347, -71.005181);
+        log.logDataPoint("BOS", DataPointType.WIND, true, 22.5, 10, 20, 30, 7, 1000L);
+        log.logDataPoint("BOS", DataPointType.PRESSURE, false, 1.0, 1, 2, 3, 4, 2000L);
+        log.close();
+
+        List<String> replayed = new ArrayList<>();
+        log = open(WriteAheadLog.FsyncPolicy.ALWAYS, 1 << 20, replayed);
+        assertEquals(Arrays.asList("airport BOS 42.364347 -71.005181",
+                "BOS WIND true 22.5 10 20 30 7 1000",
+                "BOS PRESSURE false 1.0 1 2 3 4 2000"), replayed);
+        assertEquals(3, log.lastSequence());
+        log.close();
+    }
+
+    @Test
+    public void testGroupCommitAndSegments() throws Exception {
+        WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.ALWAYS, 4096, new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    log.logDataPoint("JFK", DataPointType.TEMPERATURE, true, i, i, i, i, i, i);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        log.close();
+        assertTrue(directory.listFiles().length > 1);
+
+        List<String> replayed = new ArrayList<>();
+        open(WriteAheadLog.FsyncPolicy.NONE, 4096, replayed).close();
+        assertEquals(4000, replayed.size());
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        WriteAheadLog log = open(WriteAheadLog.FsyncPolicy.INTERVAL, 1 << 20, new ArrayList<>());
+        log.logAirport("BOS", 1, 2);
+        log.logAirport("JFK", 3, 4);
+        log.close();
+        File[] segments = directory.listFiles();
+        try (FileOutputStream out = new FileOutputStream(segments[segments.length - 1], true)) {
+            // a frame header whose record never made it to disk
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1});
+        }
+
+        log = open(WriteAheadLog.FsyncPolicy.INTERVAL, 1 << 20, new ArrayList<>());
+        log.logAirport("LGA", 5, 6);
+        log.close();
+        List<String> replayed = new ArrayList<>();
+        open(WriteAheadLog.FsyncPolicy.INTERVAL, 1 << 20, replayed).close();
+        assertEquals(Arrays.asList("airport BOS 1.0 2.0", "airport JFK 3.0 4.0", "airport LGA 5.0 6.0"), replayed);
+    }
+
+    /**
+     * Writers released together on each airport race for its last reading, the log must end with the same one.
+     */
+    @Test
+    public void testConcurrentUpdatesReplayAsApplied() throws Exception {
+        WeatherService weatherService = WeatherService.getInstance();
+        weatherService.clear();
+        AirportService.getInstance().init();
+        weatherService.openLog(directory, WriteAheadLog.FsyncPolicy.NONE, 10, 1 << 20, 0);
+        List<String> airports = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String iata = "Q" + (char) ('A' + i / 26) + (char) ('A' + i % 26);
+            AirportService.getInstance().addAirport(iata, i / 10.0, i / 10.0);
+            airports.add(iata);
+        }
+        int writers = 8;
+        CyclicBarrier start = new CyclicBarrier(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        Map<String, AtmosphericInformation> live = new HashMap<>();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < writers; t++) {
+                int writer = t;
+                futures.add(executor.submit(() -> {
+                    for (String iata : airports) {
+                        start.await();
+                        weatherService.addDataPoint(iata, DataPointType.WIND, writer, 1, 2, 3, 4, 1000L);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            for (String iata : airports) {
+                live.put(iata, weatherService.getAtmosphericInformation(iata));
+            }
+        } finally {
+            executor.shutdown();
+            weatherService.closeLog();
+        }
+
+        weatherService.clear();
+        weatherService.openLog(directory, WriteAheadLog.FsyncPolicy.NONE, 10, 1 << 20, 0);
+        weatherService.closeLog();
+        for (String iata : airports) {
+            assertEquals(iata, live.get(iata).getWind(), weatherService.getAtmosphericInformation(iata).getWind());
+        }
+    }
+
+    /**
+     * Changes made concurrently reach the log and the feed of the replicas in the same order, under the same
+     * sequence numbers.
+     */
+    @Test
+    public void testChangeFeedFollowsTheLog() throws Exception {
+        WeatherService weatherService = WeatherService.getInstance();
+        weatherService.clear();
+        AirportService.getInstance().init();
+        weatherService.openLog(directory, WriteAheadLog.FsyncPolicy.NONE, 10, 1 << 20, 0);
+        AirportService.getInstance().addAirport("BOS", 42.36, -71.0);
+        ChangeFeed feed = weatherService.openChangeFeed(100000);
+        assertEquals(1, feed.lastSequence());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int writer = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        String iata = "Q" + (char) ('A' + writer) + (char) ('A' + i % 26);
+                        AirportService.getInstance().addAirport(iata, writer, i % 26);
+                        weatherService.addDataPoint(iata, DataPointType.WIND, i, 1, 2, 3, 4, 1000L + i);
+                        weatherService.addDataPoint("BOS", DataPointType.WIND, writer, 1, 2, 3, 4, 1000L + i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            weatherService.closeChangeFeed();
+            weatherService.closeLog();
+        }
+
+        List<String> logged = new ArrayList<>();
+        open(WriteAheadLog.FsyncPolicy.NONE, 1 << 20, logged).close();
+        List<String> published = new ArrayList<>();
+        WriteAheadLog.Replayer collector = collector(published);
+        for (byte[] record : feed.read(1, Integer.MAX_VALUE, 0)) {
+            ChangeFeed.apply(record, collector);
+        }
+        assertEquals(1 + 8 * 200 * 3, feed.lastSequence());
+        assertEquals(logged.subList(1, logged.size()), published);
+    }
+
+    private WriteAheadLog open(WriteAheadLog.FsyncPolicy policy, long segmentBytes, List<String> replayed)
+            throws IOException {
+        return WriteAheadLog.open(directory, policy, 10, segmentBytes, 0, collector(replayed));
+    }
+
+    private static WriteAheadLog.Replayer collector(List<String> replayed) {
+        return new WriteAheadLog.Replayer() {
+            @Override
+            public void airport(String iataCode, double latitude, double longitude) {
+                replayed.add("airport " + iataCode + " " + latitude + " " + longitude);
+            }
+
+            @Override
+            public void dataPoint(String iataCode, DataPointType type, boolean accepted, double mean, int first,
+                                  int second, int third, int count, long timestamp) {
+                replayed.add(iataCode + " " + type + " " + accepted + " " + mean + " " + first + " " + second + " "
+                        + third + " " + count + " " + timestamp);
+            }
+        };
+    }
+}